@@ -1,10 +1,10 @@
 package org.example;
 
+import org.example.data.CompressedSeries;
 import org.example.data.FactoryDataPoint;
-import org.example.data.Measurement;
+import org.example.data.FactorySchema;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * AI-based anomaly detector for smart factory data
@@ -17,8 +17,9 @@ public class AIAnomalyDetector {
     private final int windowSize;
     private final float anomalyScoreThreshold;
     
-    // Statistical tracking
-    private final Map<Integer, List<Float>> featureHistory;
+    // Statistical tracking; deviation history is compressed and holds
+    // between windowSize and twice as many samples, the last windowSize being used
+    private final Map<Integer, CompressedSeries> featureHistory;
     private final Map<Integer, Float> featureMeans;
     private final Map<Integer, Float> featureStdDevs;
     
@@ -50,56 +51,94 @@ public class AIAnomalyDetector {
      * @param dataPoints List of historical data points
      */
     public void initializeWithHistory(List<FactoryDataPoint> dataPoints) {
-        System.out.println("Initializing anomaly detector with " + dataPoints.size() + " historical data points");
+        initializeWithHistory(dataPoints.iterator(), dataPoints.size());
+    }
+    
+    /**
+     * Initialize the detector from a stream of historical data.
+     * Only the last windowSize deviations per feature are kept, so the
+     * stream can be arbitrarily long.
+     * @param dataPoints Iterator over historical data points
+     * @param limit Maximum number of data points to consume
+     */
+    public void initializeWithHistory(Iterator<FactoryDataPoint> dataPoints, int limit) {
+        int consumed = 0;
         
         // Process each data point
-        for (FactoryDataPoint point : dataPoints) {
+        while (consumed < limit && dataPoints.hasNext()) {
+            FactoryDataPoint point = dataPoints.next();
+            consumed++;
+            
             // We focus on Stage 1 measurements (primary goal is to predict these)
-            for (Measurement measurement : point.getStage1Measurements()) {
-                int featureId = measurement.getFeatureId();
-                float deviation = measurement.getActual() - measurement.getSetpoint();
+            for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+                float deviation = point.getStage1Actual(featureId) - point.getStage1Setpoint(featureId);
                 
-                // Initialize lists if needed
-                featureHistory.putIfAbsent(featureId, new ArrayList<>());
+                // Missing readings don't count towards the baseline
+                if (Float.isNaN(deviation)) {
+                    continue;
+                }
                 
                 // Add deviation to history
-                List<Float> history = featureHistory.get(featureId);
-                history.add(deviation);
-                
-                // Keep only the last windowSize values
-                if (history.size() > windowSize) {
-                    history.remove(0);
-                }
+                addToHistory(featureId, point.getEpochSecond(), deviation);
             }
         }
         
+        System.out.println("Initialized anomaly detector with " + consumed + " historical data points");
+        
         // Calculate baseline statistics
         updateBaselines();
     }
     
+    /**
+     * Add a deviation to a feature's history
+     */
+    private void addToHistory(int featureId, long epochSecond, float deviation) {
+        CompressedSeries history = featureHistory.computeIfAbsent(featureId, k -> new CompressedSeries());
+        history.append(epochSecond, deviation);
+        
+        // Drop values older than the window now and then, rather than on every append
+        if (history.size() >= 2 * windowSize) {
+            featureHistory.put(featureId, history.tail(windowSize));
+        }
+    }
+    
+    /**
+     * Decoder over the last windowSize values of a feature's history
+     */
+    private CompressedSeries.Decoder window(CompressedSeries history) {
+        CompressedSeries.Decoder values = history.decoder();
+        for (int i = windowSize; i < history.size(); i++) {
+            values.next();
+        }
+        return values;
+    }
+    
     /**
      * Update the baseline statistics for all features
      */
     private void updateBaselines() {
         for (int featureId : featureHistory.keySet()) {
-            List<Float> history = featureHistory.get(featureId);
+            CompressedSeries history = featureHistory.get(featureId);
+            int count = Math.min(history.size(), windowSize);
             
-            if (history.size() >= 10) { // Need at least 10 points for meaningful statistics
+            if (count >= 10) { // Need at least 10 points for meaningful statistics
                 // Calculate mean
                 float sum = 0;
-                for (float val : history) {
-                    sum += val;
+                CompressedSeries.Decoder values = window(history);
+                while (values.next()) {
+                    sum += values.getValue();
                 }
-                float mean = sum / history.size();
+                float mean = sum / count;
                 featureMeans.put(featureId, mean);
                 
                 // Calculate standard deviation
                 float sumSquaredDiff = 0;
-                for (float val : history) {
-                    float diff = val - mean;
+                values = window(history);
+                while (values.next()) {
+                    float diff = values.getValue() - mean;
                     sumSquaredDiff += diff * diff;
                 }
-                float stdDev = (float) Math.sqrt(sumSquaredDiff / history.size());
+                float stdDev = (float) Math.sqrt(sumSquaredDiff / count);
                 featureStdDevs.put(featureId, stdDev);
             }
         }
@@ -116,15 +155,22 @@ public class AIAnomalyDetector {
         int featureCount = 0;
         
         // Analyze Stage 1 measurements
-        for (Measurement measurement : dataPoint.getStage1Measurements()) {
-            int featureId = measurement.getFeatureId();
+        for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
             
             // Skip if we don't have baseline for this feature
             if (!featureMeans.containsKey(featureId) || !featureStdDevs.containsKey(featureId)) {
                 continue;
             }
             
-            float deviation = measurement.getActual() - measurement.getSetpoint();
+            float actual = dataPoint.getStage1Actual(featureId);
+            float setpoint = dataPoint.getStage1Setpoint(featureId);
+            float deviation = actual - setpoint;
+            
+            // Skip missing readings
+            if (Float.isNaN(deviation)) {
+                continue;
+            }
+            
             float mean = featureMeans.get(featureId);
             float stdDev = featureStdDevs.get(featureId);
             
@@ -145,16 +191,13 @@ public class AIAnomalyDetector {
             if (featureScore > anomalyScoreThreshold) {
                 String anomalyDetail = String.format(
                     "Feature %d: actual=%.2f, setpoint=%.2f, deviation=%.2f, z-score=%.2f", 
-                    featureId, measurement.getActual(), measurement.getSetpoint(), deviation, zScore
+                    featureId, actual, setpoint, deviation, zScore
                 );
                 anomalies.add(anomalyDetail);
             }
             
             // Update history
-            featureHistory.get(featureId).add(deviation);
-            if (featureHistory.get(featureId).size() > windowSize) {
-                featureHistory.get(featureId).remove(0);
-            }
+            addToHistory(featureId, dataPoint.getEpochSecond(), deviation);
         }
         
         // Calculate overall anomaly score
@@ -193,9 +236,12 @@ public class AIAnomalyDetector {
         }
         
         // Calculate z-scores for historical values
-        return featureHistory.get(featureId).stream()
-            .map(val -> Math.abs(val - mean) / stdDev)
-            .collect(Collectors.toList());
+        List<Float> zScores = new ArrayList<>();
+        CompressedSeries.Decoder values = window(featureHistory.get(featureId));
+        while (values.next()) {
+            zScores.add(Math.abs(values.getValue() - mean) / stdDev);
+        }
+        return zScores;
     }
     
     /**
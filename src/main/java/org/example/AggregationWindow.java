@@ -0,0 +1,78 @@
+package org.example;
+
+/**
+ * Event-time window over which a fog node summarizes a signal before logging it
+ * A tumbling window covers consecutive, non-overlapping spans of N seconds. A
+ * sliding window covers the last N seconds and advances every S seconds, so
+ * N must be a multiple of S. Windows are aligned to the epoch, so every node
+ * closes its windows at the same row times (see WindowAggregator).
+ */
+public final class AggregationWindow {
+    private final int sizeSeconds;
+    private final int slideSeconds;
+
+    private AggregationWindow(int sizeSeconds, int slideSeconds) {
+        this.sizeSeconds = sizeSeconds;
+        this.slideSeconds = slideSeconds;
+    }
+
+    /**
+     * Non-overlapping windows of N seconds
+     * @param sizeSeconds N, at least 1
+     */
+    public static AggregationWindow tumbling(int sizeSeconds) {
+        if (sizeSeconds < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1 second: " + sizeSeconds);
+        }
+        return new AggregationWindow(sizeSeconds, sizeSeconds);
+    }
+
+    /**
+     * Windows of the last N seconds, one every S seconds
+     * @param sizeSeconds N, a multiple of S
+     * @param slideSeconds S, at least 1
+     */
+    public static AggregationWindow sliding(int sizeSeconds, int slideSeconds) {
+        if (slideSeconds < 1 || sizeSeconds < slideSeconds || sizeSeconds % slideSeconds != 0) {
+            throw new IllegalArgumentException("Window size must be a multiple of the slide: " + sizeSeconds + "/" + slideSeconds);
+        }
+        return new AggregationWindow(sizeSeconds, slideSeconds);
+    }
+
+    /**
+     * Parse a window written as tumbling:N or sliding:N/S, in seconds
+     * @param value Window text
+     * @return Window, or null if the text is not a valid window
+     */
+    public static AggregationWindow parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.trim().toLowerCase();
+        try {
+            if (text.startsWith("tumbling:")) {
+                return tumbling(Integer.parseInt(text.substring("tumbling:".length())));
+            }
+            if (text.startsWith("sliding:")) {
+                String[] parts = text.substring("sliding:".length()).split("/");
+                if (parts.length != 2) {
+                    return null;
+                }
+                return sliding(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a number, or not a valid size
+        }
+        return null;
+    }
+
+    // Getters
+    public int getSizeSeconds() { return sizeSeconds; }
+    public int getSlideSeconds() { return slideSeconds; }
+    public boolean isSliding() { return slideSeconds < sizeSeconds; }
+
+    @Override
+    public String toString() {
+        return isSliding() ? "sliding:" + sizeSeconds + "/" + slideSeconds : "tumbling:" + sizeSeconds;
+    }
+}
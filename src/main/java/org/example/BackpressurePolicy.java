@@ -0,0 +1,94 @@
+package org.example;
+
+/**
+ * What a bounded queue does with a new item when it is full
+ * BLOCK makes the sender wait, which slows everything upstream down to the
+ * consumer's pace. The other modes keep the sender going and shed items
+ * instead, counted by the queue (see BackpressureQueue).
+ */
+public final class BackpressurePolicy {
+    /**
+     * Behaviour when the queue is full
+     */
+    public enum Mode {
+        // Wait for room
+        BLOCK,
+        // Evict the oldest queued item to make room
+        DROP_OLDEST,
+        // Drop the new item
+        DROP_NEWEST,
+        // Wait for room for every Nth item, drop the others
+        SAMPLE
+    }
+
+    private static final BackpressurePolicy BLOCK = new BackpressurePolicy(Mode.BLOCK, 1);
+    private static final BackpressurePolicy DROP_OLDEST = new BackpressurePolicy(Mode.DROP_OLDEST, 1);
+    private static final BackpressurePolicy DROP_NEWEST = new BackpressurePolicy(Mode.DROP_NEWEST, 1);
+
+    private final Mode mode;
+    private final int sampleInterval;
+
+    private BackpressurePolicy(Mode mode, int sampleInterval) {
+        this.mode = mode;
+        this.sampleInterval = sampleInterval;
+    }
+
+    // Policies
+    public static BackpressurePolicy block() { return BLOCK; }
+    public static BackpressurePolicy dropOldest() { return DROP_OLDEST; }
+    public static BackpressurePolicy dropNewest() { return DROP_NEWEST; }
+
+    /**
+     * Keep 1 in N items while the queue is full
+     * @param interval N, at least 2
+     */
+    public static BackpressurePolicy sample(int interval) {
+        if (interval < 2) {
+            throw new IllegalArgumentException("Sample interval must be at least 2: " + interval);
+        }
+        return new BackpressurePolicy(Mode.SAMPLE, interval);
+    }
+
+    /**
+     * Parse a policy written as block, drop-oldest, drop-newest or sample:N
+     * @param value Policy text
+     * @return Policy, or null if the text is not a valid policy
+     */
+    public static BackpressurePolicy parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.trim().toLowerCase();
+        switch (text) {
+            case "block":
+                return BLOCK;
+            case "drop-oldest":
+                return DROP_OLDEST;
+            case "drop-newest":
+                return DROP_NEWEST;
+            default:
+                if (!text.startsWith("sample:")) {
+                    return null;
+                }
+                try {
+                    int interval = Integer.parseInt(text.substring("sample:".length()));
+                    return interval >= 2 ? sample(interval) : null;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+        }
+    }
+
+    // Getters
+    public Mode getMode() { return mode; }
+
+    /**
+     * N for SAMPLE, 1 for the other modes
+     */
+    public int getSampleInterval() { return sampleInterval; }
+
+    @Override
+    public String toString() {
+        return mode == Mode.SAMPLE ? "sample:" + sampleInterval : mode.name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue that applies a backpressure policy when it is full
+ * Any number of threads may offer items and take them. Every outcome is
+ * counted, so overload shows up in the counters rather than only in a log.
+ *
+ * @param <T> Item type
+ */
+public class BackpressureQueue<T> {
+    private final BlockingQueue<T> queue;
+    private final int capacity;
+    private final BackpressurePolicy policy;
+    private final Consumer<? super T> onShed;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong fullOffers = new AtomicLong();
+
+    /**
+     * Create a queue
+     * @param capacity Most items queued
+     * @param policy What to do with a new item when the queue is full
+     * @param onShed Called with each item the policy sheds, new or evicted; may be null
+     */
+    public BackpressureQueue(int capacity, BackpressurePolicy policy, Consumer<? super T> onShed) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.policy = policy;
+        this.onShed = onShed;
+    }
+
+    /**
+     * Queue an item, applying the policy if the queue is full
+     * @param item Item to queue
+     * @return true if the item was queued, false if it was shed
+     * @throws InterruptedException If interrupted while waiting for room; the item is not queued
+     */
+    public boolean offer(T item) throws InterruptedException {
+        offered.incrementAndGet();
+        if (queue.offer(item)) {
+            accepted.incrementAndGet();
+            return true;
+        }
+
+        switch (policy.getMode()) {
+            case DROP_OLDEST:
+                // The consumer may empty the queue meanwhile, so retry until the item fits
+                do {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        droppedOldest.incrementAndGet();
+                        shed(oldest);
+                    }
+                } while (!queue.offer(item));
+                accepted.incrementAndGet();
+                return true;
+            case DROP_NEWEST:
+                droppedNewest.incrementAndGet();
+                shed(item);
+                return false;
+            case SAMPLE:
+                // Offers that find the queue full are numbered; every Nth one waits for room
+                if (fullOffers.getAndIncrement() % policy.getSampleInterval() != 0) {
+                    sampledOut.incrementAndGet();
+                    shed(item);
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+
+        blocked.incrementAndGet();
+        put(item);
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Wait for room for an item. On a ForkJoinPool thread the pool may start
+     * a spare thread meanwhile, so the tasks that empty the queue still run.
+     */
+    private void put(T item) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean queued;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!queued) {
+                    queue.put(item);
+                    queued = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return queued || (queued = queue.offer(item));
+            }
+        });
+    }
+
+    private void shed(T item) {
+        if (onShed != null) {
+            onShed.accept(item);
+        }
+    }
+
+    /**
+     * Take the next item, waiting up to a timeout
+     * @return Item, or null on timeout
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Take the next item if there is one
+     * @return Item, or null if the queue is empty
+     */
+    public T poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Move all queued items to a collection
+     * @return Number of items moved
+     */
+    public int drainTo(Collection<? super T> target) {
+        return queue.drainTo(target);
+    }
+
+    /**
+     * Move up to a number of queued items to a collection
+     * @return Number of items moved
+     */
+    public int drainTo(Collection<? super T> target, int maxItems) {
+        return queue.drainTo(target, maxItems);
+    }
+
+    // Getters
+    public int size() { return queue.size(); }
+    public boolean isEmpty() { return queue.isEmpty(); }
+    public int getCapacity() { return capacity; }
+    public BackpressurePolicy getPolicy() { return policy; }
+    public long getOfferedCount() { return offered.get(); }
+    public long getAcceptedCount() { return accepted.get(); }
+
+    /**
+     * Offers that had to wait for room
+     */
+    public long getBlockedCount() { return blocked.get(); }
+    public long getDroppedOldestCount() { return droppedOldest.get(); }
+    public long getDroppedNewestCount() { return droppedNewest.get(); }
+    public long getSampledOutCount() { return sampledOut.get(); }
+
+    /**
+     * Items shed by the policy, new or evicted
+     */
+    public long getShedCount() {
+        return droppedOldest.get() + droppedNewest.get() + sampledOut.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: offered=%d, accepted=%d, blocked=%d, dropped oldest=%d, dropped newest=%d, sampled out=%d",
+            policy, offered.get(), accepted.get(), blocked.get(), droppedOldest.get(), droppedNewest.get(), sampledOut.get());
+    }
+}
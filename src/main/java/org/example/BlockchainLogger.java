@@ -6,39 +6,70 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.example.data.Timestamps;
+
 /**
  * Blockchain logger for recording important manufacturing data on the blockchain
  * Includes batching and asynchronous processing to reduce blockchain transactions
  */
 public class BlockchainLogger {
+    // Shed entries between repeated queue full warnings
+    private static final long SHED_WARNING_INTERVAL = 1000;
+    // Longest wait for a new entry before a partial batch is sent
+    private static final long IDLE_POLL_MILLIS = 100;
+    
     private final PureChainConnector connector;
     private final ExecutorService executorService;
-    private final ConcurrentLinkedQueue<LogEntry> logQueue;
+    private volatile BackpressureQueue<LogEntry> logQueue;
     private final AtomicBoolean isRunning;
     
     // Batch processing parameters
     private int batchSize = 10; // Number of entries to combine in a batch
     private int maxQueueSize = 1000; // Maximum size before back pressure
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.dropNewest();
     
     /**
      * Create a new blockchain logger
      * @param connector The blockchain connector
      */
     public BlockchainLogger(PureChainConnector connector) {
+        this(connector, ThreadingMode.PLATFORM);
+    }
+    
+    /**
+     * Create a new blockchain logger
+     * @param connector The blockchain connector
+     * @param threadingMode Kind of thread the background processor runs on
+     */
+    public BlockchainLogger(PureChainConnector connector, ThreadingMode threadingMode) {
         this.connector = connector;
-        this.executorService = Executors.newSingleThreadExecutor();
-        this.logQueue = new ConcurrentLinkedQueue<>();
+        this.executorService = threadingMode.newExecutor(1);
+        this.logQueue = newLogQueue();
         this.isRunning = new AtomicBoolean(true);
         
         // Start the background processing thread
         startBackgroundProcessor();
     }
     
+    private BackpressureQueue<LogEntry> newLogQueue() {
+        return new BackpressureQueue<>(maxQueueSize, backpressurePolicy, this::entryShed);
+    }
+    
+    /**
+     * Warn about shed entries, on the first one and then periodically, so overload is visible but not flooding the log
+     */
+    private void entryShed(LogEntry entry) {
+        long shed = logQueue.getShedCount();
+        if (shed % SHED_WARNING_INTERVAL == 1) {
+            LoggingConfig.warn("BlockchainLogger", "Blockchain log queue full, shedding entries ("
+                + logQueue + ")");
+        }
+    }
+    
     /**
      * Start the background thread for processing log entries
      */
@@ -48,8 +79,8 @@ public class BlockchainLogger {
             
             while (isRunning.get()) {
                 try {
-                    // Process entries in batches
-                    LogEntry entry = logQueue.poll();
+                    // Process entries in batches, waiting a while for the next one instead of sleeping
+                    LogEntry entry = logQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
                     if (entry != null) {
                         batch.add(entry);
                         
@@ -64,9 +95,6 @@ public class BlockchainLogger {
                             processBatch(batch);
                             batch.clear();
                         }
-                        
-                        // Sleep to avoid busy waiting
-                        Thread.sleep(100);
                     }
                 } catch (Exception e) {
                     System.err.println("Error in blockchain logger: " + e.getMessage());
@@ -91,6 +119,11 @@ public class BlockchainLogger {
             Map<String, List<LogEntry>> entriesByMachine = new HashMap<>();
             
             for (LogEntry entry : batch) {
+                // Window summaries are already one record per window
+                if (entry.getSummary() != null) {
+                    recordSummary(entry);
+                    continue;
+                }
                 entriesByMachine.putIfAbsent(entry.getMachineId(), new ArrayList<>());
                 entriesByMachine.get(entry.getMachineId()).add(entry);
             }
@@ -141,6 +174,21 @@ public class BlockchainLogger {
         }
     }
     
+    /**
+     * Record a window summary as a batch record spanning the window's values
+     * @param entry Summary entry
+     */
+    private void recordSummary(LogEntry entry) {
+        WindowAggregator.Summary summary = entry.getSummary();
+        connector.recordBatchData(
+            entry.getMachineId(),
+            calculateSHA256(entry.toString()),
+            Timestamps.format(summary.getFirstEpochSecond()),
+            Timestamps.format(summary.getLastEpochSecond()),
+            BigInteger.valueOf((long)(entry.getAnomalyScore() * 1000))
+        );
+    }
+    
     /**
      * Calculate SHA-256 hash of a string
      * @param input Input string
@@ -179,13 +227,6 @@ public class BlockchainLogger {
             long actualValue,
             float anomalyScore) {
         
-        // Check if queue is too large (back pressure)
-        if (logQueue.size() >= maxQueueSize) {
-            System.err.println("WARNING: Blockchain log queue full, dropping entry");
-            return;
-        }
-        
-        // Add entry to queue
         LogEntry entry = new LogEntry(
             machineId,
             timestamp,
@@ -193,8 +234,29 @@ public class BlockchainLogger {
             BigInteger.valueOf(actualValue),
             anomalyScore
         );
-        
-        logQueue.add(entry);
+        queue(entry);
+    }
+    
+    /**
+     * Log the summary of a measurement over a window as one record
+     * The record's hash covers the window's statistics, including its extremes.
+     * @param machineId Machine ID
+     * @param summary Window summary
+     */
+    public void logWindow(String machineId, WindowAggregator.Summary summary) {
+        queue(new LogEntry(machineId, summary));
+    }
+    
+    /**
+     * Add an entry to the queue; the backpressure policy applies if it is full
+     */
+    private void queue(LogEntry entry) {
+        try {
+            logQueue.offer(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while queueing blockchain log entry, entry dropped");
+        }
     }
     
     /**
@@ -240,11 +302,30 @@ public class BlockchainLogger {
     }
     
     /**
-     * Set maximum queue size
+     * Set maximum queue size. Must be called before logging starts.
      * @param maxQueueSize New maximum queue size
      */
     public void setMaxQueueSize(int maxQueueSize) {
         this.maxQueueSize = maxQueueSize;
+        this.logQueue = newLogQueue();
+    }
+    
+    /**
+     * Set what happens to measurements logged while the queue is full. Must be called before logging starts.
+     * BLOCK holds up the logging fog node, and so everything upstream of it; the default sheds the newest entry.
+     * @param backpressurePolicy Backpressure policy
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+        this.logQueue = newLogQueue();
+    }
+    
+    /**
+     * Get the log queue's policy and counters: entries offered, blocked on and shed
+     * @return Log queue
+     */
+    public BackpressureQueue<?> getLogQueue() {
+        return logQueue;
     }
     
     /**
@@ -256,6 +337,8 @@ public class BlockchainLogger {
         private final BigInteger setpoint;
         private final BigInteger actualValue;
         private final float anomalyScore;
+        // Window summary, or null for a single measurement
+        private final WindowAggregator.Summary summary;
         
         public LogEntry(
                 String machineId, 
@@ -268,6 +351,16 @@ public class BlockchainLogger {
             this.setpoint = setpoint;
             this.actualValue = actualValue;
             this.anomalyScore = anomalyScore;
+            this.summary = null;
+        }
+        
+        public LogEntry(String machineId, WindowAggregator.Summary summary) {
+            this.machineId = machineId;
+            this.timestamp = Timestamps.format(summary.getLastEpochSecond());
+            this.setpoint = BigInteger.ZERO;
+            this.actualValue = BigInteger.valueOf(Math.round(summary.getMean() * 100));
+            this.anomalyScore = 0.0f;
+            this.summary = summary;
         }
         
         public String getMachineId() { return machineId; }
@@ -275,9 +368,13 @@ public class BlockchainLogger {
         public BigInteger getSetpoint() { return setpoint; }
         public BigInteger getActualValue() { return actualValue; }
         public float getAnomalyScore() { return anomalyScore; }
+        public WindowAggregator.Summary getSummary() { return summary; }
         
         @Override
         public String toString() {
+            if (summary != null) {
+                return machineId + "," + summary;
+            }
             return String.format("%s,%s,%s,%s,%.4f", 
                 machineId, timestamp, setpoint, actualValue, anomalyScore);
         }
@@ -0,0 +1,403 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Numeric parsing straight from CSV bytes or characters
+ * Parses cells in place without building a String per cell and without
+ * throwing: empty and malformed cells are reported as missing (NaN).
+ */
+public final class CsvNumberParser {
+
+    // Powers of ten that are exact in float / double
+    private static final float[] FLOAT_POW10 = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    private static final double[] DOUBLE_POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Largest mantissa that is exact in float / double
+    private static final long FLOAT_EXACT_LIMIT = 1L << 24;
+    private static final long DOUBLE_EXACT_LIMIT = 1L << 53;
+
+    // Most significant digits accumulated before deferring to the slow path
+    private static final int MAX_DIGITS = 18;
+
+    // Exponents beyond this are clamped; they over/underflow a float either way
+    private static final int MAX_EXPONENT = 9999;
+
+    // Bits of the result of toFloat when the fast path can't round correctly
+    // (a subnormal, which the fast path never produces)
+    private static final int SLOW = 1;
+
+    private CsvNumberParser() {
+    }
+
+    /**
+     * Parse a float from the bytes [start, end) of a buffer.
+     * Accepts what Float.parseFloat accepts for decimal text (sign, fraction,
+     * exponent, f/d suffix, NaN, Infinity, surrounding whitespace) and gives
+     * the same result. Empty or malformed cells give NaN.
+     * @param buf Buffer holding the cell (absolute positions)
+     * @param start First byte of the cell
+     * @param end One past the last byte of the cell
+     * @return Parsed value, or NaN if the cell is missing
+     */
+    public static float parseFloat(ByteBuffer buf, int start, int end) {
+        while (start < end && (buf.get(start) & 0xff) <= ' ') start++;
+        while (end > start && (buf.get(end - 1) & 0xff) <= ' ') end--;
+        if (start == end) {
+            return Float.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        int b = buf.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            if (++i == end) {
+                return Float.NaN;
+            }
+            b = buf.get(i);
+        }
+        if (b == 'N' || b == 'I') {
+            return parseSpecial(buf, i, end, negative);
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean seenPoint = false;
+        boolean truncated = false;
+
+        for (; i < end; i++) {
+            b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros don't count towards precision
+                    if (seenPoint) fractionDigits++;
+                    continue;
+                }
+                if (++significantDigits > MAX_DIGITS) {
+                    truncated = true;
+                    continue;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) fractionDigits++;
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Float.NaN;
+        }
+
+        // Optional exponent
+        int exponent = 0;
+        if (i < end && (b == 'e' || b == 'E')) {
+            if (++i == end) {
+                return Float.NaN;
+            }
+            boolean negativeExponent = false;
+            b = buf.get(i);
+            if (b == '-' || b == '+') {
+                negativeExponent = b == '-';
+                if (++i == end) {
+                    return Float.NaN;
+                }
+            }
+            int exponentDigits = 0;
+            for (; i < end; i++) {
+                b = buf.get(i);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                exponent = Math.min(exponent * 10 + (b - '0'), MAX_EXPONENT);
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return Float.NaN;
+            }
+            if (negativeExponent) exponent = -exponent;
+        }
+
+        // Optional type suffix, then nothing else
+        if (i < end && (b == 'f' || b == 'F' || b == 'd' || b == 'D')) {
+            i++;
+        }
+        if (i != end) {
+            return Float.NaN;
+        }
+
+        float value = truncated ? Float.intBitsToFloat(SLOW) : toFloat(mantissa, exponent - fractionDigits);
+        if (Float.floatToRawIntBits(value) == SLOW) {
+            return slowParseFloat(buf, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a float from the characters [start, end) of a text.
+     * Same rules as the ByteBuffer variant.
+     * @param text Text holding the cell
+     * @param start First character of the cell
+     * @param end One past the last character of the cell
+     * @return Parsed value, or NaN if the cell is missing
+     */
+    public static float parseFloat(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return Float.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char c = text.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            if (++i == end) {
+                return Float.NaN;
+            }
+            c = text.charAt(i);
+        }
+        if (c == 'N' || c == 'I') {
+            return parseSpecial(text, i, end, negative);
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean seenPoint = false;
+        boolean truncated = false;
+
+        for (; i < end; i++) {
+            c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa == 0 && c == '0') {
+                    // Leading zeros don't count towards precision
+                    if (seenPoint) fractionDigits++;
+                    continue;
+                }
+                if (++significantDigits > MAX_DIGITS) {
+                    truncated = true;
+                    continue;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) fractionDigits++;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Float.NaN;
+        }
+
+        // Optional exponent
+        int exponent = 0;
+        if (i < end && (c == 'e' || c == 'E')) {
+            if (++i == end) {
+                return Float.NaN;
+            }
+            boolean negativeExponent = false;
+            c = text.charAt(i);
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                if (++i == end) {
+                    return Float.NaN;
+                }
+            }
+            int exponentDigits = 0;
+            for (; i < end; i++) {
+                c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                exponent = Math.min(exponent * 10 + (c - '0'), MAX_EXPONENT);
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return Float.NaN;
+            }
+            if (negativeExponent) exponent = -exponent;
+        }
+
+        // Optional type suffix, then nothing else
+        if (i < end && (c == 'f' || c == 'F' || c == 'd' || c == 'D')) {
+            i++;
+        }
+        if (i != end) {
+            return Float.NaN;
+        }
+
+        float value = truncated ? Float.intBitsToFloat(SLOW) : toFloat(mantissa, exponent - fractionDigits);
+        if (Float.floatToRawIntBits(value) == SLOW) {
+            return Float.parseFloat(text.subSequence(start, end).toString());
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse an integer cell from the bytes [start, end) of a buffer.
+     * Accepts what Integer.parseInt accepts, plus surrounding whitespace.
+     * @param buf Buffer holding the cell (absolute positions)
+     * @param start First byte of the cell
+     * @param end One past the last byte of the cell
+     * @return Parsed value as a float, or NaN if the cell is missing
+     */
+    public static float parseInteger(ByteBuffer buf, int start, int end) {
+        while (start < end && (buf.get(start) & 0xff) <= ' ') start++;
+        while (end > start && (buf.get(end - 1) & 0xff) <= ' ') end--;
+        if (start == end) {
+            return Float.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        int b = buf.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            if (++i == end) {
+                return Float.NaN;
+            }
+        }
+
+        // Accumulate negatively so Integer.MIN_VALUE fits
+        long result = 0;
+        for (; i < end; i++) {
+            b = buf.get(i);
+            if (b < '0' || b > '9') {
+                return Float.NaN;
+            }
+            result = result * 10 - (b - '0');
+            if (result < Integer.MIN_VALUE) {
+                return Float.NaN;
+            }
+        }
+
+        if (!negative && result == Integer.MIN_VALUE) {
+            return Float.NaN;
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    /**
+     * Parse an integer cell from the characters [start, end) of a text.
+     * Same rules as the ByteBuffer variant.
+     * @param text Text holding the cell
+     * @param start First character of the cell
+     * @param end One past the last character of the cell
+     * @return Parsed value as a float, or NaN if the cell is missing
+     */
+    public static float parseInteger(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return Float.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char c = text.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            if (++i == end) {
+                return Float.NaN;
+            }
+        }
+
+        // Accumulate negatively so Integer.MIN_VALUE fits
+        long result = 0;
+        for (; i < end; i++) {
+            c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Float.NaN;
+            }
+            result = result * 10 - (c - '0');
+            if (result < Integer.MIN_VALUE) {
+                return Float.NaN;
+            }
+        }
+
+        if (!negative && result == Integer.MIN_VALUE) {
+            return Float.NaN;
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    /**
+     * Correctly rounded float of mantissa * 10^power, or the SLOW marker
+     * when that can't be computed exactly with float / double arithmetic
+     */
+    private static float toFloat(long mantissa, int power) {
+        if (mantissa == 0) {
+            return 0.0f;
+        }
+        if (mantissa < FLOAT_EXACT_LIMIT && power > -FLOAT_POW10.length && power < FLOAT_POW10.length) {
+            // Both operands exact, so a single operation rounds correctly
+            return power < 0 ? mantissa / FLOAT_POW10[-power] : mantissa * FLOAT_POW10[power];
+        }
+        if (mantissa < DOUBLE_EXACT_LIMIT && power > -DOUBLE_POW10.length && power < DOUBLE_POW10.length) {
+            double d = power < 0 ? mantissa / DOUBLE_POW10[-power] : mantissa * DOUBLE_POW10[power];
+            // Narrowing is only ambiguous when d sits exactly on a float midpoint
+            if ((Double.doubleToRawLongBits(d) & 0x1FFFFFFFL) == 0x10000000L
+                    || d < Float.MIN_NORMAL || d > Float.MAX_VALUE) {
+                return Float.intBitsToFloat(SLOW);
+            }
+            return (float) d;
+        }
+        return Float.intBitsToFloat(SLOW);
+    }
+
+    /**
+     * NaN and Infinity literals, as accepted by Float.parseFloat
+     */
+    private static float parseSpecial(ByteBuffer buf, int start, int end, boolean negative) {
+        if (matches(buf, start, end, "Infinity")) {
+            return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        }
+        return Float.NaN;
+    }
+
+    private static float parseSpecial(CharSequence text, int start, int end, boolean negative) {
+        if (end - start == 8 && "Infinity".contentEquals(text.subSequence(start, end))) {
+            return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        }
+        return Float.NaN;
+    }
+
+    private static boolean matches(ByteBuffer buf, int start, int end, String literal) {
+        if (end - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buf.get(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fallback for valid cells the fast path can't round exactly
+     * (more than 18 significant digits, large exponents, float midpoints)
+     */
+    private static float slowParseFloat(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        return Float.parseFloat(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
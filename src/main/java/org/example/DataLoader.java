@@ -1,18 +1,41 @@
 package org.example;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-import org.example.data.CombinerData;
+import org.example.data.FactoryColumnStore;
 import org.example.data.FactoryDataPoint;
-import org.example.data.MachineData;
-import org.example.data.Measurement;
-import org.example.data.SecondStageMachineData;
+import org.example.data.FactorySchema;
+import org.example.data.FramePool;
+import org.example.data.ParsePlan;
+import org.example.data.Timestamps;
 
 /**
  * DataLoader for Smart Factory continuous process data
@@ -20,10 +43,27 @@ import org.example.data.SecondStageMachineData;
  */
 public class DataLoader {
     
+    // Parallel loading: smallest chunk worth a task, and window size per chunk
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNK_WINDOW_SIZE = 16 * 1024 * 1024;
+    
+    // Bounds of the adaptive poll interval used when tailing a file
+    private static final long TAIL_MIN_POLL_MILLIS = 10;
+    private static final long TAIL_MAX_POLL_MILLIS = 250;
+    
     // Data storage
     private List<FactoryDataPoint> dataPoints;
+    private FactoryColumnStore columnStore;
     private Map<String, Integer> columnIndices;
     private String[] columnNames;
+    private ParsePlan parsePlan;
+    
+    // Number of missing (empty or unparseable) cells per schema column
+    private final long[] missingCounts;
+    
+    // Epoch seconds of each loaded row, and whether they are in time order
+    private LongBuffer timeAxis;
+    private boolean timeOrdered;
     
     /**
      * Constructor initializes the data loader
@@ -31,6 +71,9 @@ public class DataLoader {
     public DataLoader() {
         this.dataPoints = new ArrayList<>();
         this.columnIndices = new HashMap<>();
+        this.missingCounts = new long[FactorySchema.COLUMN_COUNT];
+        this.timeAxis = LongBuffer.allocate(0);
+        this.timeOrdered = true;
     }
     
     /**
@@ -48,16 +91,13 @@ public class DataLoader {
             }
             
             // Process column headers
-            columnNames = headerLine.split(",");
-            for (int i = 0; i < columnNames.length; i++) {
-                columnIndices.put(columnNames[i].trim(), i);
-            }
+            setHeader(headerLine.split(",", -1));
             
             // Read data rows
             String line;
             while ((line = reader.readLine()) != null) {
-                String[] values = line.split(",");
-                if (values.length != columnNames.length) {
+                String[] values = line.split(",", -1);
+                if (values.length != parsePlan.getColumnCount()) {
                     System.err.println("Inconsistent data in row: " + line);
                     continue;
                 }
@@ -67,6 +107,8 @@ public class DataLoader {
             }
             
             System.out.println("Loaded " + dataPoints.size() + " data points");
+            reportMissingValues();
+            buildTimeAxis();
             return true;
             
         } catch (IOException e) {
@@ -76,126 +118,468 @@ public class DataLoader {
     }
     
     /**
-     * Parses a row of data into a FactoryDataPoint
-     * @param values Array of string values from CSV
-     * @return Parsed FactoryDataPoint
+     * Loads data from CSV file through a memory-mapped scan.
+     * Numeric cells are parsed straight from the mapped bytes, so no String
+     * is created per cell. Produces the same data points as loadData.
+     * @param filePath Path to the CSV file
+     * @return true if loading was successful
      */
-    private FactoryDataPoint parseDataPoint(String[] values) {
-        FactoryDataPoint point = new FactoryDataPoint();
-        
-        // Set timestamp
-        point.setTimestamp(values[0]);
-        
-        // Set ambient conditions
-        point.setAmbientHumidity(parseFloat(values[1]));
-        point.setAmbientTemperature(parseFloat(values[2]));
-        
-        // First stage machine data
-        Map<Integer, MachineData> machineData = new HashMap<>();
-        for (int machineId = 1; machineId <= 3; machineId++) {
-            MachineData machine = new MachineData();
-            int baseIdx = (machineId - 1) * 12 + 3; // Calculate base index for each machine
-            
-            // Raw material properties
-            machine.setRawMaterialProperty1(parseFloat(values[baseIdx]));
-            machine.setRawMaterialProperty2(parseInt(values[baseIdx + 1]));
-            machine.setRawMaterialProperty3(parseFloat(values[baseIdx + 2]));
-            machine.setRawMaterialProperty4(parseInt(values[baseIdx + 3]));
-            
-            // Process variables
-            machine.setRawMaterialFeederParameter(parseFloat(values[baseIdx + 4]));
-            machine.setZone1Temperature(parseFloat(values[baseIdx + 5]));
-            machine.setZone2Temperature(parseFloat(values[baseIdx + 6]));
-            machine.setMotorAmperage(parseFloat(values[baseIdx + 7]));
-            machine.setMotorRPM(parseFloat(values[baseIdx + 8]));
-            machine.setMaterialPressure(parseFloat(values[baseIdx + 9]));
-            machine.setMaterialTemperature(parseFloat(values[baseIdx + 10]));
-            machine.setExitZoneTemperature(parseFloat(values[baseIdx + 11]));
-            
-            machineData.put(machineId, machine);
-        }
-        point.setFirstStageMachineData(machineData);
-        
-        // Combiner data
-        CombinerData combiner = new CombinerData();
-        combiner.setTemperature1(parseFloat(values[39]));
-        combiner.setTemperature2(parseFloat(values[40]));
-        combiner.setTemperature3(parseFloat(values[41]));
-        point.setCombinerData(combiner);
-        
-        // Stage 1 output measurements - the primary outputs to control
-        List<Measurement> stage1Measurements = new ArrayList<>();
-        for (int i = 0; i < 15; i++) {
-            Measurement measurement = new Measurement();
-            int baseIdx = 42 + i * 2;
-            measurement.setActual(parseFloat(values[baseIdx]));
-            measurement.setSetpoint(parseFloat(values[baseIdx + 1]));
-            measurement.setFeatureId(i);
-            stage1Measurements.add(measurement);
-        }
-        point.setStage1Measurements(stage1Measurements);
-        
-        // Stage 2 machine data (Machine 4 and 5)
-        Map<Integer, SecondStageMachineData> secondStageMachineData = new HashMap<>();
+    public boolean loadDataMapped(String filePath) {
+        try (DataPointIterator iterator = iterate(filePath)) {
+            while (iterator.hasNext()) {
+                dataPoints.add(iterator.next());
+            }
+            
+            System.out.println("Loaded " + dataPoints.size() + " data points");
+            reportMissingValues();
+            buildTimeAxis();
+            return true;
+            
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error loading data: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Loads data from CSV file, parsing chunks of it in parallel on the common pool
+     * @param filePath Path to the CSV file
+     * @return true if loading was successful
+     */
+    public boolean loadDataParallel(String filePath) {
+        return loadDataParallel(filePath, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Loads data from CSV file, parsing chunks of it in parallel.
+     * The data rows are split into byte ranges aligned on line boundaries,
+     * each range is parsed from the mapped file by its own task, and the
+     * results are joined back in the original row order.
+     * @param filePath Path to the CSV file
+     * @param pool Pool to run the parse tasks on
+     * @return true if loading was successful
+     */
+    public boolean loadDataParallel(String filePath, ForkJoinPool pool) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long dataStart;
+            try (MappedCsvScanner scanner = new MappedCsvScanner(channel)) {
+                // Read header line
+                if (!scanner.nextRow()) {
+                    System.err.println("Empty file");
+                    return false;
+                }
+                readHeader(scanner);
+                dataStart = scanner.position();
+            }
+            
+            // Split the data rows into line-aligned chunks, a few per worker
+            long size = channel.size();
+            int chunkCount = (int) Math.max(1, Math.min(
+                pool.getParallelism() * 4L, (size - dataStart) / MIN_CHUNK_SIZE));
+            long[] boundaries = new long[chunkCount + 1];
+            boundaries[0] = dataStart;
+            for (int i = 1; i < chunkCount; i++) {
+                long target = dataStart + (size - dataStart) * i / chunkCount;
+                boundaries[i] = MappedCsvScanner.nextRowStart(channel, Math.max(target, boundaries[i - 1]), size);
+            }
+            boundaries[chunkCount] = size;
+            
+            List<FactoryDataPoint> parsed = pool.invoke(
+                new ChunkParseTask(channel, boundaries, 0, chunkCount));
+            dataPoints.addAll(parsed);
+            
+            System.out.println("Loaded " + dataPoints.size() + " data points using "
+                + chunkCount + " chunks");
+            reportMissingValues();
+            buildTimeAxis();
+            return true;
+            
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error loading data: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Loads data from CSV file into a columnar store.
+     * Rows are kept as one primitive array per column instead of one object
+     * graph per row; getDataPoints() then returns a view materializing rows
+     * on access.
+     * @param filePath Path to the CSV file
+     * @return true if loading was successful
+     */
+    public boolean loadColumns(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+             MappedCsvScanner scanner = new MappedCsvScanner(channel)) {
+            // Read header line
+            if (!scanner.nextRow()) {
+                System.err.println("Empty file");
+                return false;
+            }
+            readHeader(scanner);
+            
+            // Read data rows straight into the columns
+            FactoryColumnStore.Builder builder = new FactoryColumnStore.Builder(1024);
+            float[] row = newRow();
+            int timestampColumn = parsePlan.getTimestampColumn();
+            while (scanner.nextRow()) {
+                if (!fillRow(scanner, row, missingCounts)) {
+                    continue;
+                }
+                
+                long epochSecond = scanner.epochSecondCell(timestampColumn);
+                if (epochSecond != Timestamps.INVALID) {
+                    builder.addRow(epochSecond, row);
+                } else {
+                    builder.addRow(scanner.textCell(timestampColumn), row);
+                }
+            }
+            
+            columnStore = builder.build();
+            dataPoints = columnStore.asDataPointList();
+            setTimeAxis(columnStore.epochSecondColumn());
+            
+            System.out.println("Loaded " + columnStore.getRowCount() + " data points into column store");
+            reportMissingValues();
+            return true;
+            
+        } catch (IOException e) {
+            System.err.println("Error loading data: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Loads data from a binary snapshot written by FactorySnapshot.
+     * The snapshot is memory-mapped rather than parsed, so loading is
+     * near-instant and column pages are read from disk on first access.
+     * @param snapshotPath Path to the snapshot file
+     * @return true if loading was successful
+     */
+    public boolean loadSnapshot(String snapshotPath) {
+        try {
+            FactorySnapshot snapshot = FactorySnapshot.open(Paths.get(snapshotPath));
+            
+            setHeader(snapshot.getColumnNames());
+            columnStore = snapshot.getColumnStore();
+            dataPoints = columnStore.asDataPointList();
+            setTimeAxis(columnStore.epochSecondColumn());
+            
+            System.out.println("Mapped " + columnStore.getRowCount() + " data points from snapshot");
+            return true;
+            
+        } catch (IOException e) {
+            System.err.println("Error loading snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Opens a streaming iterator over the CSV file.
+     * Rows are parsed one at a time from the mapped file and are not kept
+     * by the loader, so memory use does not grow with the file size.
+     * The caller must close the iterator.
+     * @param filePath Path to the CSV file
+     * @return Iterator over the data points of the file
+     * @throws IOException If the file can't be opened or has no header
+     */
+    public DataPointIterator iterate(String filePath) throws IOException {
+        return new DataPointIterator(FileChannel.open(Paths.get(filePath), StandardOpenOption.READ));
+    }
+    
+    /**
+     * Streams the CSV file to a consumer in batches without keeping the data.
+     * The batch list is reused between calls, so consumers must not hold on to it.
+     * @param filePath Path to the CSV file
+     * @param batchSize Number of data points per batch
+     * @param batchConsumer Consumer called for each batch
+     * @return Number of data points streamed, or -1 if the file couldn't be read
+     */
+    public long streamData(String filePath, int batchSize, Consumer<List<FactoryDataPoint>> batchConsumer) {
+        long count = 0;
+        List<FactoryDataPoint> batch = new ArrayList<>(batchSize);
         
-        // Machine 4
-        SecondStageMachineData machine4 = new SecondStageMachineData();
-        machine4.setTemperature1(parseFloat(values[72]));
-        machine4.setTemperature2(parseFloat(values[73]));
-        machine4.setPressure(parseFloat(values[74]));
-        machine4.setTemperature3(parseFloat(values[75]));
-        machine4.setTemperature4(parseFloat(values[76]));
-        machine4.setTemperature5(parseFloat(values[77]));
-        machine4.setExitTemperature(parseFloat(values[78]));
-        secondStageMachineData.put(4, machine4);
+        try (DataPointIterator iterator = iterate(filePath)) {
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                count++;
+                
+                if (batch.size() >= batchSize) {
+                    batchConsumer.accept(batch);
+                    batch.clear();
+                }
+            }
+            
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+            return count;
+            
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error streaming data: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Streams the CSV file to a consumer in batches of recycled frames.
+     * Each row is parsed in place into a frame from the pool, and the
+     * frames of a batch are released as soon as the consumer returns, so
+     * steady-state streaming allocates no objects per row. Consumers must
+     * copy any data point they keep (see FactoryDataPoint.copy).
+     * @param filePath Path to the CSV file
+     * @param batchSize Number of data points per batch
+     * @param pool Pool of frames to parse into
+     * @param batchConsumer Consumer called for each batch
+     * @return Number of data points streamed, or -1 if the file couldn't be read
+     */
+    public long streamData(String filePath, int batchSize, FramePool pool,
+                           Consumer<List<FactoryDataPoint>> batchConsumer) {
+        long count = 0;
+        List<FactoryDataPoint> batch = new ArrayList<>(batchSize);
         
-        // Machine 5
-        SecondStageMachineData machine5 = new SecondStageMachineData();
-        machine5.setTemperature1(parseFloat(values[79]));
-        machine5.setTemperature2(parseFloat(values[80]));
-        machine5.setTemperature3(parseFloat(values[81]));
-        machine5.setTemperature4(parseFloat(values[82]));
-        machine5.setTemperature5(parseFloat(values[83]));
-        machine5.setTemperature6(parseFloat(values[84]));
-        machine5.setExitTemperature(parseFloat(values[85]));
-        secondStageMachineData.put(5, machine5);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+             MappedCsvScanner scanner = new MappedCsvScanner(channel)) {
+            // Read header line
+            if (!scanner.nextRow()) {
+                throw new IOException("Empty file");
+            }
+            readHeader(scanner);
+            
+            while (scanner.nextRow()) {
+                FactoryDataPoint frame = pool.acquire();
+                if (!parseFrame(scanner, frame, missingCounts)) {
+                    pool.release(frame);
+                    continue;
+                }
+                batch.add(frame);
+                count++;
+                
+                if (batch.size() >= batchSize) {
+                    batchConsumer.accept(batch);
+                    pool.releaseAll(batch);
+                    batch.clear();
+                }
+            }
+            
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+                pool.releaseAll(batch);
+            }
+            return count;
+            
+        } catch (IOException e) {
+            System.err.println("Error streaming data: " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Follows a CSV file that is still being written, in the manner of tail -f.
+     * Only bytes appended since the last read are mapped and parsed, and each
+     * run of new complete rows is handed to the consumer at once in batches of
+     * at most batchSize, so rows reach the consumer well under a second after
+     * they are written. Tailed rows are not kept by the loader.
+     * The batch list is reused between calls, so consumers must not hold on to it.
+     * @param filePath Path to the CSV file
+     * @param fromStart Whether to deliver the rows already in the file, or only rows appended later
+     * @param batchSize Maximum number of data points per batch
+     * @param batchConsumer Consumer called for each batch
+     * @return Tailer to run (or poll) and close
+     * @throws IOException If the file can't be opened
+     */
+    public Tailer tail(String filePath, boolean fromStart, int batchSize,
+                       Consumer<List<FactoryDataPoint>> batchConsumer) throws IOException {
+        return new Tailer(Paths.get(filePath), fromStart, batchSize, null, batchConsumer);
+    }
+    
+    /**
+     * Follows a CSV file that is still being written, delivering recycled
+     * frames from a pool. The frames of a batch are released as soon as
+     * the consumer returns, so consumers must copy any data point they keep.
+     * @param filePath Path to the CSV file
+     * @param fromStart Whether to deliver the rows already in the file, or only rows appended later
+     * @param batchSize Maximum number of data points per batch
+     * @param pool Pool of frames to parse into
+     * @param batchConsumer Consumer called for each batch
+     * @return Tailer to run (or poll) and close
+     * @throws IOException If the file can't be opened
+     */
+    public Tailer tail(String filePath, boolean fromStart, int batchSize, FramePool pool,
+                       Consumer<List<FactoryDataPoint>> batchConsumer) throws IOException {
+        return new Tailer(Paths.get(filePath), fromStart, batchSize, pool, batchConsumer);
+    }
+    
+    /**
+     * Reads the column headers from the current row of a scanner
+     */
+    private void readHeader(MappedCsvScanner scanner) {
+        String[] header = new String[scanner.cellCount()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = scanner.textCell(i);
+        }
+        setHeader(header);
+    }
+    
+    /**
+     * Records the column headers and compiles the parse plan for them,
+     * so rows can be parsed in any column order without name lookups
+     */
+    private void setHeader(String[] header) {
+        columnNames = header;
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndices.put(columnNames[i].trim(), i);
+        }
         
-        point.setSecondStageMachineData(secondStageMachineData);
+        parsePlan = ParsePlan.compile(columnNames);
+        if (parsePlan.isPositional()) {
+            System.out.println("Unrecognized header, assuming dataset column order");
+        } else if (!parsePlan.getMissingColumns().isEmpty()) {
+            System.err.println("Columns missing from header, treated as missing values: "
+                + parsePlan.getMissingColumns());
+        }
+    }
+    
+    /**
+     * New row buffer indexed by schema column. Columns the header doesn't
+     * provide are never written, so they stay missing (NaN).
+     */
+    private static float[] newRow() {
+        float[] row = new float[FactorySchema.COLUMN_COUNT];
+        Arrays.fill(row, Float.NaN);
+        return row;
+    }
+    
+    /**
+     * Parses the numeric cells of the current row of a scanner into schema slots
+     * @param scanner Scanner positioned on a data row
+     * @param row Reusable buffer indexed by schema column
+     * @param missing Missing value counters to update, by schema column
+     * @return false if the row is inconsistent with the header
+     */
+    private boolean fillRow(MappedCsvScanner scanner, float[] row, long[] missing) {
+        ParsePlan plan = parsePlan;
+        int columnCount = plan.getColumnCount();
+        if (scanner.cellCount() != columnCount) {
+            System.err.println("Inconsistent data in row: " + scanner.rowText());
+            return false;
+        }
         
-        // Stage 2 output measurements - secondary outputs
-        List<Measurement> stage2Measurements = new ArrayList<>();
-        for (int i = 0; i < 15; i++) {
-            Measurement measurement = new Measurement();
-            int baseIdx = 86 + i * 2;
-            measurement.setActual(parseFloat(values[baseIdx]));
-            measurement.setSetpoint(parseFloat(values[baseIdx + 1]));
-            measurement.setFeatureId(i);
-            stage2Measurements.add(measurement);
-        }
-        point.setStage2Measurements(stage2Measurements);
+        for (int i = 0; i < columnCount; i++) {
+            int slot = plan.slot(i);
+            if (slot > FactorySchema.TIMESTAMP) {
+                float value = plan.isIntegerColumn(i) ? scanner.integerCell(i) : scanner.floatCell(i);
+                if (Float.isNaN(value)) {
+                    missing[slot]++;
+                }
+                row[slot] = value;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Parses the current row of a scanner into a FactoryDataPoint
+     * @param scanner Scanner positioned on a data row
+     * @param row Reusable buffer indexed by schema column
+     * @param missing Missing value counters to update, by schema column
+     * @return Parsed FactoryDataPoint, or null if the row is inconsistent
+     */
+    private FactoryDataPoint parseRow(MappedCsvScanner scanner, float[] row, long[] missing) {
+        if (!fillRow(scanner, row, missing)) {
+            return null;
+        }
+        int timestampColumn = parsePlan.getTimestampColumn();
+        long epochSecond = scanner.epochSecondCell(timestampColumn);
         
-        return point;
+        // Timestamp text is only needed when it is not in the dataset format
+        String text = epochSecond == Timestamps.INVALID ? scanner.textCell(timestampColumn) : null;
+        return FactorySchema.toDataPoint(epochSecond, text, row);
     }
     
     /**
-     * Safely parse float values
+     * Parses the current row of a scanner in place into a recycled frame
+     * @param scanner Scanner positioned on a data row
+     * @param frame Frame acquired from a FramePool
+     * @param missing Missing value counters to update, by schema column
+     * @return false if the row is inconsistent
      */
-    private float parseFloat(String value) {
-        try {
-            return Float.parseFloat(value);
-        } catch (NumberFormatException e) {
-            return 0.0f;
+    private boolean parseFrame(MappedCsvScanner scanner, FactoryDataPoint frame, long[] missing) {
+        if (!fillRow(scanner, frame.getValues(), missing)) {
+            return false;
+        }
+        int timestampColumn = parsePlan.getTimestampColumn();
+        long epochSecond = scanner.epochSecondCell(timestampColumn);
+        frame.setEpochSecond(epochSecond);
+        if (epochSecond == Timestamps.INVALID) {
+            frame.setTimestamp(scanner.textCell(timestampColumn));
+        }
+        return true;
+    }
+    
+    /**
+     * Parses a row of data into a FactoryDataPoint
+     * @param values Array of string values from CSV
+     * @return Parsed FactoryDataPoint
+     */
+    private FactoryDataPoint parseDataPoint(String[] values) {
+        ParsePlan plan = parsePlan;
+        float[] row = newRow();
+        for (int i = 0; i < values.length; i++) {
+            int slot = plan.slot(i);
+            if (slot > FactorySchema.TIMESTAMP) {
+                String value = values[i];
+                row[slot] = plan.isIntegerColumn(i)
+                    ? CsvNumberParser.parseInteger(value, 0, value.length())
+                    : CsvNumberParser.parseFloat(value, 0, value.length());
+                if (Float.isNaN(row[slot])) {
+                    missingCounts[slot]++;
+                }
+            }
         }
+        return FactorySchema.toDataPoint(values[plan.getTimestampColumn()], row);
     }
     
     /**
-     * Safely parse integer values
+     * Builds the time axis from the epoch seconds parsed into the data points
      */
-    private int parseInt(String value) {
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return 0;
+    private void buildTimeAxis() {
+        long[] epochSeconds = new long[dataPoints.size()];
+        for (int row = 0; row < epochSeconds.length; row++) {
+            epochSeconds[row] = dataPoints.get(row).getEpochSecond();
+        }
+        setTimeAxis(LongBuffer.wrap(epochSeconds));
+    }
+    
+    /**
+     * Sets the time axis and checks whether the rows are in time order,
+     * which time range queries need for binary search
+     */
+    private void setTimeAxis(LongBuffer epochSeconds) {
+        timeAxis = epochSeconds;
+        timeOrdered = true;
+        long previous = Long.MIN_VALUE;
+        for (int row = 0; row < timeAxis.limit(); row++) {
+            long epochSecond = timeAxis.get(row);
+            if (epochSecond == Timestamps.INVALID || epochSecond < previous) {
+                timeOrdered = false;
+                break;
+            }
+            previous = epochSecond;
+        }
+    }
+    
+    /**
+     * Prints a summary of the missing values found while loading
+     */
+    private void reportMissingValues() {
+        Map<String, Long> missing = getMissingValueCounts();
+        if (!missing.isEmpty()) {
+            long total = 0;
+            for (long count : missing.values()) {
+                total += count;
+            }
+            System.out.println("Found " + total + " missing values in " + missing.size() + " columns");
         }
     }
     
@@ -206,6 +590,51 @@ public class DataLoader {
         return dataPoints;
     }
     
+    /**
+     * Get the number of missing (empty or unparseable) cells in a column.
+     * Missing cells are loaded as NaN.
+     * @param column Column index (see FactorySchema)
+     */
+    public long getMissingValueCount(int column) {
+        synchronized (missingCounts) {
+            return missingCounts[column];
+        }
+    }
+    
+    /**
+     * Get the number of missing (empty or unparseable) cells per column
+     * @return Map of column name to count, for columns with missing cells
+     */
+    public Map<String, Long> getMissingValueCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        synchronized (missingCounts) {
+            for (int column = 0; column < missingCounts.length; column++) {
+                if (missingCounts[column] > 0) {
+                    counts.put(FactorySchema.COLUMN_NAMES[column], missingCounts[column]);
+                }
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Get the column names from the file header
+     */
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+    
+    /**
+     * Get the loaded data as a column store.
+     * Data loaded as objects is converted on first use.
+     */
+    public FactoryColumnStore getColumnStore() {
+        if (columnStore == null) {
+            columnStore = FactoryColumnStore.fromDataPoints(dataPoints);
+        }
+        return columnStore;
+    }
+    
     /**
      * Get a subset of data points within a time range
      * @param startIdx Start index
@@ -219,6 +648,72 @@ public class DataLoader {
         return dataPoints.subList(startIdx, endIdx + 1);
     }
     
+    /**
+     * Get the data points with timestamps in [start, end).
+     * Uses binary search on the time axis when the rows are in time order
+     * (as exported), and a linear scan otherwise.
+     * @param start Start of the time range (inclusive)
+     * @param end End of the time range (exclusive)
+     * @return List of data points in the range
+     */
+    public List<FactoryDataPoint> getDataPointsBetween(Instant start, Instant end) {
+        int[] rows = getRowRangeBetween(start, end);
+        if (rows != null) {
+            return dataPoints.subList(rows[0], rows[1]);
+        }
+        
+        // Rows out of time order
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        List<FactoryDataPoint> result = new ArrayList<>();
+        for (int row = 0; row < timeAxis.limit(); row++) {
+            long epochSecond = timeAxis.get(row);
+            if (epochSecond != Timestamps.INVALID && epochSecond >= from && epochSecond < to) {
+                result.add(dataPoints.get(row));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Get the rows with timestamps in [start, end), for use with the column store
+     * @param start Start of the time range (inclusive)
+     * @param end End of the time range (exclusive)
+     * @return First row and one past the last row, or null if the rows are not in time order
+     */
+    public int[] getRowRangeBetween(Instant start, Instant end) {
+        if (!timeOrdered) {
+            return null;
+        }
+        int first = lowerBound(toEpochSecond(start));
+        int last = Math.max(first, lowerBound(toEpochSecond(end)));
+        return new int[] {first, last};
+    }
+    
+    /**
+     * First row of the time axis at or after an epoch second
+     */
+    private int lowerBound(long epochSecond) {
+        int low = 0;
+        int high = timeAxis.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timeAxis.get(middle) < epochSecond) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Smallest whole epoch second at or after an instant
+     */
+    private static long toEpochSecond(Instant instant) {
+        return instant.getNano() > 0 ? instant.getEpochSecond() + 1 : instant.getEpochSecond();
+    }
+    
     /**
      * Calculate average deviation from setpoint for Stage 1 measurements
      * This can be used for anomaly detection
@@ -226,26 +721,30 @@ public class DataLoader {
      */
     public Map<Integer, Float> calculateStage1Deviations() {
         Map<Integer, Float> deviations = new HashMap<>();
-        Map<Integer, Integer> counts = new HashMap<>();
+        FactoryColumnStore store = getColumnStore();
+        int rowCount = store.getRowCount();
         
-        for (FactoryDataPoint point : dataPoints) {
-            for (Measurement m : point.getStage1Measurements()) {
-                int featureId = m.getFeatureId();
-                float deviation = Math.abs(m.getActual() - m.getSetpoint());
-                
-                if (!deviations.containsKey(featureId)) {
-                    deviations.put(featureId, deviation);
-                    counts.put(featureId, 1);
-                } else {
-                    deviations.put(featureId, deviations.get(featureId) + deviation);
-                    counts.put(featureId, counts.get(featureId) + 1);
-                }
-            }
+        if (rowCount == 0) {
+            return deviations;
         }
         
-        // Calculate averages
-        for (int featureId : deviations.keySet()) {
-            deviations.put(featureId, deviations.get(featureId) / counts.get(featureId));
+        for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+            FloatBuffer actual = store.column(FactorySchema.stage1Actual(featureId));
+            FloatBuffer setpoint = store.column(FactorySchema.stage1Setpoint(featureId));
+            
+            // Rows with a missing actual or setpoint are skipped
+            float sum = 0;
+            int count = 0;
+            for (int row = 0; row < rowCount; row++) {
+                float deviation = Math.abs(actual.get(row) - setpoint.get(row));
+                if (!Float.isNaN(deviation)) {
+                    sum += deviation;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                deviations.put(featureId, sum / count);
+            }
         }
         
         return deviations;
@@ -268,17 +767,360 @@ public class DataLoader {
         
         // Add machine states (simplified)
         for (int machineId = 1; machineId <= 3; machineId++) {
-            MachineData machine = dataPoint.getFirstStageMachineData().get(machineId);
-            blockchainData.put("machine" + machineId + "ExitTemp", machine.getExitZoneTemperature());
-            blockchainData.put("machine" + machineId + "Pressure", machine.getMaterialPressure());
+            blockchainData.put("machine" + machineId + "ExitTemp",
+                dataPoint.getMachineValue(machineId, FactorySchema.EXIT_ZONE_TEMPERATURE));
+            blockchainData.put("machine" + machineId + "Pressure",
+                dataPoint.getMachineValue(machineId, FactorySchema.MATERIAL_PRESSURE));
         }
         
         // Add stage 1 measurement deviations
-        for (Measurement m : dataPoint.getStage1Measurements()) {
-            float deviation = m.getActual() - m.getSetpoint();
-            blockchainData.put("stage1Deviation" + m.getFeatureId(), deviation);
+        for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+            float deviation = dataPoint.getStage1Actual(featureId) - dataPoint.getStage1Setpoint(featureId);
+            blockchainData.put("stage1Deviation" + featureId, deviation);
         }
         
         return blockchainData;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Streaming iterator over the rows of a memory-mapped CSV file
+     */
+    public class DataPointIterator implements Iterator<FactoryDataPoint>, Closeable {
+        private final FileChannel channel;
+        private final MappedCsvScanner scanner;
+        private final float[] row;
+        private FactoryDataPoint next;
+        
+        private DataPointIterator(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.scanner = new MappedCsvScanner(channel);
+            
+            // Read header line
+            if (!scanner.nextRow()) {
+                channel.close();
+                throw new IOException("Empty file");
+            }
+            readHeader(scanner);
+            
+            // One row buffer is reused for every row
+            this.row = newRow();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            
+            try {
+                while (scanner.nextRow()) {
+                    next = parseRow(scanner, row, missingCounts);
+                    if (next != null) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        @Override
+        public FactoryDataPoint next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FactoryDataPoint point = next;
+            next = null;
+            return point;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            scanner.close();
+            channel.close();
+        }
+    }
+    
+    /**
+     * Follower of a growing CSV file, created by tail()
+     * Tracks the file offset just past the last complete row read. A partial
+     * last line is left for a later read, and a file that shrinks is taken
+     * to have been truncated and is read again from its header.
+     */
+    public class Tailer implements Closeable {
+        private final Path path;
+        private final FileChannel channel;
+        private final int batchSize;
+        private final FramePool pool;
+        private final Consumer<List<FactoryDataPoint>> batchConsumer;
+        private final List<FactoryDataPoint> batch;
+        private final float[] row = newRow();
+        private final long[] missing = new long[FactorySchema.COLUMN_COUNT];
+        private long existingSize;
+        private boolean headerRead;
+        private long position;
+        private long rowCount;
+        private volatile boolean closed;
+        private volatile boolean running;
+        private volatile WatchService watcher;
+        
+        private Tailer(Path path, boolean fromStart, int batchSize, FramePool pool,
+                       Consumer<List<FactoryDataPoint>> batchConsumer) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.batchSize = batchSize;
+            this.pool = pool;
+            this.batchConsumer = batchConsumer;
+            this.batch = new ArrayList<>(batchSize);
+            this.existingSize = fromStart ? 0 : channel.size();
+        }
+        
+        /**
+         * Reads the complete rows appended since the last read
+         * @return Number of data points delivered
+         * @throws IOException If the file can't be read
+         */
+        public int poll() throws IOException {
+            long size = channel.size();
+            if (size < position) {
+                System.out.println("File " + path + " was truncated, reading it again from the start");
+                position = 0;
+                headerRead = false;
+            }
+            
+            long end = MappedCsvScanner.lastRowEnd(channel, position, size);
+            if (end <= position) {
+                return 0;
+            }
+            
+            if (!headerRead) {
+                try (MappedCsvScanner scanner = new MappedCsvScanner(channel, position, end, CHUNK_WINDOW_SIZE)) {
+                    scanner.nextRow();
+                    readHeader(scanner);
+                    position = scanner.position();
+                }
+                headerRead = true;
+                
+                // Rows complete when the tailer was created are skipped unless reading from the start
+                position = MappedCsvScanner.lastRowEnd(channel, position, Math.min(existingSize, end));
+                existingSize = 0;
+                if (end <= position) {
+                    return 0;
+                }
+            }
+            
+            int delivered = 0;
+            try (MappedCsvScanner scanner = new MappedCsvScanner(channel, position, end, CHUNK_WINDOW_SIZE)) {
+                while (scanner.nextRow()) {
+                    FactoryDataPoint point = nextPoint(scanner);
+                    if (point == null) {
+                        continue;
+                    }
+                    batch.add(point);
+                    delivered++;
+                    
+                    if (batch.size() >= batchSize) {
+                        deliverBatch();
+                    }
+                }
+            } finally {
+                position = end;
+                mergeMissingCounts();
+            }
+            
+            // Deliver the rest now rather than waiting for a full batch
+            if (!batch.isEmpty()) {
+                deliverBatch();
+            }
+            rowCount += delivered;
+            return delivered;
+        }
+        
+        /**
+         * Parse the scanner's current row into a new data point or a recycled frame
+         */
+        private FactoryDataPoint nextPoint(MappedCsvScanner scanner) {
+            if (pool == null) {
+                return parseRow(scanner, row, missing);
+            }
+            FactoryDataPoint frame = pool.acquire();
+            if (!parseFrame(scanner, frame, missing)) {
+                pool.release(frame);
+                return null;
+            }
+            return frame;
+        }
+        
+        private void deliverBatch() {
+            batchConsumer.accept(batch);
+            if (pool != null) {
+                pool.releaseAll(batch);
+            }
+            batch.clear();
+        }
+        
+        /**
+         * Follows the file until the tailer is closed.
+         * Waits for change notifications on the file's directory where the
+         * platform supports them, polling at an interval that starts at
+         * 10 ms after new rows and backs off to 250 ms while the file is idle.
+         * @return Number of data points delivered, or -1 if the file couldn't be read
+         */
+        public long run() {
+            running = true;
+            try {
+                watcher = openWatcher();
+                if (closed) {
+                    return rowCount;
+                }
+                
+                long pollMillis = TAIL_MIN_POLL_MILLIS;
+                while (!closed) {
+                    if (poll() > 0) {
+                        pollMillis = TAIL_MIN_POLL_MILLIS;
+                        continue;
+                    }
+                    
+                    if (watcher != null) {
+                        WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                        if (key != null) {
+                            key.pollEvents();
+                            key.reset();
+                        }
+                    } else {
+                        Thread.sleep(pollMillis);
+                    }
+                    pollMillis = Math.min(pollMillis * 2, TAIL_MAX_POLL_MILLIS);
+                }
+                return rowCount;
+                
+            } catch (ClosedWatchServiceException e) {
+                return rowCount;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return rowCount;
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error tailing data: " + e.getMessage());
+                return -1;
+            } finally {
+                closeQuietly();
+            }
+        }
+        
+        /**
+         * Watch service for the file's directory, or null if not available
+         */
+        private WatchService openWatcher() {
+            Path directory = path.toAbsolutePath().getParent();
+            try {
+                WatchService service = FileSystems.getDefault().newWatchService();
+                directory.register(service, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+                return service;
+            } catch (IOException | UnsupportedOperationException e) {
+                System.out.println("File change notifications not available, polling " + path);
+                return null;
+            }
+        }
+        
+        private void mergeMissingCounts() {
+            synchronized (missingCounts) {
+                for (int column = 0; column < missing.length; column++) {
+                    missingCounts[column] += missing[column];
+                }
+            }
+            Arrays.fill(missing, 0);
+        }
+        
+        private void closeQuietly() {
+            try {
+                if (watcher != null) {
+                    watcher.close();
+                }
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing tailed file: " + e.getMessage());
+            }
+        }
+        
+        // Getters
+        public long getRowCount() { return rowCount; }
+        public long getPosition() { return position; }
+        
+        /**
+         * Stops following the file; a running run() returns shortly after
+         */
+        @Override
+        public void close() {
+            closed = true;
+            if (!running) {
+                closeQuietly();
+            } else if (watcher != null) {
+                try {
+                    // Wakes run() from waiting for a notification
+                    watcher.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing file watcher: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Fork/join task parsing a run of line-aligned chunks of the CSV file.
+     * Splits in halves until a single chunk is left, then joins the halves
+     * back in file order.
+     */
+    private class ChunkParseTask extends RecursiveTask<List<FactoryDataPoint>> {
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final int fromChunk;
+        private final int toChunk;
+        
+        ChunkParseTask(FileChannel channel, long[] boundaries, int fromChunk, int toChunk) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+        
+        @Override
+        protected List<FactoryDataPoint> compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                ChunkParseTask left = new ChunkParseTask(channel, boundaries, fromChunk, middle);
+                ChunkParseTask right = new ChunkParseTask(channel, boundaries, middle, toChunk);
+                right.fork();
+                List<FactoryDataPoint> result = left.compute();
+                result.addAll(right.join());
+                return result;
+            }
+            
+            long start = boundaries[fromChunk];
+            long end = boundaries[toChunk];
+            List<FactoryDataPoint> result = new ArrayList<>();
+            float[] row = newRow();
+            long[] missing = new long[FactorySchema.COLUMN_COUNT];
+            
+            try (MappedCsvScanner scanner = new MappedCsvScanner(channel, start, end, CHUNK_WINDOW_SIZE)) {
+                while (scanner.nextRow()) {
+                    FactoryDataPoint point = parseRow(scanner, row, missing);
+                    if (point != null) {
+                        result.add(point);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            
+            // Counted per chunk, merged once
+            synchronized (missingCounts) {
+                for (int column = 0; column < missing.length; column++) {
+                    missingCounts[column] += missing[column];
+                }
+            }
+            return result;
+        }
+    }
+}
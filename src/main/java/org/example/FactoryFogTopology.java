@@ -1,76 +1,302 @@
 package org.example;
 
-import org.example.data.CombinerData;
 import org.example.data.FactoryDataPoint;
-import org.example.data.MachineData;
-import org.example.data.Measurement;
-import org.example.data.SecondStageMachineData;
+import org.example.data.FactorySchema;
+import org.example.data.FrameRing;
+import org.example.data.HistoryRing;
+import org.example.data.Timestamps;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Factory Fog Topology
- * Manages the fog computing nodes for processing factory data
+ * Manages the fog computing nodes for processing factory data. The nodes form
+ * a dataflow graph following the production line: machines 1-3 feed the
+ * combiner, the combiner feeds machines 4 and 5, and those feed the output.
+ * Each node gets its own sensor data for a row, waits for the results of its
+ * upstream nodes for the same row, and passes its own result downstream, so
+ * the stages work on successive rows at the same time.
+ *
+ * A topology can host several production lines, each with its own set of
+ * nodes and frame ring. Nodes are addressed by integer handles (see
+ * nodeHandle). How nodes get threads is set by the Scheduling: a worker per
+ * node, a fixed number of shard workers each running whole lines,
+ * per-node micro-batch tasks on a work-stealing ForkJoinPool, or a virtual
+ * thread per node, which lets nodes block on I/O without holding a core.
+ *
+ * Any node can instead run in another process, such as a separate fog box
+ * (see setRemoteNode): the topology then talks to it through a RemoteFogNode,
+ * wiring, feeding and draining it like a local node (see FogEndpoint).
  */
 public class FactoryFogTopology {
+    // Recent frames kept when no frame ring is given (one hour at 1 Hz)
+    private static final int DEFAULT_FRAME_RING_CAPACITY = 3600;
+    
+    // Node roles within a line, in dataflow order; a node's handle is line * NODES_PER_LINE + role
+    public static final int MACHINE_1 = 0;
+    public static final int MACHINE_2 = 1;
+    public static final int MACHINE_3 = 2;
+    public static final int COMBINER = 3;
+    public static final int MACHINE_4 = 4;
+    public static final int MACHINE_5 = 5;
+    public static final int OUTPUT = 6;
+    public static final int NODES_PER_LINE = 7;
+    private static final String[] ROLE_NAMES = {"machine-1", "machine-2", "machine-3", "combiner", "machine-4", "machine-5", "output"};
+    
+    /**
+     * How fog nodes are given threads
+     */
+    public enum Scheduling {
+        // Each node has its own worker thread
+        NODE_WORKERS,
+        // Lines are spread over a fixed number of shard workers, each running all nodes of its lines
+        SHARDS,
+        // Each node's queued packets run as micro-batch tasks on a work-stealing pool
+        WORK_STEALING,
+        // Each node has its own virtual thread (Java 21), falling back to NODE_WORKERS on older JDKs
+        VIRTUAL_THREADS
+    }
+    
+    private final int lineCount;
+    private final Scheduling scheduling;
+    private final int shardCount;
+    private final WorkStealingScheduler scheduler;
+    private final FogEndpoint[] nodes;
     private final Map<String, FogNode> fogNodes;
+    // Nodes running in other processes, by node ID, placed before initialize
+    private final Map<String, InetSocketAddress> remoteAddresses = new HashMap<>();
+    private final List<RemoteFogNode> remoteNodes = new ArrayList<>();
+    private final Shard[] shards;
     private final DataLoader dataLoader;
     private final BlockchainLogger blockchainLogger;
+    private final FrameRing[] frameRings;
     
     private final ExecutorService executorService;
     private final AtomicBoolean isRunning;
     
+    // Sequence number of the next row of each line, joining a row's packets across the graph
+    private final long[] nextSequence;
+    
     /**
      * Create a new fog topology
      * @param dataLoader Data loader for factory data
      * @param blockchainLogger Blockchain logger
      */
     public FactoryFogTopology(DataLoader dataLoader, BlockchainLogger blockchainLogger) {
-        this.fogNodes = new HashMap<>();
+        this(dataLoader, blockchainLogger, FrameRing.allocate(DEFAULT_FRAME_RING_CAPACITY));
+    }
+    
+    /**
+     * Create a new fog topology that keeps recent history in a shared frame ring
+     * @param dataLoader Data loader for factory data
+     * @param blockchainLogger Blockchain logger
+     * @param frameRing Frame ring the topology appends every processed data point to;
+     *                  other components read it through their own cursors
+     */
+    public FactoryFogTopology(DataLoader dataLoader, BlockchainLogger blockchainLogger, FrameRing frameRing) {
+        this(dataLoader, blockchainLogger, new FrameRing[] {frameRing}, Scheduling.NODE_WORKERS, 0);
+    }
+    
+    /**
+     * Create a new fog topology for several production lines, spread over shard workers
+     * @param dataLoader Data loader for factory data
+     * @param blockchainLogger Blockchain logger
+     * @param lineCount Number of production lines
+     * @param shardCount Number of shard workers the lines are spread over, e.g. the number of cores
+     * @param frameRingCapacity Recent frames kept for each line
+     */
+    public FactoryFogTopology(DataLoader dataLoader, BlockchainLogger blockchainLogger,
+                              int lineCount, int shardCount, int frameRingCapacity) {
+        this(dataLoader, blockchainLogger, lineCount, Scheduling.SHARDS, shardCount, frameRingCapacity);
+    }
+    
+    /**
+     * Create a new fog topology for several production lines
+     * @param dataLoader Data loader for factory data
+     * @param blockchainLogger Blockchain logger
+     * @param lineCount Number of production lines
+     * @param scheduling How nodes are given threads
+     * @param workerCount Shard workers or work-stealing pool threads, e.g. the number of cores;
+     *                    ignored for NODE_WORKERS and VIRTUAL_THREADS
+     * @param frameRingCapacity Recent frames kept for each line
+     */
+    public FactoryFogTopology(DataLoader dataLoader, BlockchainLogger blockchainLogger, int lineCount,
+                              Scheduling scheduling, int workerCount, int frameRingCapacity) {
+        this(dataLoader, blockchainLogger, allocateFrameRings(lineCount, frameRingCapacity), scheduling, workerCount);
+    }
+    
+    private FactoryFogTopology(DataLoader dataLoader, BlockchainLogger blockchainLogger,
+                               FrameRing[] frameRings, Scheduling scheduling, int workerCount) {
+        if ((scheduling == Scheduling.SHARDS || scheduling == Scheduling.WORK_STEALING) && workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        this.lineCount = frameRings.length;
+        this.scheduling = scheduling;
+        this.shardCount = scheduling == Scheduling.SHARDS ? Math.min(workerCount, lineCount) : 0;
+        this.nodes = new FogEndpoint[lineCount * NODES_PER_LINE];
+        // Nodes are kept in dataflow order, upstream first
+        this.fogNodes = new LinkedHashMap<>();
+        this.shards = new Shard[this.shardCount];
         this.dataLoader = dataLoader;
         this.blockchainLogger = blockchainLogger;
-        this.executorService = Executors.newCachedThreadPool();
+        this.frameRings = frameRings;
+        this.nextSequence = new long[lineCount];
+        // One thread per node, a fixed pool with one thread per shard, or a work-stealing pool
+        if (scheduling == Scheduling.WORK_STEALING) {
+            this.scheduler = new WorkStealingScheduler(workerCount, nodes.length);
+            this.executorService = scheduler.pool;
+        } else if (scheduling == Scheduling.VIRTUAL_THREADS) {
+            this.scheduler = null;
+            this.executorService = ThreadingMode.VIRTUAL.newExecutor(0);
+        } else {
+            this.scheduler = null;
+            this.executorService = scheduling == Scheduling.SHARDS
+                ? Executors.newFixedThreadPool(shardCount) : Executors.newCachedThreadPool();
+        }
         this.isRunning = new AtomicBoolean(false);
     }
     
+    private static FrameRing[] allocateFrameRings(int lineCount, int capacity) {
+        if (lineCount < 1) {
+            throw new IllegalArgumentException("Line count must be at least 1: " + lineCount);
+        }
+        FrameRing[] frameRings = new FrameRing[lineCount];
+        for (int line = 0; line < lineCount; line++) {
+            frameRings[line] = FrameRing.allocate(capacity);
+        }
+        return frameRings;
+    }
+    
+    /**
+     * Handle of a node, for fast lookup with getNode(int)
+     * @param line Production line, from 0
+     * @param role Node role, e.g. COMBINER
+     * @return Node handle
+     */
+    public static int nodeHandle(int line, int role) {
+        return line * NODES_PER_LINE + role;
+    }
+    
+    /**
+     * Name of a node role, which is the node ID on a single line
+     * @param role Node role, e.g. COMBINER
+     * @return Role name, e.g. "combiner"
+     */
+    public static String roleName(int role) {
+        return ROLE_NAMES[role];
+    }
+    
+    /**
+     * Run a node in another process instead of this one. Must be called before initialize.
+     * @param nodeId Node ID, e.g. "combiner" or "line-2/combiner"
+     * @param address Address of the FogNodeServer that runs the node
+     */
+    public void setRemoteNode(String nodeId, InetSocketAddress address) {
+        remoteAddresses.put(nodeId, address);
+    }
+    
     /**
      * Initialize the fog topology with machine nodes
      */
     public void initialize() {
         System.out.println("Initializing fog topology...");
         
-        // Create fog nodes for each first-stage machine
-        for (int machineId = 1; machineId <= 3; machineId++) {
-            String nodeId = "machine-" + machineId;
-            FogNode node = new FogNode(nodeId, blockchainLogger);
-            fogNodes.put(nodeId, node);
-            System.out.println("Created fog node: " + nodeId);
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard] = new Shard(shard);
         }
         
-        // Create fog node for combiner
-        FogNode combinerNode = new FogNode("combiner", blockchainLogger);
-        fogNodes.put("combiner", combinerNode);
-        System.out.println("Created fog node: combiner");
-        
-        // Create fog nodes for second-stage machines
-        for (int machineId = 4; machineId <= 5; machineId++) {
-            String nodeId = "machine-" + machineId;
-            FogNode node = new FogNode(nodeId, blockchainLogger);
-            fogNodes.put(nodeId, node);
-            System.out.println("Created fog node: " + nodeId);
+        for (int line = 0; line < lineCount; line++) {
+            // A single line keeps the plain node IDs
+            String prefix = lineCount == 1 ? "" : "line-" + (line + 1) + "/";
+            for (int role = 0; role < NODES_PER_LINE; role++) {
+                String nodeId = prefix + ROLE_NAMES[role];
+                InetSocketAddress address = remoteAddresses.get(nodeId);
+                if (address != null) {
+                    RemoteFogNode node = new RemoteFogNode(nodeId, address);
+                    nodes[nodeHandle(line, role)] = node;
+                    remoteNodes.add(node);
+                    System.out.println("Created remote fog node: " + nodeId + " at " + address);
+                    continue;
+                }
+                
+                FogNode node = new FogNode(nodeId, blockchainLogger);
+                nodes[nodeHandle(line, role)] = node;
+                fogNodes.put(nodeId, node);
+                if (shards.length > 0) {
+                    shards[line % shards.length].add(node);
+                }
+                System.out.println("Created fog node: " + nodeId);
+            }
+            
+            // Connect the nodes along the production line
+            FogEndpoint combinerNode = nodes[nodeHandle(line, COMBINER)];
+            for (int role = MACHINE_1; role <= MACHINE_3; role++) {
+                nodes[nodeHandle(line, role)].connectTo(combinerNode);
+            }
+            for (int role = MACHINE_4; role <= MACHINE_5; role++) {
+                FogEndpoint node = nodes[nodeHandle(line, role)];
+                combinerNode.connectTo(node);
+                node.connectTo(nodes[nodeHandle(line, OUTPUT)]);
+            }
+        }
+    }
+    
+    /**
+     * Set the backpressure policy of every node's inbox, or outbox for remote nodes. Must be called before processing starts.
+     * @param policy Backpressure policy
+     */
+    public void setBackpressurePolicy(BackpressurePolicy policy) {
+        for (FogEndpoint node : nodes) {
+            node.setBackpressurePolicy(policy);
+        }
+    }
+    
+    /**
+     * Log every node's measurements as one summary per window instead of per row. Must be called before processing starts.
+     * Remote nodes summarize on their server.
+     * @param window Window, or null to log every row
+     */
+    public void setAggregationWindow(AggregationWindow window) {
+        for (FogEndpoint node : nodes) {
+            node.setAggregationWindow(window);
+        }
+    }
+    
+    /**
+     * Log only the measurements a filter forwards on every node, instead of every row. Must be called before processing starts.
+     * Each node filters its own signal; remote nodes filter on their server.
+     * @param filter Filter, or null to log every row
+     */
+    public void setSignalFilter(SignalFilter filter) {
+        for (FogEndpoint node : nodes) {
+            node.setSignalFilter(filter);
+        }
+    }
+    
+    /**
+     * Log what the nodes in this process still hold back, open windows and readings held by a
+     * filter; call once drained, at the end of a run. Remote nodes log theirs when their connection closes.
+     */
+    public void flushLogs() {
+        for (FogNode node : fogNodes.values()) {
+            node.flushLogs();
         }
-        
-        // Create fog node for final output processing
-        FogNode outputNode = new FogNode("output", blockchainLogger);
-        fogNodes.put("output", outputNode);
-        System.out.println("Created fog node: output");
     }
     
     /**
@@ -85,24 +311,42 @@ public class FactoryFogTopology {
         System.out.println("Starting fog topology processing...");
         isRunning.set(true);
         
-        // Start each fog node in its own thread
-        for (FogNode node : fogNodes.values()) {
-            executorService.submit(() -> {
-                try {
-                    node.start();
-                } catch (Exception e) {
-                    System.err.println("Error in fog node " + node.getNodeId() + ": " + e.getMessage());
-                    e.printStackTrace();
-                }
-            });
+        if (scheduling == Scheduling.SHARDS) {
+            for (Shard shard : shards) {
+                shard.start(executorService);
+            }
+        } else if (scheduling == Scheduling.WORK_STEALING) {
+            for (FogNode node : fogNodes.values()) {
+                node.start(scheduler);
+            }
+        } else {
+            // Start each fog node's worker in its own thread, virtual or platform
+            for (FogNode node : fogNodes.values()) {
+                node.start(executorService);
+            }
+        }
+        
+        // Remote nodes connect in the background; packets wait in their outboxes meanwhile
+        for (RemoteFogNode node : remoteNodes) {
+            node.start();
         }
     }
     
     /**
-     * Process a batch of data points through the fog topology
+     * Process a batch of data points of the first production line through the fog topology
      * @param dataPoints List of data points to process
      */
     public void processBatch(List<FactoryDataPoint> dataPoints) {
+        processBatch(0, dataPoints);
+    }
+    
+    /**
+     * Process a batch of data points of a production line through the fog topology.
+     * Only one thread at a time may send batches for a line.
+     * @param line Production line, from 0
+     * @param dataPoints List of data points to process
+     */
+    public void processBatch(int line, List<FactoryDataPoint> dataPoints) {
         if (!isRunning.get()) {
             System.out.println("Fog topology is not running, starting...");
             startProcessing();
@@ -110,178 +354,61 @@ public class FactoryFogTopology {
         
         System.out.println("Processing batch of " + dataPoints.size() + " data points");
         
+        FrameRing frameRing = frameRings[line];
+        int base = nodeHandle(line, 0);
+        
         // Process each data point
         for (FactoryDataPoint dataPoint : dataPoints) {
+            // Recent history is kept once, in the frame ring
+            frameRing.append(dataPoint);
+            long sequence = nextSequence[line]++;
+            
             // Distribute data to first-stage machine nodes
             for (int machineId = 1; machineId <= 3; machineId++) {
-                String nodeId = "machine-" + machineId;
-                FogNode node = fogNodes.get(nodeId);
-                
-                if (node != null && dataPoint.getFirstStageMachineData().containsKey(machineId)) {
-                    // Clone and extract just the relevant machine data to minimize network traffic
-                    FogDataPacket packet = new FogDataPacket(
-                        dataPoint.getTimestamp(),
-                        nodeId,
-                        extractMachineData(dataPoint, machineId)
-                    );
-                    
-                    node.receiveData(packet);
-                }
+                FogEndpoint node = nodes[base + MACHINE_1 + machineId - 1];
+                // Copy just the relevant machine data to minimize network traffic
+                node.receiveData(packet(dataPoint, sequence, node, FogPayload.FirstStageMachine.of(dataPoint, machineId)));
             }
             
-            // Send to combiner node
-            FogNode combinerNode = fogNodes.get("combiner");
-            if (combinerNode != null) {
-                // Create packet with combiner data and stage 1 measurements
-                FogDataPacket packet = new FogDataPacket(
-                    dataPoint.getTimestamp(),
-                    "combiner",
-                    extractCombinerData(dataPoint)
-                );
-                
-                combinerNode.receiveData(packet);
-            }
+            // Send to combiner node with combiner data and stage 1 measurements
+            FogEndpoint combinerNode = nodes[base + COMBINER];
+            combinerNode.receiveData(packet(dataPoint, sequence, combinerNode, FogPayload.Combiner.of(dataPoint)));
             
             // Distribute to second-stage machine nodes
             for (int machineId = 4; machineId <= 5; machineId++) {
-                String nodeId = "machine-" + machineId;
-                FogNode node = fogNodes.get(nodeId);
-                
-                if (node != null && dataPoint.getSecondStageMachineData().containsKey(machineId)) {
-                    // Create packet with second stage machine data
-                    FogDataPacket packet = new FogDataPacket(
-                        dataPoint.getTimestamp(),
-                        nodeId,
-                        extractSecondStageMachineData(dataPoint, machineId)
-                    );
-                    
-                    node.receiveData(packet);
-                }
+                FogEndpoint node = nodes[base + MACHINE_4 + machineId - 4];
+                node.receiveData(packet(dataPoint, sequence, node, FogPayload.SecondStageMachine.of(dataPoint, machineId)));
             }
             
-            // Send to output node for final processing
-            FogNode outputNode = fogNodes.get("output");
-            if (outputNode != null) {
-                // Create packet with all measurement data
-                FogDataPacket packet = new FogDataPacket(
-                    dataPoint.getTimestamp(),
-                    "output",
-                    extractOutputData(dataPoint)
-                );
-                
-                outputNode.receiveData(packet);
-            }
+            // Send to output node with all measurement data for final processing
+            FogEndpoint outputNode = nodes[base + OUTPUT];
+            outputNode.receiveData(packet(dataPoint, sequence, outputNode, FogPayload.Output.of(dataPoint)));
         }
     }
     
     /**
-     * Extract data relevant for a first-stage machine
+     * Create a packet of sensor data addressed to a node
      */
-    private Map<String, Object> extractMachineData(FactoryDataPoint dataPoint, int machineId) {
-        Map<String, Object> data = new HashMap<>();
-        
-        // Add ambient conditions
-        data.put("ambientTemperature", dataPoint.getAmbientTemperature());
-        data.put("ambientHumidity", dataPoint.getAmbientHumidity());
-        
-        // Add machine data
-        MachineData machineData = dataPoint.getFirstStageMachineData().get(machineId);
-        data.put("rawMaterialProperty1", machineData.getRawMaterialProperty1());
-        data.put("rawMaterialProperty2", machineData.getRawMaterialProperty2());
-        data.put("rawMaterialProperty3", machineData.getRawMaterialProperty3());
-        data.put("rawMaterialProperty4", machineData.getRawMaterialProperty4());
-        data.put("rawMaterialFeederParameter", machineData.getRawMaterialFeederParameter());
-        data.put("zone1Temperature", machineData.getZone1Temperature());
-        data.put("zone2Temperature", machineData.getZone2Temperature());
-        data.put("motorAmperage", machineData.getMotorAmperage());
-        data.put("motorRPM", machineData.getMotorRPM());
-        data.put("materialPressure", machineData.getMaterialPressure());
-        data.put("materialTemperature", machineData.getMaterialTemperature());
-        data.put("exitZoneTemperature", machineData.getExitZoneTemperature());
-        
-        return data;
+    private static FogDataPacket packet(FactoryDataPoint dataPoint, long sequence, FogEndpoint node, FogPayload payload) {
+        return new FogDataPacket(dataPoint.getTimestamp(), dataPoint.getEpochSecond(), sequence,
+            null, node.getNodeId(), payload, dataPoint.getEpochSecond());
     }
     
     /**
-     * Extract data relevant for the combiner
+     * Wait until every node has processed all packets it received so far
+     * @param timeout Longest time to wait
+     * @param unit Unit of the timeout
+     * @return true if all nodes drained, false on timeout or interruption
      */
-    private Map<String, Object> extractCombinerData(FactoryDataPoint dataPoint) {
-        Map<String, Object> data = new HashMap<>();
-        
-        // Add combiner data
-        CombinerData combinerData = dataPoint.getCombinerData();
-        data.put("temperature1", combinerData.getTemperature1());
-        data.put("temperature2", combinerData.getTemperature2());
-        data.put("temperature3", combinerData.getTemperature3());
-        
-        // Add stage 1 measurements
-        List<Map<String, Object>> measurements = new ArrayList<>();
-        for (Measurement m : dataPoint.getStage1Measurements()) {
-            Map<String, Object> measurement = new HashMap<>();
-            measurement.put("featureId", m.getFeatureId());
-            measurement.put("actual", m.getActual());
-            measurement.put("setpoint", m.getSetpoint());
-            measurements.add(measurement);
-        }
-        data.put("stage1Measurements", measurements);
-        
-        return data;
-    }
-    
-    /**
-     * Extract data relevant for a second-stage machine
-     */
-    private Map<String, Object> extractSecondStageMachineData(FactoryDataPoint dataPoint, int machineId) {
-        Map<String, Object> data = new HashMap<>();
-        
-        // Add machine data
-        SecondStageMachineData machineData = dataPoint.getSecondStageMachineData().get(machineId);
-        data.put("temperature1", machineData.getTemperature1());
-        data.put("temperature2", machineData.getTemperature2());
-        data.put("temperature3", machineData.getTemperature3());
-        data.put("temperature4", machineData.getTemperature4());
-        data.put("temperature5", machineData.getTemperature5());
-        
-        if (machineId == 5) {
-            data.put("temperature6", machineData.getTemperature6());
-        } else {
-            data.put("pressure", machineData.getPressure());
-        }
-        
-        data.put("exitTemperature", machineData.getExitTemperature());
-        
-        return data;
-    }
-    
-    /**
-     * Extract data relevant for the output node
-     */
-    private Map<String, Object> extractOutputData(FactoryDataPoint dataPoint) {
-        Map<String, Object> data = new HashMap<>();
-        
-        // Add stage 1 measurements
-        List<Map<String, Object>> stage1Measurements = new ArrayList<>();
-        for (Measurement m : dataPoint.getStage1Measurements()) {
-            Map<String, Object> measurement = new HashMap<>();
-            measurement.put("featureId", m.getFeatureId());
-            measurement.put("actual", m.getActual());
-            measurement.put("setpoint", m.getSetpoint());
-            stage1Measurements.add(measurement);
-        }
-        data.put("stage1Measurements", stage1Measurements);
-        
-        // Add stage 2 measurements
-        List<Map<String, Object>> stage2Measurements = new ArrayList<>();
-        for (Measurement m : dataPoint.getStage2Measurements()) {
-            Map<String, Object> measurement = new HashMap<>();
-            measurement.put("featureId", m.getFeatureId());
-            measurement.put("actual", m.getActual());
-            measurement.put("setpoint", m.getSetpoint());
-            stage2Measurements.add(measurement);
+    public boolean awaitDrained(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // Upstream first: a drained node has sent all its results downstream
+        for (FogEndpoint node : nodes) {
+            if (!node.awaitDrained(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
         }
-        data.put("stage2Measurements", stage2Measurements);
-        
-        return data;
+        return true;
     }
     
     /**
@@ -292,9 +419,12 @@ public class FactoryFogTopology {
         isRunning.set(false);
         
         // Stop all fog nodes
-        for (FogNode node : fogNodes.values()) {
+        for (FogEndpoint node : nodes) {
             node.stop();
         }
+        for (Shard shard : shards) {
+            shard.wakeUp();
+        }
     }
     
     /**
@@ -307,32 +437,430 @@ public class FactoryFogTopology {
     }
     
     /**
-     * Get a fog node by ID
+     * Wait for the node threads to exit after shutdown
+     * @return true if they all exited, false on timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executorService.awaitTermination(timeout, unit);
+    }
+    
+    /**
+     * Get a fog node running in this process by ID
      * @param nodeId Node ID
-     * @return FogNode or null if not found
+     * @return FogNode or null if not found or remote
      */
     public FogNode getNode(String nodeId) {
         return fogNodes.get(nodeId);
     }
     
     /**
-     * Get all fog nodes
-     * @return Map of node IDs to nodes
+     * Get a fog node by handle
+     * @param handle Node handle (see nodeHandle)
+     * @return FogNode, or RemoteFogNode for a node in another process
+     */
+    public FogEndpoint getNode(int handle) {
+        return nodes[handle];
+    }
+    
+    /**
+     * Get all fog nodes running in this process
+     * @return Map of node IDs to nodes, by line and upstream first
      */
     public Map<String, FogNode> getAllNodes() {
-        return new HashMap<>(fogNodes);
+        return new LinkedHashMap<>(fogNodes);
+    }
+    
+    /**
+     * Get the event time up to which rows have passed through the whole graph on every line
+     * @return Epoch seconds of the latest row completed by all output nodes, or Timestamps.INVALID
+     */
+    public long getWatermark() {
+        long watermark = Long.MAX_VALUE;
+        for (int line = 0; line < lineCount; line++) {
+            watermark = Math.min(watermark, getWatermark(line));
+        }
+        return watermark;
+    }
+    
+    /**
+     * Get the event time up to which rows of a line have passed through the whole graph
+     * @param line Production line, from 0
+     * @return Epoch seconds of the latest row completed by the line's output node, or Timestamps.INVALID
+     */
+    public long getWatermark(int line) {
+        return nodes[nodeHandle(line, OUTPUT)].getWatermark();
+    }
+    
+    /**
+     * Get the frame ring holding recent history of the first line
+     * @return Frame ring shared with other components
+     */
+    public FrameRing getFrameRing() {
+        return frameRings[0];
+    }
+    
+    /**
+     * Get the frame ring holding recent history of a line
+     * @param line Production line, from 0
+     * @return Frame ring shared with other components
+     */
+    public FrameRing getFrameRing(int line) {
+        return frameRings[line];
+    }
+    
+    /**
+     * Get the nodes running in other processes, with their transport statistics
+     * @return Remote nodes, by line and upstream first
+     */
+    public List<RemoteFogNode> getRemoteNodes() {
+        return new ArrayList<>(remoteNodes);
+    }
+    
+    // Getters
+    public int getLineCount() { return lineCount; }
+    public Scheduling getScheduling() { return scheduling; }
+    
+    /**
+     * Work-stealing scheduler and its statistics, or null unless scheduling is WORK_STEALING
+     */
+    public WorkStealingScheduler getScheduler() { return scheduler; }
+    
+    /**
+     * Number of shard workers, or 0 if each node has its own worker
+     */
+    public int getShardCount() { return shardCount; }
+    
+    /**
+     * Worker that runs the nodes of the lines assigned to it
+     * Packets from other threads wait in the node inboxes; the worker takes
+     * them node by node in dataflow order, and a node's results for nodes of
+     * the same shard are processed right away on the worker's thread.
+     */
+    private static class Shard {
+        private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+        
+        private final int shardId;
+        private final List<FogNode> shardNodes = new ArrayList<>();
+        private volatile Thread thread;
+        private volatile boolean idle;
+        
+        Shard(int shardId) {
+            this.shardId = shardId;
+        }
+        
+        void add(FogNode node) {
+            shardNodes.add(node);
+            node.shard = this;
+        }
+        
+        void start(ExecutorService executor) {
+            for (FogNode node : shardNodes) {
+                node.startOnShard();
+            }
+            executor.submit(this::run);
+        }
+        
+        /**
+         * Process queued packets until all nodes are stopped and their inboxes are empty
+         */
+        private void run() {
+            thread = Thread.currentThread();
+            try {
+                while (true) {
+                    int processed = 0;
+                    boolean running = false;
+                    for (int i = 0; i < shardNodes.size(); i++) {
+                        FogNode node = shardNodes.get(i);
+                        processed += node.processQueued(Integer.MAX_VALUE);
+                        running |= node.isRunning.get();
+                    }
+                    if (processed > 0) {
+                        continue;
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    
+                    // Announce idling before the last check, so a sender can't miss it
+                    idle = true;
+                    if (!hasQueued()) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                }
+            } finally {
+                for (FogNode node : shardNodes) {
+                    node.workerActive = false;
+                }
+                System.out.println("Shard " + shardId + " stopped");
+            }
+        }
+        
+        private boolean hasQueued() {
+            for (int i = 0; i < shardNodes.size(); i++) {
+                if (!shardNodes.get(i).inbox.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Wake the worker if it is waiting for packets
+         */
+        void wakeUp() {
+            Thread worker = thread;
+            if (idle && worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+        
+        boolean isCurrentThread() {
+            return thread == Thread.currentThread();
+        }
+    }
+    
+    /**
+     * Runs fog nodes as tasks on a work-stealing ForkJoinPool
+     * A node with queued packets is scheduled as one task at a time, which
+     * processes up to a micro-batch of packets in order and reschedules the
+     * node if more are waiting, so each node keeps its packet order while
+     * the pool balances nodes across threads. Tasks scheduled from a pool
+     * thread, such as a node's results for downstream nodes, go on that
+     * thread's own queue, where idle threads steal them. A task waiting for
+     * room in a full downstream inbox lets the pool start a spare thread, at
+     * most one per node, so the pool can't run out of threads to drain it.
+     */
+    public static class WorkStealingScheduler {
+        private static final int MICRO_BATCH_SIZE = 64;
+        
+        private final ForkJoinPool pool;
+        private final AtomicLong tasksRun = new AtomicLong();
+        private final AtomicLong packetsRun = new AtomicLong();
+        private final AtomicLong rescheduled = new AtomicLong();
+        private final AtomicLong externalSubmissions = new AtomicLong();
+        
+        WorkStealingScheduler(int parallelism, int nodeCount) {
+            // FIFO queues, as node tasks are never joined
+            this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true,
+                0, parallelism + nodeCount, 1, null, 60, TimeUnit.SECONDS);
+        }
+        
+        /**
+         * Schedule a node unless it is already scheduled or running
+         */
+        void schedule(FogNode node) {
+            if (!node.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            NodeTask task = new NodeTask(node);
+            if (ForkJoinTask.getPool() == pool) {
+                task.fork();
+            } else {
+                externalSubmissions.incrementAndGet();
+                pool.execute(task);
+            }
+        }
+        
+        /**
+         * Task processing a micro-batch of one node's packets
+         */
+        private class NodeTask extends RecursiveAction {
+            private final FogNode node;
+            
+            NodeTask(FogNode node) {
+                this.node = node;
+            }
+            
+            @Override
+            protected void compute() {
+                int count = node.processQueued(MICRO_BATCH_SIZE);
+                tasksRun.incrementAndGet();
+                packetsRun.addAndGet(count);
+                
+                // Unmark before checking for more, so a sender can't find the node marked with no task left
+                node.scheduled.set(false);
+                if (!node.inbox.isEmpty()) {
+                    rescheduled.incrementAndGet();
+                    schedule(node);
+                }
+            }
+        }
+        
+        // Getters
+        public int getParallelism() { return pool.getParallelism(); }
+        
+        /**
+         * Node micro-batches run so far
+         */
+        public long getTasksRun() { return tasksRun.get(); }
+        public long getPacketsRun() { return packetsRun.get(); }
+        
+        /**
+         * Micro-batches that ended with packets still waiting, so the node was scheduled again
+         */
+        public long getRescheduledCount() { return rescheduled.get(); }
+        
+        /**
+         * Tasks submitted from outside the pool, e.g. by processBatch
+         */
+        public long getExternalSubmissions() { return externalSubmissions.get(); }
+        
+        /**
+         * Tasks taken from another thread's queue (an estimate, see ForkJoinPool.getStealCount)
+         */
+        public long getStealCount() { return pool.getStealCount(); }
+        public int getActiveThreadCount() { return pool.getActiveThreadCount(); }
+        public long getQueuedTaskCount() { return pool.getQueuedTaskCount(); }
+        
+        @Override
+        public String toString() {
+            long tasks = tasksRun.get();
+            return String.format("parallelism=%d, tasks=%d, packets/task=%.1f, rescheduled=%d, external=%d, steals=%d, queued=%d",
+                pool.getParallelism(), tasks, tasks == 0 ? 0.0 : (double) packetsRun.get() / tasks,
+                rescheduled.get(), externalSubmissions.get(), pool.getStealCount(), pool.getQueuedTaskCount());
+        }
+    }
+    
+    /**
+     * A node of the dataflow graph, running in this process (FogNode) or in
+     * another one (RemoteFogNode). The topology wires, feeds and drains both
+     * the same way.
+     */
+    public interface FogEndpoint {
+        /**
+         * Get the node ID
+         */
+        String getNodeId();
+        
+        /**
+         * Send this node's results to a downstream node. Must be called before either node starts.
+         * @param next Downstream node
+         */
+        void connectTo(FogEndpoint next);
+        
+        /**
+         * Expect a result from an upstream node for every row; called by the upstream node's connectTo
+         * @param upstreamId Upstream node ID
+         */
+        void addUpstream(String upstreamId);
+        
+        /**
+         * Set what happens to packets sent to the node while it can't keep up. Must be called before the node starts.
+         * @param policy Backpressure policy
+         */
+        void setBackpressurePolicy(BackpressurePolicy policy);
+        
+        /**
+         * Log the node's measurements as one summary per window instead of per row. Must be called before the node starts.
+         * @param window Window, or null to log every row
+         */
+        void setAggregationWindow(AggregationWindow window);
+        
+        /**
+         * Log only the measurements the filter forwards instead of every row. Must be called before the node starts.
+         * @param filter Filter, or null to log every row
+         */
+        void setSignalFilter(SignalFilter filter);
+        
+        /**
+         * Receive data for processing
+         * @param packet Data packet
+         */
+        void receiveData(FogDataPacket packet);
+        
+        /**
+         * Wait until all packets received so far have been processed or dropped
+         * @return true if drained, false on timeout or interruption
+         */
+        boolean awaitDrained(long timeout, TimeUnit unit);
+        
+        /**
+         * Stop processing once the packets received so far are handled
+         */
+        void stop();
+        
+        /**
+         * Event time of the latest row this node has completed
+         * @return Epoch seconds, or Timestamps.INVALID before the first row
+         */
+        long getWatermark();
+        long getRowsCompleted();
+        
+        /**
+         * Packets dropped because another input of their row never arrived
+         */
+        long getPacketsUnmatched();
     }
     
     /**
      * Inner class representing a fog computing node
+     * Once started on an executor, packets are queued in a bounded inbox and
+     * processed in order by the node's own worker, so nodes work concurrently.
+     * The inbox's backpressure policy decides what happens when it is full.
+     * In a sharded topology the line's shard worker drains the inbox instead.
+     * A node without a worker processes packets on the sender's thread.
+     * A row is processed once the node has its sensor data and the result of
+     * every upstream node for it; the node's own result then goes downstream.
      */
-    public static class FogNode {
+    public static class FogNode implements FogEndpoint {
+        private static final int INBOX_CAPACITY = 1024;
+        private static final long IDLE_POLL_MILLIS = 100;
+        private static final int HISTORY_CAPACITY = 1000;
+        
+        private static final String[] FEATURE_IDS = new String[FactorySchema.MEASUREMENT_COUNT];
+        static {
+            for (int featureId = 0; featureId < FEATURE_IDS.length; featureId++) {
+                FEATURE_IDS[featureId] = "feature-" + featureId;
+            }
+        }
+        
         private final String nodeId;
         private final BlockchainLogger blockchainLogger;
-        private final List<FogDataPacket> dataQueue;
         private final AIAnomalyDetector anomalyDetector;
         private final AtomicBoolean isRunning;
         
+        // Inbox drained by the worker; its policy decides what happens to senders while it is full
+        private BackpressureQueue<FogDataPacket> inbox = newInbox(BackpressurePolicy.block());
+        private final AtomicLong packetsReceived = new AtomicLong();
+        private final AtomicLong packetsProcessed = new AtomicLong();
+        // Packets processed or shed by the inbox policy
+        private final AtomicLong packetsSettled = new AtomicLong();
+        private volatile boolean workerActive;
+        // Shard worker running this node, if the topology is sharded
+        private Shard shard;
+        // Work-stealing scheduler running this node, and whether a task for it is scheduled or running
+        private WorkStealingScheduler scheduler;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final List<FogDataPacket> queued = new ArrayList<>();
+        
+        // Recent packets, written by the processing thread and readable from any thread without locking
+        private final HistoryRing<FogDataPacket> history = new HistoryRing<>(HISTORY_CAPACITY);
+        
+        // Threads in awaitDrained, woken up once the highest count they wait for is processed
+        private final Object drainLock = new Object();
+        private volatile int drainWaiters;
+        private volatile long drainTarget;
+        
+        // Dataflow wiring, set up before the node starts
+        private final List<FogEndpoint> downstream = new ArrayList<>();
+        private final List<String> upstreamIds = new ArrayList<>();
+        
+        // Packets waiting for the rest of their row: sensor data first, then one queue per upstream node
+        private final List<ArrayDeque<FogDataPacket>> pending = new ArrayList<>();
+        private FogDataPacket[] rowInputs = new FogDataPacket[1];
+        private volatile long watermark = Timestamps.INVALID;
+        private volatile long rowsCompleted;
+        private volatile long packetsUnmatched;
+        
+        // Data point reused for each anomaly detection on this node
+        private final FactoryDataPoint detectionPoint = new FactoryDataPoint();
+        
+        // Summarizes the logged temperature per window, or null to log every reading
+        private WindowAggregator measurementWindow;
+        // Chooses which readings of the logged temperature are logged, or null to log every reading
+        private SignalCompressor measurementFilter;
+        
         /**
          * Create a new fog node
          * @param nodeId Node ID
@@ -341,19 +869,117 @@ public class FactoryFogTopology {
         public FogNode(String nodeId, BlockchainLogger blockchainLogger) {
             this.nodeId = nodeId;
             this.blockchainLogger = blockchainLogger;
-            this.dataQueue = new ArrayList<>();
             this.anomalyDetector = new AIAnomalyDetector();
             this.isRunning = new AtomicBoolean(false);
+            this.pending.add(new ArrayDeque<>());
+        }
+        
+        /**
+         * Send this node's results to a downstream node. Must be called before either node starts.
+         * @param next Downstream node
+         */
+        public void connectTo(FogEndpoint next) {
+            downstream.add(next);
+            next.addUpstream(nodeId);
+        }
+        
+        /**
+         * Expect a result from an upstream node for every row. Must be called before the node starts.
+         * @param upstreamId Upstream node ID
+         */
+        public void addUpstream(String upstreamId) {
+            upstreamIds.add(upstreamId);
+            pending.add(new ArrayDeque<>());
+            rowInputs = new FogDataPacket[pending.size()];
+        }
+        
+        /**
+         * Set what happens to packets sent while the inbox is full. Must be called before the node starts.
+         * BLOCK (the default) holds up the sender, and so everything upstream of it down to ingestion.
+         * @param policy Backpressure policy
+         */
+        public void setBackpressurePolicy(BackpressurePolicy policy) {
+            inbox = newInbox(policy);
+        }
+        
+        private BackpressureQueue<FogDataPacket> newInbox(BackpressurePolicy policy) {
+            // Shed packets count as handled, so awaitDrained doesn't wait for them; the row join skips their rows
+            return new BackpressureQueue<>(INBOX_CAPACITY, policy, packet -> packetsSettled(1));
+        }
+        
+        /**
+         * Log the node's temperature as one summary per window (count, min, max, mean, last and
+         * standard deviation) instead of every reading. Must be called before the node starts.
+         * Significant stage 1 deviations are still logged as they occur.
+         * @param window Window, or null to log every reading
+         */
+        public void setAggregationWindow(AggregationWindow window) {
+            measurementWindow = window != null
+                ? new WindowAggregator(window, summary -> blockchainLogger.logWindow(nodeId, summary))
+                : null;
+        }
+        
+        /**
+         * Log only the readings of the node's temperature that a deadband or swinging door
+         * forwards. Must be called before the node starts. An aggregation window, if set,
+         * summarizes every reading instead.
+         * @param filter Filter, or null to log every reading
+         */
+        public void setSignalFilter(SignalFilter filter) {
+            measurementFilter = filter != null
+                ? new SignalCompressor(filter, this::logMeasurement)
+                : null;
+        }
+        
+        /**
+         * Log what the node still holds back, e.g. once it is drained at the end of a run:
+         * the summary of the open window and the reading a swinging door holds
+         */
+        public void flushLogs() {
+            if (measurementWindow != null) {
+                measurementWindow.flush();
+            }
+            if (measurementFilter != null) {
+                measurementFilter.flush();
+            }
         }
         
         /**
-         * Start processing data
+         * Start processing data on the sender's thread
          */
         public void start() {
             isRunning.set(true);
             System.out.println("Fog node " + nodeId + " started");
         }
         
+        /**
+         * Start processing data on a worker from an executor
+         * @param executor Executor to run the node's worker on; it holds a thread until the node stops
+         */
+        public void start(ExecutorService executor) {
+            start();
+            workerActive = true;
+            executor.submit(this::run);
+        }
+        
+        /**
+         * Start processing data as tasks on a work-stealing scheduler
+         * @param scheduler Scheduler of the topology
+         */
+        private void start(WorkStealingScheduler scheduler) {
+            this.scheduler = scheduler;
+            start();
+            workerActive = true;
+        }
+        
+        /**
+         * Start processing data on the node's shard worker
+         */
+        private void startOnShard() {
+            start();
+            workerActive = true;
+        }
+        
         /**
          * Stop processing data
          */
@@ -370,172 +996,390 @@ public class FactoryFogTopology {
             return nodeId;
         }
         
+        /**
+         * Process queued packets until the node is stopped and its inbox is empty
+         */
+        private void run() {
+            List<FogDataPacket> packets = new ArrayList<>(INBOX_CAPACITY);
+            try {
+                while (isRunning.get() || !inbox.isEmpty()) {
+                    FogDataPacket packet = inbox.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (packet == null) {
+                        continue;
+                    }
+                    
+                    // Take everything queued behind it in one go
+                    packets.add(packet);
+                    inbox.drainTo(packets);
+                    for (int i = 0; i < packets.size(); i++) {
+                        processDataPacket(packets.get(i));
+                    }
+                    packetsProcessed(packets.size());
+                    packets.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                workerActive = false;
+            }
+        }
+        
+        /**
+         * Process packets queued so far, on the node's shard worker or scheduler task
+         * @param maxPackets Most packets to take from the inbox
+         * @return Number of packets taken from the inbox
+         */
+        private int processQueued(int maxPackets) {
+            int count = inbox.drainTo(queued, maxPackets);
+            for (int i = 0; i < count; i++) {
+                processDataPacket(queued.get(i));
+            }
+            queued.clear();
+            if (count > 0) {
+                packetsProcessed(count);
+            }
+            return count;
+        }
+        
         /**
          * Receive data for processing
          * @param packet Data packet
          */
         public void receiveData(FogDataPacket packet) {
-            // Process data immediately
-            processDataPacket(packet);
+            packetsReceived.incrementAndGet();
+            if (!workerActive || (shard != null && shard.isCurrentThread())) {
+                // No worker, or sent by another node of the same shard: process on the sender's thread
+                processDataPacket(packet);
+                packetsProcessed(1);
+                return;
+            }
             
-            // Also queue for batch processing
-            synchronized (dataQueue) {
-                dataQueue.add(packet);
-                
-                // Keep queue size reasonable
-                if (dataQueue.size() > 1000) {
-                    dataQueue.remove(0);
+            try {
+                inbox.offer(packet);
+                if (shard != null) {
+                    shard.wakeUp();
+                } else if (scheduler != null) {
+                    scheduler.schedule(this);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                packetsReceived.decrementAndGet();
+                System.err.println("Interrupted while sending to node " + nodeId + ", packet dropped");
             }
         }
         
         /**
-         * Process a data packet
+         * Count processed packets
+         */
+        private void packetsProcessed(int count) {
+            packetsProcessed.addAndGet(count);
+            packetsSettled(count);
+        }
+        
+        /**
+         * Count handled packets and wake up threads waiting for the inbox to drain
+         */
+        private void packetsSettled(int count) {
+            long settled = packetsSettled.addAndGet(count);
+            if (drainWaiters > 0 && settled >= drainTarget) {
+                synchronized (drainLock) {
+                    drainLock.notifyAll();
+                }
+            }
+        }
+        
+        /**
+         * Wait until all packets received so far have been processed or shed
+         * @param timeout Longest time to wait
+         * @param unit Unit of the timeout
+         * @return true if drained, false on timeout or interruption
+         */
+        public boolean awaitDrained(long timeout, TimeUnit unit) {
+            long target = packetsReceived.get();
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (drainLock) {
+                // Registered before checking the count, so the worker can't miss a waiter
+                drainWaiters++;
+                drainTarget = Math.max(drainTarget, target);
+                try {
+                    while (packetsSettled.get() < target) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } finally {
+                    drainWaiters--;
+                }
+            }
+            return true;
+        }
+        
+        // Getters
+        public int getInboxSize() { return inbox.size(); }
+        public long getPacketsReceived() { return packetsReceived.get(); }
+        public long getPacketsProcessed() { return packetsProcessed.get(); }
+        
+        /**
+         * Inbox policy and counters: packets offered, blocked on and shed
+         */
+        public BackpressureQueue<FogDataPacket> getInbox() { return inbox; }
+        
+        /**
+         * Window aggregator of the logged temperature, or null if every reading is logged
+         */
+        public WindowAggregator getMeasurementWindow() { return measurementWindow; }
+        
+        /**
+         * Filter of the logged temperature, with its compression ratio and error, or null if every reading is logged
+         */
+        public SignalCompressor getMeasurementFilter() { return measurementFilter; }
+        public long getRowsCompleted() { return rowsCompleted; }
+        
+        /**
+         * Packets dropped because another input of their row never arrived
+         */
+        public long getPacketsUnmatched() { return packetsUnmatched; }
+        
+        /**
+         * Event time of the latest row this node has completed (rows complete in order)
+         * @return Epoch seconds, or Timestamps.INVALID before the first row
+         */
+        public long getWatermark() { return watermark; }
+        
+        /**
+         * The most recent packets this node processed, oldest first
+         * @param count Most packets to return
+         */
+        public List<FogDataPacket> getRecentPackets(int count) {
+            return history.last(count);
+        }
+        
+        /**
+         * The recent packets this node processed for rows at or after a time, oldest first
+         * @param epochSecond Earliest epoch seconds to return
+         */
+        public List<FogDataPacket> getPacketsSince(long epochSecond) {
+            return history.since(epochSecond);
+        }
+        
+        /**
+         * Process a data packet: queue it with the other inputs of its row and
+         * process every row that is complete
          * @param packet Data packet
          */
         private void processDataPacket(FogDataPacket packet) {
+            int input = 0;
+            if (packet.getSourceNodeId() != null) {
+                input = upstreamIds.indexOf(packet.getSourceNodeId()) + 1;
+                if (input == 0) {
+                    System.err.println("Node " + nodeId + " is not connected to " + packet.getSourceNodeId());
+                    return;
+                }
+            }
+            history.append(packet.getEpochSecond(), packet);
+            pending.get(input).add(packet);
+            
+            while (nextRowReady()) {
+                for (int i = 0; i < rowInputs.length; i++) {
+                    rowInputs[i] = pending.get(i).pollFirst();
+                }
+                processRow(rowInputs);
+            }
+        }
+        
+        /**
+         * Whether every input has a packet for the oldest row that can still complete.
+         * Packets of rows that another input skipped are dropped.
+         */
+        private boolean nextRowReady() {
+            while (true) {
+                long sequence = Long.MIN_VALUE;
+                for (int i = 0; i < pending.size(); i++) {
+                    FogDataPacket head = pending.get(i).peekFirst();
+                    if (head == null) {
+                        return false;
+                    }
+                    sequence = Math.max(sequence, head.getSequence());
+                }
+                
+                boolean aligned = true;
+                for (int i = 0; i < pending.size(); i++) {
+                    if (pending.get(i).peekFirst().getSequence() < sequence) {
+                        pending.get(i).pollFirst();
+                        packetsUnmatched++;
+                        aligned = false;
+                    }
+                }
+                if (aligned) {
+                    return true;
+                }
+            }
+        }
+        
+        /**
+         * Process one row and send the result downstream
+         * @param inputs Sensor data packet, then the results of the upstream nodes
+         */
+        private void processRow(FogDataPacket[] inputs) {
+            FogDataPacket packet = inputs[0];
+            FogPayload.Features result = null;
             try {
+                FogPayload payload = packet.getPayload();
                 // For output node, check for anomalies
-                if (nodeId.equals("output")) {
-                    processOutputNodeData(packet);
+                if (payload instanceof FogPayload.Output) {
+                    processOutputNodeData(packet, (FogPayload.Output) payload, inputs);
                 } 
                 // For machine nodes, log to blockchain
-                else if (nodeId.startsWith("machine-")) {
-                    processMachineNodeData(packet);
+                else if (payload instanceof FogPayload.FirstStageMachine) {
+                    float exitTemp = ((FogPayload.FirstStageMachine) payload).getExitZoneTemperature();
+                    logTemperature(packet, exitTemp);
+                    result = FogPayload.Features.of(exitTemp, Float.NaN);
+                } else if (payload instanceof FogPayload.SecondStageMachine) {
+                    float exitTemp = ((FogPayload.SecondStageMachine) payload).getExitTemperature();
+                    logTemperature(packet, exitTemp);
+                    result = FogPayload.Features.of(exitTemp, upstreamDeviationScore(inputs));
                 }
                 // For combiner node, process stage 1 measurements
-                else if (nodeId.equals("combiner")) {
-                    processCombinerNodeData(packet);
+                else if (payload instanceof FogPayload.Combiner) {
+                    FogPayload.Combiner combiner = (FogPayload.Combiner) payload;
+                    result = FogPayload.Features.of(combiner.getTemperature3(), processCombinerNodeData(packet, combiner));
                 }
             } catch (Exception e) {
                 System.err.println("Error processing data in node " + nodeId + ": " + e.getMessage());
                 e.printStackTrace();
             }
+            
+            // Rows complete in order, so the watermark only moves forward
+            if (packet.getEpochSecond() != Timestamps.INVALID && packet.getEpochSecond() > watermark) {
+                watermark = packet.getEpochSecond();
+            }
+            rowsCompleted++;
+            
+            // Downstream nodes wait for a result for every row, even a failed one
+            if (!downstream.isEmpty()) {
+                if (result == null) {
+                    result = FogPayload.Features.of(Float.NaN, Float.NaN);
+                }
+                for (FogEndpoint next : downstream) {
+                    next.receiveData(new FogDataPacket(packet.getTimestamp(), packet.getEpochSecond(),
+                        packet.getSequence(), nodeId, next.getNodeId(), result, watermark));
+                }
+            }
         }
         
         /**
-         * Process data for an output node
+         * Highest deviation score in the upstream results of a row, or NaN if none has one
          */
-        private void processOutputNodeData(FogDataPacket packet) {
-            // Extract measurements
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> stage1Measurements =
-                (List<Map<String, Object>>) packet.getData().get("stage1Measurements");
-                
-            if (stage1Measurements != null && !stage1Measurements.isEmpty()) {
-                // Build a pseudo data point for anomaly detection
-                List<Measurement> measurements = new ArrayList<>();
-                
-                for (Map<String, Object> m : stage1Measurements) {
-                    Measurement measurement = new Measurement();
-                    measurement.setFeatureId((Integer) m.get("featureId"));
-                    measurement.setActual(((Number) m.get("actual")).floatValue());
-                    measurement.setSetpoint(((Number) m.get("setpoint")).floatValue());
-                    measurements.add(measurement);
-                }
-                
-                // Create a minimal data point for anomaly detection
-                FactoryDataPoint dataPoint = new FactoryDataPoint();
-                dataPoint.setTimestamp(packet.getTimestamp());
-                dataPoint.setStage1Measurements(measurements);
-                
-                // Detect anomalies
-                AIAnomalyDetector.AnomalyResult result = anomalyDetector.detectAnomalies(dataPoint);
-                
-                // If anomaly detected, log to blockchain
-                if (result.isAnomaly()) {
-                    System.out.println("Anomaly detected: " + result);
-                    
-                    // Log to blockchain (high priority)
-                    blockchainLogger.logAnomaly(
-                        nodeId,
-                        packet.getTimestamp(),
-                        result.getScore(),
-                        String.join("\n", result.getDetails())
-                    );
+        private static float upstreamDeviationScore(FogDataPacket[] inputs) {
+            float score = Float.NaN;
+            for (int i = 1; i < inputs.length; i++) {
+                float upstream = ((FogPayload.Features) inputs[i].getPayload()).getDeviationScore();
+                if (!Float.isNaN(upstream) && !(upstream <= score)) {
+                    score = upstream;
                 }
             }
+            return score;
         }
         
         /**
-         * Process data for a machine node
+         * Process data for an output node
          */
-        private void processMachineNodeData(FogDataPacket packet) {
-            // For demonstration, just log a key measurement to the blockchain
-            if (nodeId.startsWith("machine-")) {
-                int machineId = Integer.parseInt(nodeId.split("-")[1]);
+        private void processOutputNodeData(FogDataPacket packet, FogPayload.Output payload, FogDataPacket[] inputs) {
+            // Fill the reused data point for anomaly detection
+            detectionPoint.setTimestamp(packet.getTimestamp());
+            detectionPoint.setEpochSecond(packet.getEpochSecond());
+            for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+                detectionPoint.setValue(FactorySchema.stage1Actual(featureId), payload.getStage1Actual(featureId));
+                detectionPoint.setValue(FactorySchema.stage1Setpoint(featureId), payload.getStage1Setpoint(featureId));
+            }
+            
+            // Detect anomalies
+            AIAnomalyDetector.AnomalyResult result = anomalyDetector.detectAnomalies(detectionPoint);
+            
+            // If anomaly detected, log to blockchain
+            if (result.isAnomaly()) {
+                System.out.println("Anomaly detected: " + result);
                 
-                // For first stage machines
-                if (machineId <= 3) {
-                    // Log exit temperature
-                    float exitTemp = ((Number) packet.getData().get("exitZoneTemperature")).floatValue();
-                    
-                    blockchainLogger.logMeasurement(
-                        nodeId,
-                        packet.getTimestamp(),
-                        0, // No setpoint for this
-                        (long) (exitTemp * 100), // Scale to integer
-                        0.0f // No anomaly score yet
-                    );
-                }
-                // For second stage machines
-                else {
-                    // Log exit temperature
-                    float exitTemp = ((Number) packet.getData().get("exitTemperature")).floatValue();
-                    
-                    blockchainLogger.logMeasurement(
-                        nodeId,
-                        packet.getTimestamp(),
-                        0, // No setpoint for this
-                        (long) (exitTemp * 100), // Scale to integer
-                        0.0f // No anomaly score yet
-                    );
+                // Log to blockchain (high priority), with what the upstream nodes saw
+                StringBuilder details = new StringBuilder(String.join("\n", result.getDetails()));
+                for (int i = 1; i < inputs.length; i++) {
+                    FogPayload.Features upstream = (FogPayload.Features) inputs[i].getPayload();
+                    details.append(String.format("%n%s: temperature=%.2f, stage 1 deviation score=%.2f",
+                        inputs[i].getSourceNodeId(), upstream.getTemperature(), upstream.getDeviationScore()));
                 }
+                blockchainLogger.logAnomaly(
+                    nodeId,
+                    packet.getTimestamp(),
+                    result.getScore(),
+                    details.toString()
+                );
             }
         }
         
         /**
-         * Process data for the combiner node
+         * Log the node's key temperature to the blockchain, or add it to the node's window
          */
-        private void processCombinerNodeData(FogDataPacket packet) {
-            // Log combiner temperature to blockchain
-            float temp3 = ((Number) packet.getData().get("temperature3")).floatValue();
-            
+        private void logTemperature(FogDataPacket packet, float temperature) {
+            if (Float.isNaN(temperature)) {
+                return; // Missing reading
+            }
+            if (measurementWindow != null) {
+                measurementWindow.add(packet.getEpochSecond(), temperature);
+            } else if (measurementFilter != null) {
+                measurementFilter.add(packet.getEpochSecond(), packet.getTimestamp(), temperature);
+            } else {
+                logMeasurement(packet.getTimestamp(), temperature);
+            }
+        }
+        
+        private void logMeasurement(String timestamp, float temperature) {
             blockchainLogger.logMeasurement(
                 nodeId,
-                packet.getTimestamp(),
+                timestamp,
                 0, // No setpoint for this
-                (long) (temp3 * 100), // Scale to integer
+                (long) (temperature * 100), // Scale to integer
                 0.0f // No anomaly score yet
             );
+        }
+        
+        /**
+         * Process data for the combiner node
+         * @return Highest stage 1 deviation score, or NaN if all measurements are missing
+         */
+        private float processCombinerNodeData(FogDataPacket packet, FogPayload.Combiner payload) {
+            // Log combiner temperature to blockchain
+            logTemperature(packet, payload.getTemperature3());
             
             // Process stage 1 measurements
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> stage1Measurements =
-                (List<Map<String, Object>>) packet.getData().get("stage1Measurements");
+            float maxScore = Float.NaN;
+            for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+                float actual = payload.getStage1Actual(featureId);
+                float setpoint = payload.getStage1Setpoint(featureId);
                 
-            if (stage1Measurements != null) {
-                for (Map<String, Object> m : stage1Measurements) {
-                    int featureId = (Integer) m.get("featureId");
-                    float actual = ((Number) m.get("actual")).floatValue();
-                    float setpoint = ((Number) m.get("setpoint")).floatValue();
-                    
-                    // Calculate simple anomaly score as normalized deviation
-                    float deviation = Math.abs(actual - setpoint);
-                    float normalizedScore = Math.min(deviation / 5.0f, 1.0f); // Max score at 5mm deviation
-                    
-                    // Log significant deviations to blockchain
-                    if (normalizedScore > 0.5f) {
-                        blockchainLogger.logMeasurement(
-                            "feature-" + featureId,
-                            packet.getTimestamp(),
-                            (long) (setpoint * 100),
-                            (long) (actual * 100),
-                            normalizedScore
-                        );
-                    }
+                // Calculate simple anomaly score as normalized deviation
+                float deviation = Math.abs(actual - setpoint);
+                float normalizedScore = Math.min(deviation / 5.0f, 1.0f); // Max score at 5mm deviation
+                if (!Float.isNaN(normalizedScore) && !(normalizedScore <= maxScore)) {
+                    maxScore = normalizedScore;
+                }
+                
+                // Log significant deviations to blockchain
+                if (normalizedScore > 0.5f) {
+                    blockchainLogger.logMeasurement(
+                        FEATURE_IDS[featureId],
+                        packet.getTimestamp(),
+                        (long) (setpoint * 100),
+                        (long) (actual * 100),
+                        normalizedScore
+                    );
                 }
             }
+            return maxScore;
         }
     }
     
@@ -544,19 +1388,53 @@ public class FactoryFogTopology {
      */
     public static class FogDataPacket {
         private final String timestamp;
+        private final long epochSecond;
+        private final long sequence;
+        private final String sourceNodeId;
         private final String targetNodeId;
-        private final Map<String, Object> data;
+        private final FogPayload payload;
+        private final long watermark;
         
         /**
          * Create a new data packet
          * @param timestamp Timestamp
          * @param targetNodeId Target node ID
-         * @param data Data payload
+         * @param payload Data payload
+         */
+        public FogDataPacket(String timestamp, String targetNodeId, FogPayload payload) {
+            this(timestamp, Timestamps.parse(timestamp), targetNodeId, payload);
+        }
+        
+        /**
+         * Create a new data packet with an already parsed timestamp
+         * @param timestamp Timestamp
+         * @param epochSecond Timestamp as epoch seconds
+         * @param targetNodeId Target node ID
+         * @param payload Data payload
          */
-        public FogDataPacket(String timestamp, String targetNodeId, Map<String, Object> data) {
+        public FogDataPacket(String timestamp, long epochSecond, String targetNodeId, FogPayload payload) {
+            this(timestamp, epochSecond, -1, null, targetNodeId, payload, epochSecond);
+        }
+        
+        /**
+         * Create a new data packet for a row flowing through the topology
+         * @param timestamp Timestamp
+         * @param epochSecond Timestamp as epoch seconds
+         * @param sequence Sequence number of the row
+         * @param sourceNodeId Node that sent the packet, or null for sensor data
+         * @param targetNodeId Target node ID
+         * @param payload Data payload
+         * @param watermark Event time up to which the sender has completed all rows
+         */
+        public FogDataPacket(String timestamp, long epochSecond, long sequence, String sourceNodeId,
+                             String targetNodeId, FogPayload payload, long watermark) {
             this.timestamp = timestamp;
+            this.epochSecond = epochSecond;
+            this.sequence = sequence;
+            this.sourceNodeId = sourceNodeId;
             this.targetNodeId = targetNodeId;
-            this.data = data;
+            this.payload = payload;
+            this.watermark = watermark;
         }
         
         /**
@@ -567,6 +1445,38 @@ public class FactoryFogTopology {
             return timestamp;
         }
         
+        /**
+         * Get the timestamp as epoch seconds
+         * @return Epoch seconds, or Timestamps.INVALID if the timestamp is not in the dataset format
+         */
+        public long getEpochSecond() {
+            return epochSecond;
+        }
+        
+        /**
+         * Get the sequence number of the row
+         * @return Sequence number, or -1 for a packet sent outside the topology
+         */
+        public long getSequence() {
+            return sequence;
+        }
+        
+        /**
+         * Get the node that sent the packet
+         * @return Source node ID, or null for sensor data
+         */
+        public String getSourceNodeId() {
+            return sourceNodeId;
+        }
+        
+        /**
+         * Get the sender's watermark
+         * @return Epoch seconds up to which the sender has completed all rows
+         */
+        public long getWatermark() {
+            return watermark;
+        }
+        
         /**
          * Get the target node ID
          * @return Target node ID
@@ -577,10 +1487,10 @@ public class FactoryFogTopology {
         
         /**
          * Get the data payload
-         * @return Data payload
+         * @return Typed payload for the target node's role
          */
-        public Map<String, Object> getData() {
-            return data;
+        public FogPayload getPayload() {
+            return payload;
         }
     }
 }
\ No newline at end of file
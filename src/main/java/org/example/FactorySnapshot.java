@@ -0,0 +1,234 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.example.data.FactoryColumnStore;
+import org.example.data.FactorySchema;
+
+/**
+ * Compact binary columnar snapshot of the factory dataset
+ * Columns are stored in schema order (see FactorySchema) whatever the
+ * column order of the CSV it was converted from.
+ *
+ * Layout (little-endian):
+ *   header:  magic "FCS1", version, row count, column count,
+ *            column names (length-prefixed UTF-8), stage 1 and stage 2 setpoints,
+ *            padding to an 8-byte boundary
+ *   columns: epoch seconds as longs, then each value column as floats
+ *
+ * Reading maps each column separately, so pages are only loaded when a
+ * column is touched and files larger than 2 GB are supported.
+ */
+public class FactorySnapshot {
+    private static final int MAGIC = 0x31534346; // "FCS1" in little-endian
+    private static final int VERSION = 1;
+
+    private final String[] columnNames;
+    private final float[] stage1Setpoints;
+    private final float[] stage2Setpoints;
+    private final FactoryColumnStore columnStore;
+
+    private FactorySnapshot(String[] columnNames, float[] stage1Setpoints, float[] stage2Setpoints,
+                            FactoryColumnStore columnStore) {
+        this.columnNames = columnNames;
+        this.stage1Setpoints = stage1Setpoints;
+        this.stage2Setpoints = stage2Setpoints;
+        this.columnStore = columnStore;
+    }
+
+    /**
+     * Write a column store as a snapshot file
+     * The store is in schema column order, so the schema's column names are recorded.
+     * @param store Column store to write
+     * @param path Snapshot file to create
+     * @throws IOException If the file can't be written, or timestamps aren't in the dataset format
+     */
+    public static void write(FactoryColumnStore store, Path path) throws IOException {
+        if (store.hasTimestampText()) {
+            throw new IOException("Snapshot requires timestamps in yyyy-MM-dd HH:mm:ss format");
+        }
+
+        String[] columnNames = FactorySchema.COLUMN_NAMES;
+        int rowCount = store.getRowCount();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // Header
+            ByteBuffer header = ByteBuffer.allocate(headerSize(columnNames)).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(rowCount);
+            header.putInt(columnNames.length);
+            for (String name : columnNames) {
+                byte[] bytes = name.trim().getBytes(StandardCharsets.UTF_8);
+                header.putShort((short) bytes.length);
+                header.put(bytes);
+            }
+
+            // Setpoints from the first row
+            for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+                header.putFloat(rowCount > 0 ? store.get(0, FactorySchema.stage1Setpoint(featureId)) : 0f);
+            }
+            for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
+                header.putFloat(rowCount > 0 ? store.get(0, FactorySchema.stage2Setpoint(featureId)) : 0f);
+            }
+            header.position(header.capacity());
+            header.flip();
+            writeFully(channel, header);
+
+            // Columns, written through a reusable chunk buffer
+            ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer epochSeconds = store.epochSecondColumn();
+            for (int row = 0; row < rowCount; row++) {
+                if (chunk.remaining() < Long.BYTES) {
+                    chunk.flip();
+                    writeFully(channel, chunk);
+                    chunk.clear();
+                }
+                chunk.putLong(epochSeconds.get(row));
+            }
+            for (int column = 1; column < FactorySchema.COLUMN_COUNT; column++) {
+                FloatBuffer values = store.column(column);
+                for (int row = 0; row < rowCount; row++) {
+                    if (chunk.remaining() < Float.BYTES) {
+                        chunk.flip();
+                        writeFully(channel, chunk);
+                        chunk.clear();
+                    }
+                    chunk.putFloat(values.get(row));
+                }
+            }
+            chunk.flip();
+            writeFully(channel, chunk);
+        }
+    }
+
+    /**
+     * Open a snapshot file, mapping its columns
+     * @param path Snapshot file
+     * @return Snapshot whose column store reads from the mapped file
+     * @throws IOException If the file can't be read or is not a snapshot
+     */
+    public static FactorySnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Fixed part of the header
+            ByteBuffer fixed = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, fixed, 0);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC) {
+                throw new IOException("Not a factory snapshot: " + path);
+            }
+            int version = fixed.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int rowCount = fixed.getInt();
+            int columnCount = fixed.getInt();
+            if (columnCount != FactorySchema.COLUMN_COUNT) {
+                throw new IOException("Expected " + FactorySchema.COLUMN_COUNT + " columns, got " + columnCount);
+            }
+
+            // Column names and setpoints
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 16,
+                Math.min(channel.size() - 16, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+            String[] columnNames = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                byte[] bytes = new byte[header.getShort()];
+                header.get(bytes);
+                columnNames[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            float[] stage1Setpoints = new float[FactorySchema.MEASUREMENT_COUNT];
+            float[] stage2Setpoints = new float[FactorySchema.MEASUREMENT_COUNT];
+            for (int i = 0; i < stage1Setpoints.length; i++) {
+                stage1Setpoints[i] = header.getFloat();
+            }
+            for (int i = 0; i < stage2Setpoints.length; i++) {
+                stage2Setpoints[i] = header.getFloat();
+            }
+
+            // Map each column on its own; the mappings stay valid after the channel is closed
+            long offset = headerSize(columnNames);
+            long expectedSize = offset + (long) rowCount * Long.BYTES
+                + (long) rowCount * Float.BYTES * (columnCount - 1);
+            if (channel.size() < expectedSize) {
+                throw new IOException("Truncated snapshot: " + path);
+            }
+
+            LongBuffer epochSeconds = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rowCount * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            offset += (long) rowCount * Long.BYTES;
+
+            FloatBuffer[] columns = new FloatBuffer[columnCount];
+            for (int column = 1; column < columnCount; column++) {
+                columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rowCount * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                offset += (long) rowCount * Float.BYTES;
+            }
+
+            return new FactorySnapshot(columnNames, stage1Setpoints, stage2Setpoints,
+                FactoryColumnStore.wrap(rowCount, epochSeconds, columns));
+        }
+    }
+
+    /**
+     * Size of the header, padded so the long column is 8-byte aligned
+     */
+    private static int headerSize(String[] columnNames) {
+        int size = 16;
+        for (String name : columnNames) {
+            size += Short.BYTES + name.trim().getBytes(StandardCharsets.UTF_8).length;
+        }
+        size += 2 * FactorySchema.MEASUREMENT_COUNT * Float.BYTES;
+        return (size + 7) & ~7;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+    }
+
+    // Getters
+    public String[] getColumnNames() { return columnNames; }
+    public float[] getStage1Setpoints() { return stage1Setpoints; }
+    public float[] getStage2Setpoints() { return stage2Setpoints; }
+    public FactoryColumnStore getColumnStore() { return columnStore; }
+
+    /**
+     * One-time converter from the CSV export to a snapshot
+     * Usage: FactorySnapshot <input.csv> <output.fcs>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FactorySnapshot <input.csv> <output.fcs>");
+            System.exit(1);
+        }
+
+        DataLoader loader = new DataLoader();
+        if (!loader.loadColumns(args[0])) {
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        write(loader.getColumnStore(), Paths.get(args[1]));
+        System.out.println("Wrote snapshot " + args[1] + " with " + loader.getColumnStore().getRowCount()
+            + " rows in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,79 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.example.data.FactoryDataPoint;
+
+/**
+ * Bandwidth against fidelity of the fog nodes' signal filters
+ * Runs the temperature each fog node logs (the machines' exit temperatures
+ * and the combiner's temperature 3) through deadband and swinging door
+ * filters of increasing deviation, and reports the readings forwarded, the
+ * compression ratio and the largest reconstruction error for each, so a
+ * deviation can be picked for FOG_SIGNAL_FILTER.
+ */
+public class FogFilterBenchmark {
+    private static final double[] DEVIATIONS = {0.01, 0.05, 0.1, 0.25, 0.5, 1.0};
+
+    /**
+     * The temperature each fog node logs, per row
+     */
+    private static List<float[]> signals(List<FactoryDataPoint> rows) {
+        List<float[]> signals = new ArrayList<>();
+        for (int machineId = 1; machineId <= 5; machineId++) {
+            float[] signal = new float[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                signal[i] = machineId <= 3
+                    ? FogPayload.FirstStageMachine.of(rows.get(i), machineId).getExitZoneTemperature()
+                    : FogPayload.SecondStageMachine.of(rows.get(i), machineId).getExitTemperature();
+            }
+            signals.add(signal);
+        }
+        float[] combiner = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            combiner[i] = FogPayload.Combiner.of(rows.get(i)).getTemperature3();
+        }
+        signals.add(combiner);
+        return signals;
+    }
+
+    /**
+     * Usage: FogFilterBenchmark [dataFile]
+     */
+    public static void main(String[] args) {
+        String dataFile = args.length > 0 ? args[0] : "src/main/resources/continuous_factory_process.csv";
+
+        DataLoader dataLoader = new DataLoader();
+        if (!dataLoader.loadData(dataFile)) {
+            System.err.println("Failed to load data file: " + dataFile);
+            System.exit(1);
+        }
+        List<FactoryDataPoint> rows = dataLoader.getDataPoints();
+        List<float[]> signals = signals(rows);
+
+        System.out.println(rows.size() + " rows, " + signals.size() + " logged temperatures");
+        System.out.printf("%-22s %10s %10s %8s %10s%n", "filter", "readings", "logged", "ratio", "max error");
+        for (SignalFilter.Mode mode : SignalFilter.Mode.values()) {
+            for (double deviation : DEVIATIONS) {
+                SignalFilter filter = mode == SignalFilter.Mode.DEADBAND
+                    ? SignalFilter.deadband(deviation) : SignalFilter.swingingDoor(deviation);
+                long in = 0;
+                long forwarded = 0;
+                double maxError = 0;
+                for (float[] signal : signals) {
+                    SignalCompressor compressor = new SignalCompressor(filter, (timestamp, value) -> { });
+                    for (int i = 0; i < signal.length; i++) {
+                        compressor.add(rows.get(i).getEpochSecond(), null, signal[i]);
+                    }
+                    compressor.flush();
+                    in += compressor.getValuesIn();
+                    forwarded += compressor.getValuesForwarded();
+                    maxError = Math.max(maxError, compressor.getMaxError());
+                }
+                System.out.printf("%-22s %10d %10d %8.1f %10.4f%n", filter, in, forwarded,
+                    forwarded > 0 ? (double) in / forwarded : 1.0, maxError);
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.FactoryFogTopology.FogDataPacket;
+import org.example.FactoryFogTopology.FogEndpoint;
+import org.example.FactoryFogTopology.FogNode;
+import org.example.data.Timestamps;
+
+/**
+ * Process hosting fog nodes for a topology running elsewhere
+ * Each connection from a RemoteFogNode names the node it wants, with its
+ * upstream and downstream node IDs, and gets its own FogNode. The node
+ * processes each DATA frame's packets on the connection's thread, and its
+ * results go back to the topology in the RESULT frame answering it (see
+ * FogWireCodec). Frames are answered in order, and replies are flushed once
+ * no more frames are waiting, so pipelined frames are answered in one write.
+ */
+public class FogNodeServer implements Closeable {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int ACCEPT_BACKLOG = 64;
+
+    private final int port;
+    private final BlockchainLogger blockchainLogger;
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    // Statistics
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong resultsSent = new AtomicLong();
+
+    /**
+     * Create a fog node server
+     * @param port Port to listen on (0 for any free port)
+     * @param blockchainLogger Blockchain logger the hosted nodes log to
+     */
+    public FogNodeServer(int port, BlockchainLogger blockchainLogger) {
+        this.port = port;
+        this.blockchainLogger = blockchainLogger;
+    }
+
+    /**
+     * Open the listening socket
+     * @throws IOException If the port can't be bound
+     */
+    public void bind() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        LoggingConfig.info("FogNodeServer", "Hosting fog nodes on TCP port " + getPort());
+    }
+
+    /**
+     * Bind and accept connections on a new thread
+     * @return The accepting thread
+     * @throws IOException If the port can't be bound
+     */
+    public Thread start() throws IOException {
+        bind();
+        Thread thread = new Thread(this::run, "fog-node-server");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Accept connections on the calling thread until the server is closed. bind() must be called first.
+     */
+    public void run() {
+        try {
+            while (!closed) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                connectionsAccepted.incrementAndGet();
+                Thread thread = new Thread(() -> serve(socket), "fog-node-connection-" + connectionsAccepted.get());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LoggingConfig.error("FogNodeServer", "Server stopped", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Run the node a connection asks for until the connection closes
+     */
+    private void serve(Socket socket) {
+        FogNode node = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE);
+            FogWireCodec codec = new FogWireCodec();
+
+            int hello = codec.readFrame(in);
+            if (hello < 0) {
+                // Closed without asking for a node, e.g. a health check
+                return;
+            }
+            if (hello != FogWireCodec.HELLO) {
+                throw new IOException("Connection did not start with HELLO");
+            }
+            short version = codec.getShort();
+            if (version != FogWireCodec.VERSION) {
+                throw new IOException("Unsupported protocol version " + version);
+            }
+            String nodeId = codec.getString();
+            String[] upstreamIds = new String[codec.getByte()];
+            for (int i = 0; i < upstreamIds.length; i++) {
+                upstreamIds[i] = codec.getString();
+            }
+
+            // Results for downstream nodes are collected for the RESULT frame
+            List<FogDataPacket> results = new ArrayList<>();
+            List<Integer> resultLinks = new ArrayList<>();
+            node = new FogNode(nodeId, blockchainLogger);
+            for (String upstreamId : upstreamIds) {
+                node.addUpstream(upstreamId);
+            }
+            int downstreamCount = codec.getByte();
+            for (int link = 0; link < downstreamCount; link++) {
+                node.connectTo(new ResultLink(codec.getString(), link, results, resultLinks));
+            }
+            String window = codec.getString();
+            if (!window.isEmpty()) {
+                AggregationWindow aggregationWindow = AggregationWindow.parse(window);
+                if (aggregationWindow == null) {
+                    throw new IOException("Invalid aggregation window " + window);
+                }
+                node.setAggregationWindow(aggregationWindow);
+            }
+            String filter = codec.getString();
+            if (!filter.isEmpty()) {
+                SignalFilter signalFilter = SignalFilter.parse(filter);
+                if (signalFilter == null) {
+                    throw new IOException("Invalid signal filter " + filter);
+                }
+                node.setSignalFilter(signalFilter);
+            }
+            // No worker: packets are processed on this thread as they are read
+            node.start();
+            LoggingConfig.info("FogNodeServer", "Running fog node " + nodeId + " for " + socket.getRemoteSocketAddress());
+
+            while (true) {
+                int type = codec.readFrame(in);
+                if (type < 0) {
+                    break;
+                }
+                if (type != FogWireCodec.DATA) {
+                    throw new IOException("Unexpected frame type " + type);
+                }
+                long frameSequence = codec.getLong();
+                int count = codec.getInt();
+                for (int i = 0; i < count; i++) {
+                    int link = codec.getLink();
+                    if (link > upstreamIds.length) {
+                        throw new IOException("Packet from unknown upstream node " + link);
+                    }
+                    node.receiveData(codec.getPacket(link == 0 ? null : upstreamIds[link - 1], nodeId));
+                }
+                framesReceived.incrementAndGet();
+                packetsReceived.addAndGet(count);
+
+                codec.begin(FogWireCodec.RESULT);
+                codec.putLong(frameSequence);
+                codec.putLong(node.getWatermark());
+                codec.putLong(node.getRowsCompleted());
+                codec.putLong(node.getPacketsUnmatched());
+                codec.putInt(results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    codec.putPacket(resultLinks.get(i), results.get(i));
+                }
+                codec.end(out);
+                resultsSent.addAndGet(results.size());
+                results.clear();
+                resultLinks.clear();
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                LoggingConfig.warn("FogNodeServer", "Connection from " + socket.getRemoteSocketAddress() + " failed: " + e);
+            }
+        } finally {
+            if (node != null) {
+                node.stop();
+                // The topology is done with the node, so what it holds back is complete
+                node.flushLogs();
+            }
+            connections.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LoggingConfig.debug("FogNodeServer", "Error closing connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Downstream node as seen from a hosted node: results are kept for the
+     * RESULT frame, which the topology routes to the real downstream node
+     */
+    private static class ResultLink implements FogEndpoint {
+        private final String nodeId;
+        private final int link;
+        private final List<FogDataPacket> results;
+        private final List<Integer> resultLinks;
+
+        ResultLink(String nodeId, int link, List<FogDataPacket> results, List<Integer> resultLinks) {
+            this.nodeId = nodeId;
+            this.link = link;
+            this.results = results;
+            this.resultLinks = resultLinks;
+        }
+
+        @Override
+        public void receiveData(FogDataPacket packet) {
+            results.add(packet);
+            resultLinks.add(link);
+        }
+
+        @Override
+        public String getNodeId() { return nodeId; }
+
+        // The topology wires, drains and tracks the real downstream node
+        @Override
+        public void connectTo(FogEndpoint next) { }
+        @Override
+        public void addUpstream(String upstreamId) { }
+        @Override
+        public void setBackpressurePolicy(BackpressurePolicy policy) { }
+        @Override
+        public void setAggregationWindow(AggregationWindow window) { }
+        @Override
+        public void setSignalFilter(SignalFilter filter) { }
+        @Override
+        public boolean awaitDrained(long timeout, TimeUnit unit) { return true; }
+        @Override
+        public void stop() { }
+        @Override
+        public long getWatermark() { return Timestamps.INVALID; }
+        @Override
+        public long getRowsCompleted() { return 0; }
+        @Override
+        public long getPacketsUnmatched() { return 0; }
+    }
+
+    /**
+     * Blockchain logger that only counts what the nodes log, for running without a chain
+     */
+    static class OfflineLogger extends BlockchainLogger {
+        private final AtomicLong measurements = new AtomicLong();
+        private final AtomicLong anomalies = new AtomicLong();
+        private final AtomicLong windows = new AtomicLong();
+
+        OfflineLogger() {
+            super(null);
+        }
+
+        @Override
+        public void logMeasurement(String machineId, String timestamp, long setpoint, long actualValue, float anomalyScore) {
+            measurements.incrementAndGet();
+        }
+
+        @Override
+        public void logAnomaly(String machineId, String timestamp, float anomalyScore, String details) {
+            anomalies.incrementAndGet();
+        }
+
+        @Override
+        public void logWindow(String machineId, WindowAggregator.Summary summary) {
+            windows.incrementAndGet();
+        }
+
+        // Getters
+        long getMeasurementCount() { return measurements.get(); }
+        long getAnomalyCount() { return anomalies.get(); }
+        long getWindowCount() { return windows.get(); }
+    }
+
+    // Getters
+    public int getPort() { return serverSocket != null ? serverSocket.getLocalPort() : port; }
+    public long getConnectionsAccepted() { return connectionsAccepted.get(); }
+    public long getFramesReceived() { return framesReceived.get(); }
+    public long getPacketsReceived() { return packetsReceived.get(); }
+    public long getResultsSent() { return resultsSent.get(); }
+
+    /**
+     * Stop accepting connections and close the open ones
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            LoggingConfig.error("FogNodeServer", "Error closing server", e);
+        }
+    }
+
+    /**
+     * Usage: FogNodeServer [port] [--offline]
+     * With --offline the nodes don't reach the blockchain; their log calls are only counted.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 && !args[0].startsWith("--") ? Integer.parseInt(args[0]) : 9100;
+        boolean offline = false;
+        for (String arg : args) {
+            offline |= arg.equals("--offline");
+        }
+
+        BlockchainLogger blockchainLogger;
+        if (offline) {
+            blockchainLogger = new OfflineLogger();
+        } else {
+            PureChainConnector connector = new PureChainConnector(BlockchainConfig.getRPC_URL(), BlockchainConfig.getPrivateKey());
+            if (!connector.loadContract(BlockchainConfig.getContractAddress())) {
+                LoggingConfig.warn("FogNodeServer", "Failed to load contract, data won't be recorded on-chain");
+            }
+            blockchainLogger = new BlockchainLogger(connector);
+        }
+
+        FogNodeServer server = new FogNodeServer(port, blockchainLogger);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            blockchainLogger.shutdown();
+            String logged = blockchainLogger instanceof OfflineLogger
+                ? ", " + ((OfflineLogger) blockchainLogger).getMeasurementCount() + " measurements, "
+                    + ((OfflineLogger) blockchainLogger).getAnomalyCount() + " anomalies and "
+                    + ((OfflineLogger) blockchainLogger).getWindowCount() + " window summaries logged offline"
+                : "";
+            System.out.println("Fog node server on port " + server.getPort() + " handled " + server.getPacketsReceived()
+                + " packets in " + server.getFramesReceived() + " frames, sent " + server.getResultsSent() + " results" + logged);
+        }));
+        server.bind();
+        server.run();
+    }
+}
@@ -0,0 +1,256 @@
+package org.example;
+
+import org.example.data.FactoryDataPoint;
+import org.example.data.FactorySchema;
+
+/**
+ * Typed payload of a fog data packet
+ * Each node role has its own payload type holding just the columns that role
+ * needs, copied out of the data point into one float array (missing readings
+ * are NaN). Payloads are immutable once built and safe to hand between threads.
+ */
+public abstract class FogPayload {
+    // Payload type codes of the binary transport (see FogWireCodec)
+    static final byte FIRST_STAGE_MACHINE = 1;
+    static final byte COMBINER = 2;
+    static final byte SECOND_STAGE_MACHINE = 3;
+    static final byte FEATURES = 4;
+    static final byte OUTPUT = 5;
+
+    protected final float[] values;
+
+    protected FogPayload(float[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Raw payload values, in the layout of the payload type
+     * @return Backing array; callers must not modify it
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * Type code of the payload for the binary transport
+     */
+    abstract byte typeCode();
+
+    /**
+     * Machine the payload belongs to, or 0 for payloads not tied to one machine
+     */
+    int machineCode() {
+        return 0;
+    }
+
+    /**
+     * Rebuild a payload received over the binary transport
+     * @param typeCode Payload type code
+     * @param machineId Machine ID for machine payloads
+     * @param values Payload values, in the layout of the payload type
+     * @return Payload, or null if the type code is unknown or the values don't fit the type
+     */
+    static FogPayload wrap(byte typeCode, int machineId, float[] values) {
+        switch (typeCode) {
+            case FIRST_STAGE_MACHINE:
+                return values.length == FirstStageMachine.WIDTH ? new FirstStageMachine(machineId, values) : null;
+            case COMBINER:
+                return values.length == Combiner.WIDTH ? new Combiner(values) : null;
+            case SECOND_STAGE_MACHINE:
+                return values.length == SecondStageMachine.MACHINE_WIDTH ? new SecondStageMachine(machineId, values) : null;
+            case FEATURES:
+                return values.length == Features.WIDTH ? new Features(values) : null;
+            case OUTPUT:
+                return values.length == Output.WIDTH ? new Output(values) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Copy the stage output columns of a data point: actual and setpoint per feature
+     */
+    private static void copyMeasurements(FactoryDataPoint dataPoint, int startColumn, float[] target, int offset) {
+        System.arraycopy(dataPoint.getValues(), startColumn, target, offset, FactorySchema.MEASUREMENT_COUNT * 2);
+    }
+
+    /**
+     * Payload for a first-stage machine node: ambient conditions and the machine's columns
+     */
+    public static final class FirstStageMachine extends FogPayload {
+        private static final int MACHINE_OFFSET = 2;
+        private static final int WIDTH = MACHINE_OFFSET + FactorySchema.FIRST_STAGE_WIDTH;
+
+        private final int machineId;
+
+        private FirstStageMachine(int machineId, float[] values) {
+            super(values);
+            this.machineId = machineId;
+        }
+
+        /**
+         * Extract the payload for a first-stage machine
+         * @param dataPoint Data point to copy from
+         * @param machineId Machine 1, 2 or 3
+         */
+        public static FirstStageMachine of(FactoryDataPoint dataPoint, int machineId) {
+            float[] values = new float[WIDTH];
+            values[0] = dataPoint.getAmbientHumidity();
+            values[1] = dataPoint.getAmbientTemperature();
+            System.arraycopy(dataPoint.getValues(), FactorySchema.machineColumn(machineId, 0),
+                values, MACHINE_OFFSET, FactorySchema.FIRST_STAGE_WIDTH);
+            return new FirstStageMachine(machineId, values);
+        }
+
+        @Override
+        byte typeCode() { return FIRST_STAGE_MACHINE; }
+
+        @Override
+        int machineCode() { return machineId; }
+
+        // Getters
+        public int getMachineId() { return machineId; }
+        public float getAmbientHumidity() { return values[0]; }
+        public float getAmbientTemperature() { return values[1]; }
+
+        /**
+         * Machine column by field offset (FactorySchema.RAW_MATERIAL_PROPERTY_1 to EXIT_ZONE_TEMPERATURE)
+         */
+        public float getMachineValue(int field) { return values[MACHINE_OFFSET + field]; }
+        public float getExitZoneTemperature() { return getMachineValue(FactorySchema.EXIT_ZONE_TEMPERATURE); }
+    }
+
+    /**
+     * Payload for the combiner node: combiner temperatures and stage 1 measurements
+     */
+    public static final class Combiner extends FogPayload {
+        private static final int MEASUREMENTS_OFFSET = 3;
+        private static final int WIDTH = MEASUREMENTS_OFFSET + FactorySchema.MEASUREMENT_COUNT * 2;
+
+        private Combiner(float[] values) {
+            super(values);
+        }
+
+        /**
+         * Extract the combiner payload
+         * @param dataPoint Data point to copy from
+         */
+        public static Combiner of(FactoryDataPoint dataPoint) {
+            // The combiner temperatures are directly followed by the stage 1 outputs
+            float[] values = new float[WIDTH];
+            System.arraycopy(dataPoint.getValues(), FactorySchema.COMBINER_TEMPERATURE_1, values, 0, values.length);
+            return new Combiner(values);
+        }
+
+        @Override
+        byte typeCode() { return COMBINER; }
+
+        // Getters
+        public float getTemperature1() { return values[0]; }
+        public float getTemperature2() { return values[1]; }
+        public float getTemperature3() { return values[2]; }
+        public float getStage1Actual(int featureId) { return values[MEASUREMENTS_OFFSET + featureId * 2]; }
+        public float getStage1Setpoint(int featureId) { return values[MEASUREMENTS_OFFSET + featureId * 2 + 1]; }
+    }
+
+    /**
+     * Payload for a second-stage machine node: the machine's columns in dataset order
+     */
+    public static final class SecondStageMachine extends FogPayload {
+        private static final int MACHINE_WIDTH = 7;
+
+        private final int machineId;
+
+        private SecondStageMachine(int machineId, float[] values) {
+            super(values);
+            this.machineId = machineId;
+        }
+
+        /**
+         * Extract the payload for a second-stage machine
+         * @param dataPoint Data point to copy from
+         * @param machineId Machine 4 or 5
+         */
+        public static SecondStageMachine of(FactoryDataPoint dataPoint, int machineId) {
+            int start = machineId == 4 ? FactorySchema.MACHINE_4_TEMPERATURE_1 : FactorySchema.MACHINE_5_TEMPERATURE_1;
+            float[] values = new float[MACHINE_WIDTH];
+            System.arraycopy(dataPoint.getValues(), start, values, 0, MACHINE_WIDTH);
+            return new SecondStageMachine(machineId, values);
+        }
+
+        @Override
+        byte typeCode() { return SECOND_STAGE_MACHINE; }
+
+        @Override
+        int machineCode() { return machineId; }
+
+        // Getters
+        public int getMachineId() { return machineId; }
+
+        /**
+         * Machine 4: temperatures 1-2, pressure, temperatures 3-5; machine 5: temperatures 1-6
+         */
+        public float getValue(int index) { return values[index]; }
+        public float getExitTemperature() { return values[MACHINE_WIDTH - 1]; }
+    }
+
+    /**
+     * Result a node emits to its downstream nodes: a node-level temperature
+     * and the highest stage 1 deviation score seen upstream (NaN if unknown)
+     */
+    public static final class Features extends FogPayload {
+        private static final int WIDTH = 2;
+
+        private Features(float[] values) {
+            super(values);
+        }
+
+        /**
+         * Create a node result
+         * @param temperature Node-level temperature, e.g. the machine's exit temperature
+         * @param deviationScore Stage 1 deviation score from 0 to 1
+         */
+        public static Features of(float temperature, float deviationScore) {
+            return new Features(new float[] {temperature, deviationScore});
+        }
+
+        @Override
+        byte typeCode() { return FEATURES; }
+
+        // Getters
+        public float getTemperature() { return values[0]; }
+        public float getDeviationScore() { return values[1]; }
+    }
+
+    /**
+     * Payload for the output node: stage 1 and stage 2 measurements
+     */
+    public static final class Output extends FogPayload {
+        private static final int STAGE_2_OFFSET = FactorySchema.MEASUREMENT_COUNT * 2;
+        private static final int WIDTH = STAGE_2_OFFSET * 2;
+
+        private Output(float[] values) {
+            super(values);
+        }
+
+        /**
+         * Extract the output payload
+         * @param dataPoint Data point to copy from
+         */
+        public static Output of(FactoryDataPoint dataPoint) {
+            float[] values = new float[WIDTH];
+            copyMeasurements(dataPoint, FactorySchema.STAGE_1_OUTPUT_START, values, 0);
+            copyMeasurements(dataPoint, FactorySchema.STAGE_2_OUTPUT_START, values, STAGE_2_OFFSET);
+            return new Output(values);
+        }
+
+        @Override
+        byte typeCode() { return OUTPUT; }
+
+        // Getters
+        public float getStage1Actual(int featureId) { return values[featureId * 2]; }
+        public float getStage1Setpoint(int featureId) { return values[featureId * 2 + 1]; }
+        public float getStage2Actual(int featureId) { return values[STAGE_2_OFFSET + featureId * 2]; }
+        public float getStage2Setpoint(int featureId) { return values[STAGE_2_OFFSET + featureId * 2 + 1]; }
+    }
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.example.data.FactoryDataPoint;
+
+/**
+ * Benchmark of fog nodes on platform threads against virtual threads
+ * Replays rows of a data file through 1, 10 and 100 production lines, with
+ * every blockchain call replaced by a blocking wait of a fixed latency, as a
+ * node waiting on a chain RPC would see. Platform mode gives each node its own
+ * platform thread (NODE_WORKERS), virtual mode its own virtual thread
+ * (VIRTUAL_THREADS). Reports wall time, rows per second and the peak number
+ * of platform threads.
+ */
+public class FogThreadBenchmark {
+    private static final int[] LINE_COUNTS = {1, 10, 100};
+    private static final int BATCH_SIZE = 100;
+    private static final int FRAME_RING_CAPACITY = 1024;
+    private static final long DRAIN_TIMEOUT_MINUTES = 10;
+
+    /**
+     * Blockchain logger that blocks for a fixed time on every call instead of reaching a chain
+     */
+    private static class SimulatedChainLogger extends BlockchainLogger {
+        private final long latencyNanos;
+        private final AtomicLong calls = new AtomicLong();
+
+        SimulatedChainLogger(long latencyNanos) {
+            super(null);
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public void logMeasurement(String machineId, String timestamp, long setpoint, long actualValue, float anomalyScore) {
+            call();
+        }
+
+        @Override
+        public void logAnomaly(String machineId, String timestamp, float anomalyScore, String details) {
+            call();
+        }
+
+        @Override
+        public void logWindow(String machineId, WindowAggregator.Summary summary) {
+            call();
+        }
+
+        private void call() {
+            calls.incrementAndGet();
+            LockSupport.parkNanos(latencyNanos);
+        }
+
+        long getCalls() { return calls.get(); }
+    }
+
+    /**
+     * Result of one run
+     */
+    private static class Result {
+        final long rows;
+        final long chainCalls;
+        final double seconds;
+        final int peakThreads;
+        final boolean drained;
+
+        Result(long rows, long chainCalls, double seconds, int peakThreads, boolean drained) {
+            this.rows = rows;
+            this.chainCalls = chainCalls;
+            this.seconds = seconds;
+            this.peakThreads = peakThreads;
+            this.drained = drained;
+        }
+    }
+
+    /**
+     * Replay rows through a topology with a number of lines and wait until every node has handled them
+     * @param dataLoader Data loader the rows came from
+     * @param rows Rows fed to each line
+     * @param lineCount Number of production lines
+     * @param scheduling NODE_WORKERS or VIRTUAL_THREADS
+     * @param latencyNanos Simulated blockchain call latency
+     */
+    static Result run(DataLoader dataLoader, List<FactoryDataPoint> rows, int lineCount,
+                      FactoryFogTopology.Scheduling scheduling, long latencyNanos) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        SimulatedChainLogger logger = new SimulatedChainLogger(latencyNanos);
+        FactoryFogTopology topology = new FactoryFogTopology(dataLoader, logger, lineCount, scheduling, 0, FRAME_RING_CAPACITY);
+        topology.initialize();
+
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        topology.startProcessing();
+        // One feeder, batch by batch across the lines, so every line is busy throughout
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            List<FactoryDataPoint> batch = rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE));
+            for (int line = 0; line < lineCount; line++) {
+                topology.processBatch(line, batch);
+            }
+        }
+        boolean drained = topology.awaitDrained(DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int peakThreads = threads.getPeakThreadCount();
+
+        topology.shutdown();
+        logger.shutdown();
+        try {
+            // Let this run's threads exit before the next run counts its peak
+            topology.awaitTermination(DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new Result((long) rows.size() * lineCount, logger.getCalls(), seconds, peakThreads, drained);
+    }
+
+    /**
+     * Usage: FogThreadBenchmark [dataFile] [rowsPerLine] [chainLatencyMillis]
+     */
+    public static void main(String[] args) {
+        String dataFile = args.length > 0 ? args[0] : "src/main/resources/continuous_factory_process.csv";
+        int rowsPerLine = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        double latencyMillis = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+        long latencyNanos = (long) (latencyMillis * 1e6);
+
+        DataLoader dataLoader = new DataLoader();
+        if (!dataLoader.loadData(dataFile)) {
+            System.err.println("Failed to load data file: " + dataFile);
+            System.exit(1);
+        }
+        List<FactoryDataPoint> dataPoints = dataLoader.getDataPoints();
+        List<FactoryDataPoint> rows = dataPoints.subList(0, Math.min(rowsPerLine, dataPoints.size()));
+
+        System.out.println("Java " + System.getProperty("java.version") + ", "
+            + Runtime.getRuntime().availableProcessors() + " cores, virtual threads "
+            + (ThreadingMode.isVirtualAvailable() ? "available" : "not available (virtual runs use platform threads)"));
+        System.out.println(rows.size() + " rows per line, " + latencyMillis + " ms per blockchain call");
+        System.out.printf("%-9s %6s %8s %11s %9s %11s %13s%n",
+            "threads", "lines", "rows", "chain calls", "seconds", "rows/s", "peak threads");
+
+        // Nodes print every anomaly they find; keep the table readable
+        PrintStream out = System.out;
+        for (ThreadingMode mode : ThreadingMode.values()) {
+            FactoryFogTopology.Scheduling scheduling = mode == ThreadingMode.VIRTUAL
+                ? FactoryFogTopology.Scheduling.VIRTUAL_THREADS : FactoryFogTopology.Scheduling.NODE_WORKERS;
+            for (int lineCount : LINE_COUNTS) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                Result result;
+                try {
+                    result = run(dataLoader, rows, lineCount, scheduling, latencyNanos);
+                } finally {
+                    System.setOut(out);
+                }
+                System.out.printf("%-9s %6d %8d %11d %9.2f %11.0f %13d%s%n",
+                    mode.name().toLowerCase(), lineCount, result.rows, result.chainCalls, result.seconds,
+                    result.rows / result.seconds, result.peakThreads, result.drained ? "" : "  (not drained)");
+            }
+        }
+        System.exit(0);
+    }
+}
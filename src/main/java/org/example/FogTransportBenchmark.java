@@ -0,0 +1,183 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.example.data.FactoryDataPoint;
+
+/**
+ * Benchmark of fog nodes running in separate processes on localhost
+ * Starts a number of FogNodeServer JVMs, places the nodes of one production
+ * line on them in turn, replays rows of a data file through the topology and
+ * reports throughput and latency for each hop between the topology and a
+ * remote node. The same rows are first run through an all-local topology
+ * for comparison. The servers run offline, without a blockchain.
+ */
+public class FogTransportBenchmark {
+    private static final int BATCH_SIZE = 100;
+    private static final long DRAIN_TIMEOUT_MINUTES = 10;
+    private static final long SERVER_START_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Result of one run
+     */
+    private static class Result {
+        final double seconds;
+        final long rowsCompleted;
+        final long packetsUnmatched;
+        final boolean drained;
+
+        Result(double seconds, long rowsCompleted, long packetsUnmatched, boolean drained) {
+            this.seconds = seconds;
+            this.rowsCompleted = rowsCompleted;
+            this.packetsUnmatched = packetsUnmatched;
+            this.drained = drained;
+        }
+    }
+
+    /**
+     * Replay rows through a topology and wait until every node has handled them
+     * @param topology Initialized topology
+     * @param rows Rows to feed
+     */
+    static Result run(FactoryFogTopology topology, List<FactoryDataPoint> rows) {
+        long start = System.nanoTime();
+        topology.startProcessing();
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            topology.processBatch(rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE)));
+        }
+        boolean drained = topology.awaitDrained(DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        FactoryFogTopology.FogEndpoint output = topology.getNode(FactoryFogTopology.nodeHandle(0, FactoryFogTopology.OUTPUT));
+        long unmatched = 0;
+        for (int role = 0; role < FactoryFogTopology.NODES_PER_LINE; role++) {
+            unmatched += topology.getNode(FactoryFogTopology.nodeHandle(0, role)).getPacketsUnmatched();
+        }
+        return new Result(seconds, output.getRowsCompleted(), unmatched, drained);
+    }
+
+    /**
+     * Start a FogNodeServer JVM on a free port, running offline
+     * @return The server process and its port
+     */
+    private static Process startServer(int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            FogNodeServer.class.getName(), String.valueOf(port), "--offline");
+        // Nodes print every anomaly they find; keep the report readable
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Wait until a server accepts connections
+     * @return true if it did before the timeout
+     */
+    private static boolean awaitServer(InetSocketAddress address) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, 1000);
+                return true;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Usage: FogTransportBenchmark [dataFile] [rows] [serverProcesses]
+     */
+    public static void main(String[] args) throws Exception {
+        String dataFile = args.length > 0 ? args[0] : "src/main/resources/continuous_factory_process.csv";
+        int rowCount = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int serverCount = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        DataLoader dataLoader = new DataLoader();
+        if (!dataLoader.loadData(dataFile)) {
+            System.err.println("Failed to load data file: " + dataFile);
+            System.exit(1);
+        }
+        List<FactoryDataPoint> dataPoints = dataLoader.getDataPoints();
+        List<FactoryDataPoint> rows = dataPoints.subList(0, Math.min(rowCount, dataPoints.size()));
+
+        List<Process> servers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        PrintStream out = System.out;
+        try {
+            for (int i = 0; i < serverCount; i++) {
+                int port = freePort();
+                servers.add(startServer(port));
+                addresses.add(new InetSocketAddress("localhost", port));
+            }
+            for (InetSocketAddress address : addresses) {
+                if (!awaitServer(address)) {
+                    System.err.println("Fog node server at " + address + " did not start");
+                    System.exit(1);
+                }
+            }
+            System.out.println(rows.size() + " rows, " + serverCount + " fog node server processes on localhost");
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            FactoryFogTopology local = new FactoryFogTopology(dataLoader, new FogNodeServer.OfflineLogger());
+            local.initialize();
+            Result localResult = run(local, rows);
+            local.shutdown();
+
+            // Nodes go to the servers in turn, so most hops cross between processes
+            FactoryFogTopology remote = new FactoryFogTopology(dataLoader, new FogNodeServer.OfflineLogger());
+            for (int role = 0; role < FactoryFogTopology.NODES_PER_LINE; role++) {
+                remote.setRemoteNode(FactoryFogTopology.roleName(role), addresses.get(role % serverCount));
+            }
+            remote.initialize();
+            Result remoteResult = run(remote, rows);
+            System.setOut(out);
+
+            System.out.printf("%-7s %9s %12s %10s %10s%n", "nodes", "seconds", "rows/s", "rows done", "unmatched");
+            for (String name : new String[] {"local", "remote"}) {
+                Result result = name.equals("local") ? localResult : remoteResult;
+                System.out.printf("%-7s %9.2f %12.0f %10d %10d%s%n", name, result.seconds, rows.size() / result.seconds,
+                    result.rowsCompleted, result.packetsUnmatched, result.drained ? "" : "  (not drained)");
+            }
+
+            System.out.println();
+            System.out.printf("%-10s %6s %9s %7s %11s %9s %9s %10s %10s %6s%n", "hop", "port", "packets", "frames",
+                "packets/s", "MB out", "MB in", "mean ms", "max ms", "lost");
+            for (RemoteFogNode node : remote.getRemoteNodes()) {
+                System.out.printf("%-10s %6d %9d %7d %11.0f %9.2f %9.2f %10.2f %10.2f %6d%n", node.getNodeId(),
+                    node.getAddress().getPort(), node.getPacketsSent(), node.getFramesAnswered(), node.getPacketsPerSecond(),
+                    node.getBytesSent() / 1e6, node.getBytesReceived() / 1e6, node.getMeanLatencyMillis(),
+                    node.getMaxLatencyMillis(), node.getPacketsLost());
+            }
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            remote.shutdown();
+        } finally {
+            System.setOut(out);
+            for (Process server : servers) {
+                server.destroy();
+            }
+            for (Process server : servers) {
+                server.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+        System.exit(0);
+    }
+}
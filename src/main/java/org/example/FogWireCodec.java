@@ -0,0 +1,246 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.example.FactoryFogTopology.FogDataPacket;
+import org.example.data.Timestamps;
+
+/**
+ * Binary frames exchanged between a RemoteFogNode and the FogNodeServer running its node
+ * Every frame is an int length (of the bytes after it), a type byte and a body:
+ * <pre>
+ * HELLO   short version, string nodeId, byte count + strings upstreamIds, byte count + strings downstreamIds,
+ *         string aggregationWindow, string signalFilter (each empty for none)
+ * DATA    long frameSequence, int count + packets
+ * RESULT  long frameSequence, long watermark, long rowsCompleted, long packetsUnmatched, int count + packets
+ * </pre>
+ * A packet is a byte link (DATA: 0 for sensor data, else 1 + the index of the
+ * upstream node that sent it; RESULT: index of the downstream node it is for),
+ * long sequence, long epochSecond, long watermark, byte payload type, byte
+ * machine ID, byte value count, the float values, and a byte flag followed by
+ * the timestamp text only when it is not the standard text of epochSecond.
+ * Strings are a short length and UTF-8 bytes; numbers are big-endian.
+ *
+ * One thread may write frames while another reads them.
+ */
+final class FogWireCodec {
+    static final byte HELLO = 1;
+    static final byte DATA = 2;
+    static final byte RESULT = 3;
+    static final short VERSION = 3;
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    // Writing state
+    private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long writtenEpochSecond = Timestamps.INVALID;
+    private String writtenTimestamp;
+
+    // Reading state
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long readEpochSecond = Timestamps.INVALID;
+    private String readTimestamp;
+
+    /**
+     * Start a frame
+     * @param type Frame type
+     */
+    void begin(byte type) {
+        out.clear();
+        out.putInt(0);
+        out.put(type);
+    }
+
+    void putByte(int value) {
+        ensure(1).put((byte) value);
+    }
+
+    void putShort(int value) {
+        ensure(2).putShort((short) value);
+    }
+
+    void putInt(int value) {
+        ensure(4).putInt(value);
+    }
+
+    void putLong(long value) {
+        ensure(8).putLong(value);
+    }
+
+    void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long for a frame: " + bytes.length + " bytes");
+        }
+        ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+    }
+
+    /**
+     * Write a packet
+     * @param link Link of the packet (see the class comment)
+     * @param packet Packet to write
+     */
+    void putPacket(int link, FogDataPacket packet) {
+        FogPayload payload = packet.getPayload();
+        float[] values = payload.getValues();
+        ByteBuffer buffer = ensure(28 + values.length * 4);
+        buffer.put((byte) link);
+        buffer.putLong(packet.getSequence());
+        buffer.putLong(packet.getEpochSecond());
+        buffer.putLong(packet.getWatermark());
+        buffer.put(payload.typeCode());
+        buffer.put((byte) payload.machineCode());
+        buffer.put((byte) values.length);
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+
+        String timestamp = packet.getTimestamp();
+        if (isStandardTimestamp(packet.getEpochSecond(), timestamp)) {
+            putByte(0);
+        } else {
+            putByte(1);
+            putString(timestamp != null ? timestamp : "");
+        }
+    }
+
+    /**
+     * Whether a timestamp is the standard text of its epoch seconds, so it can be left out
+     */
+    private boolean isStandardTimestamp(long epochSecond, String timestamp) {
+        if (epochSecond == Timestamps.INVALID || timestamp == null) {
+            return false;
+        }
+        // Consecutive packets mostly carry the same row, so the text is formatted once per row
+        if (epochSecond != writtenEpochSecond) {
+            writtenEpochSecond = epochSecond;
+            writtenTimestamp = Timestamps.format(epochSecond);
+        }
+        return timestamp.equals(writtenTimestamp);
+    }
+
+    /**
+     * Finish the frame and write it to a stream; the caller flushes the stream
+     * @return Number of bytes written
+     */
+    int end(OutputStream stream) throws IOException {
+        int length = out.position();
+        out.putInt(0, length - 4);
+        stream.write(out.array(), 0, length);
+        return length;
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (out.remaining() < bytes) {
+            int capacity = Math.max(out.capacity() * 2, out.position() + bytes);
+            if (capacity > MAX_FRAME_BYTES) {
+                throw new IllegalStateException("Frame larger than " + MAX_FRAME_BYTES + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        return out;
+    }
+
+    /**
+     * Read the next frame; its body is then read with the get methods
+     * @param stream Stream to read from
+     * @return Frame type, or -1 at the end of the stream
+     * @throws IOException If the stream fails or the frame is malformed
+     */
+    int readFrame(DataInputStream stream) throws IOException {
+        int first = stream.read();
+        if (first < 0) {
+            return -1;
+        }
+        int length = (first << 24) | (stream.readUnsignedByte() << 16) | (stream.readUnsignedByte() << 8) | stream.readUnsignedByte();
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        if (in.capacity() < length) {
+            in = ByteBuffer.allocate(Math.max(in.capacity() * 2, length));
+        }
+        stream.readFully(in.array(), 0, length);
+        in.clear();
+        in.limit(length);
+        return in.get();
+    }
+
+    /**
+     * Length of the frame read last, after its length field
+     */
+    int getFrameLength() {
+        return in.limit();
+    }
+
+    int getByte() {
+        return in.get() & 0xff;
+    }
+
+    int getInt() {
+        return in.getInt();
+    }
+
+    long getLong() {
+        return in.getLong();
+    }
+
+    short getShort() {
+        return in.getShort();
+    }
+
+    String getString() {
+        int length = in.getShort();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Read the link of the next packet; the packet follows with getPacket
+     */
+    int getLink() {
+        return getByte();
+    }
+
+    /**
+     * Read a packet after its link
+     * @param sourceNodeId Node that sent the packet, or null for sensor data
+     * @param targetNodeId Node the packet is for
+     * @throws IOException If the payload is malformed
+     */
+    FogDataPacket getPacket(String sourceNodeId, String targetNodeId) throws IOException {
+        long sequence = in.getLong();
+        long epochSecond = in.getLong();
+        long watermark = in.getLong();
+        byte typeCode = in.get();
+        int machineId = in.get();
+        float[] values = new float[in.get() & 0xff];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.getFloat();
+        }
+        FogPayload payload = FogPayload.wrap(typeCode, machineId, values);
+        if (payload == null) {
+            throw new IOException("Invalid payload: type " + typeCode + " with " + values.length + " values");
+        }
+
+        String timestamp;
+        if (in.get() != 0) {
+            timestamp = getString();
+        } else {
+            if (epochSecond != readEpochSecond) {
+                readEpochSecond = epochSecond;
+                readTimestamp = Timestamps.format(epochSecond);
+            }
+            timestamp = readTimestamp;
+        }
+        return new FogDataPacket(timestamp, epochSecond, sequence, sourceNodeId, targetNodeId, payload, watermark);
+    }
+}
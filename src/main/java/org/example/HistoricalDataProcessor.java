@@ -1,16 +1,17 @@
 package org.example;
 
+import java.nio.FloatBuffer;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.example.data.FactoryDataPoint;
-import org.example.data.MachineData;
-import org.example.data.Measurement;
+import org.example.data.CompressedSeries;
+import org.example.data.FactoryColumnStore;
+import org.example.data.FactorySchema;
 
 /**
  * Historical Data Processor
@@ -18,8 +19,9 @@ import org.example.data.Measurement;
  */
 public class HistoricalDataProcessor {
     private final DataLoader dataLoader;
-    private final Map<Integer, List<Float>> stageOneDeviations;
-    private final Map<Integer, List<Float>> stageTwoDeviations;
+    // Deviation series by feature, compressed (see CompressedSeries)
+    private final Map<Integer, CompressedSeries> stageOneDeviations;
+    private final Map<Integer, CompressedSeries> stageTwoDeviations;
     private final Map<Integer, List<Float>> correlations;
     
     /**
@@ -39,77 +41,112 @@ public class HistoricalDataProcessor {
     public void processHistoricalData() {
         System.out.println("Processing historical data...");
         
-        List<FactoryDataPoint> allDataPoints = dataLoader.getDataPoints();
+        FactoryColumnStore store = dataLoader.getColumnStore();
         
-        if (allDataPoints.isEmpty()) {
+        if (store.getRowCount() == 0) {
             System.out.println("No historical data to process");
             return;
         }
         
-        System.out.println("Processing " + allDataPoints.size() + " historical data points");
+        System.out.println("Processing " + store.getRowCount() + " historical data points");
         
+        processRows(store, 0, store.getRowCount());
+    }
+    
+    /**
+     * Process the historical data within a time window.
+     * The rows are found by binary search on the loader's time axis.
+     * @param start Start of the time window (inclusive)
+     * @param end End of the time window (exclusive)
+     */
+    public void processHistoricalData(Instant start, Instant end) {
+        System.out.println("Processing historical data from " + start + " to " + end + "...");
+        
+        int[] rows = dataLoader.getRowRangeBetween(start, end);
+        if (rows == null) {
+            System.err.println("Historical data is not in time order, can't select a time window");
+            return;
+        }
+        if (rows[0] == rows[1]) {
+            System.out.println("No historical data in the time window");
+            return;
+        }
+        
+        System.out.println("Processing " + (rows[1] - rows[0]) + " historical data points");
+        
+        processRows(dataLoader.getColumnStore(), rows[0], rows[1]);
+    }
+    
+    /**
+     * Process the rows [fromRow, toRow) of the column store
+     */
+    private void processRows(FactoryColumnStore store, int fromRow, int toRow) {
         // Calculate deviations for all data points
-        calculateDeviations(allDataPoints);
+        calculateDeviations(store, fromRow, toRow);
         
         // Calculate correlations between input variables and deviations
-        calculateCorrelations(allDataPoints);
+        calculateCorrelations(store, fromRow, toRow);
         
         System.out.println("Historical data processing complete");
     }
     
     /**
      * Calculate deviations from setpoints for all data points
-     * @param dataPoints List of data points
+     * @param store Column store with the data points
+     * @param fromRow First row to use
+     * @param toRow One past the last row to use
      */
-    private void calculateDeviations(List<FactoryDataPoint> dataPoints) {
-        // Initialize maps
-        for (int i = 0; i < 15; i++) {
-            stageOneDeviations.put(i, new ArrayList<>());
-            stageTwoDeviations.put(i, new ArrayList<>());
-        }
-        
-        // Calculate deviations
-        for (FactoryDataPoint point : dataPoints) {
+    private void calculateDeviations(FactoryColumnStore store, int fromRow, int toRow) {
+        for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
             // Stage one deviations
-            for (Measurement m : point.getStage1Measurements()) {
-                float deviation = m.getActual() - m.getSetpoint();
-                stageOneDeviations.get(m.getFeatureId()).add(deviation);
-            }
+            stageOneDeviations.put(featureId, deviations(store,
+                FactorySchema.stage1Actual(featureId), FactorySchema.stage1Setpoint(featureId), fromRow, toRow));
             
             // Stage two deviations
-            for (Measurement m : point.getStage2Measurements()) {
-                float deviation = m.getActual() - m.getSetpoint();
-                stageTwoDeviations.get(m.getFeatureId()).add(deviation);
-            }
+            stageTwoDeviations.put(featureId, deviations(store,
+                FactorySchema.stage2Actual(featureId), FactorySchema.stage2Setpoint(featureId), fromRow, toRow));
         }
     }
     
+    /**
+     * Deviation of an actual column from its setpoint column, row by row
+     */
+    private static CompressedSeries deviations(FactoryColumnStore store, int actualColumn, int setpointColumn,
+                                               int fromRow, int toRow) {
+        FloatBuffer actual = store.column(actualColumn);
+        FloatBuffer setpoint = store.column(setpointColumn);
+        CompressedSeries deviations = new CompressedSeries();
+        for (int row = fromRow; row < toRow; row++) {
+            deviations.append(store.getEpochSecond(row), actual.get(row) - setpoint.get(row));
+        }
+        deviations.trimToSize();
+        return deviations;
+    }
+    
     /**
      * Calculate correlations between process variables and measurement deviations
-     * @param dataPoints List of data points
+     * @param store Column store with the data points
+     * @param fromRow First row to use
+     * @param toRow One past the last row to use
      */
-    private void calculateCorrelations(List<FactoryDataPoint> dataPoints) {
+    private void calculateCorrelations(FactoryColumnStore store, int fromRow, int toRow) {
         // This is a simplified correlation calculation
         // In a real system, you would use more sophisticated statistical methods
+        int rowCount = toRow - fromRow;
         
         // We'll calculate correlation between machine temperatures and measurement deviations
-        for (int featureId = 0; featureId < 15; featureId++) {
+        for (int featureId = 0; featureId < FactorySchema.MEASUREMENT_COUNT; featureId++) {
             for (int machineId = 1; machineId <= 3; machineId++) {
                 String key = machineId + "-exitTemp-" + featureId;
-                List<Float> featureDeviations = stageOneDeviations.get(featureId);
-                List<Float> exitTemps = new ArrayList<>();
+                CompressedSeries featureDeviations = stageOneDeviations.get(featureId);
                 
-                // Extract exit temperatures for this machine
-                for (FactoryDataPoint point : dataPoints) {
-                    MachineData machineData = point.getFirstStageMachineData().get(machineId);
-                    if (machineData != null) {
-                        exitTemps.add(machineData.getExitZoneTemperature());
-                    }
-                }
+                // Exit temperatures for this machine
+                FloatBuffer exitTemps = store.column(
+                    FactorySchema.machineColumn(machineId, FactorySchema.EXIT_ZONE_TEMPERATURE));
                 
                 // Calculate correlation if we have enough data
-                if (featureDeviations.size() > 10 && exitTemps.size() == featureDeviations.size()) {
-                    float correlation = calculatePearsonCorrelation(exitTemps, featureDeviations);
+                if (rowCount > 10) {
+                    float correlation = calculatePearsonCorrelation(exitTemps, fromRow, featureDeviations, rowCount);
                     correlations.put(key.hashCode(), Arrays.asList(correlation));
                 }
             }
@@ -117,26 +154,47 @@ public class HistoricalDataProcessor {
     }
     
     /**
-     * Calculate Pearson correlation coefficient between two lists of values
-     * @param list1 First list
-     * @param list2 Second list
+     * Calculate Pearson correlation coefficient between two series of values.
+     * Pairs where either value is missing (NaN) are skipped.
+     * @param values1 First series
+     * @param offset1 Index of the first value to use from the first series
+     * @param series2 Second series
+     * @param n Number of values to use from each series
      * @return Correlation coefficient (-1 to 1)
      */
-    private float calculatePearsonCorrelation(List<Float> list1, List<Float> list2) {
-        int n = Math.min(list1.size(), list2.size());
-        
-        // Calculate means
-        float mean1 = (float) list1.stream().mapToDouble(Float::doubleValue).average().orElse(0);
-        float mean2 = (float) list2.stream().mapToDouble(Float::doubleValue).average().orElse(0);
+    private float calculatePearsonCorrelation(FloatBuffer values1, int offset1, CompressedSeries series2, int n) {
+        // Calculate means over complete pairs
+        double total1 = 0;
+        double total2 = 0;
+        int pairs = 0;
+        CompressedSeries.Decoder values2 = series2.decoder();
+        for (int i = 0; i < n && values2.next(); i++) {
+            float value1 = values1.get(offset1 + i);
+            float value2 = values2.getValue();
+            if (!Float.isNaN(value1) && !Float.isNaN(value2)) {
+                total1 += value1;
+                total2 += value2;
+                pairs++;
+            }
+        }
+        if (pairs == 0) {
+            return 0;
+        }
+        float mean1 = (float) (total1 / pairs);
+        float mean2 = (float) (total2 / pairs);
         
         // Calculate correlation
         float sum = 0;
         float sum1Sq = 0;
         float sum2Sq = 0;
         
-        for (int i = 0; i < n; i++) {
-            float diff1 = list1.get(i) - mean1;
-            float diff2 = list2.get(i) - mean2;
+        values2 = series2.decoder();
+        for (int i = 0; i < n && values2.next(); i++) {
+            float diff1 = values1.get(offset1 + i) - mean1;
+            float diff2 = values2.getValue() - mean2;
+            if (Float.isNaN(diff1) || Float.isNaN(diff2)) {
+                continue;
+            }
             
             sum += diff1 * diff2;
             sum1Sq += diff1 * diff1;
@@ -155,39 +213,7 @@ public class HistoricalDataProcessor {
      * @return Map of feature ID to statistics
      */
     public Map<Integer, Map<String, Float>> getStageOneDeviationStats() {
-        Map<Integer, Map<String, Float>> stats = new HashMap<>();
-        
-        for (int featureId : stageOneDeviations.keySet()) {
-            List<Float> deviations = stageOneDeviations.get(featureId);
-            
-            if (deviations.isEmpty()) {
-                continue;
-            }
-            
-            // Calculate statistics
-            float mean = (float) deviations.stream().mapToDouble(Float::doubleValue).average().orElse(0);
-            float min = Collections.min(deviations);
-            float max = Collections.max(deviations);
-            
-            // Calculate standard deviation
-            float sumSquaredDiff = 0;
-            for (float val : deviations) {
-                float diff = val - mean;
-                sumSquaredDiff += diff * diff;
-            }
-            float stdDev = (float) Math.sqrt(sumSquaredDiff / deviations.size());
-            
-            // Store statistics
-            Map<String, Float> featureStats = new HashMap<>();
-            featureStats.put("mean", mean);
-            featureStats.put("min", min);
-            featureStats.put("max", max);
-            featureStats.put("stdDev", stdDev);
-            
-            stats.put(featureId, featureStats);
-        }
-        
-        return stats;
+        return getDeviationStats(stageOneDeviations);
     }
     
     /**
@@ -195,27 +221,54 @@ public class HistoricalDataProcessor {
      * @return Map of feature ID to statistics
      */
     public Map<Integer, Map<String, Float>> getStageTwoDeviationStats() {
+        return getDeviationStats(stageTwoDeviations);
+    }
+    
+    /**
+     * Calculate mean, min, max and standard deviation for each feature
+     * @param deviationsByFeature Deviations by feature ID
+     * @return Map of feature ID to statistics
+     */
+    private Map<Integer, Map<String, Float>> getDeviationStats(Map<Integer, CompressedSeries> deviationsByFeature) {
         Map<Integer, Map<String, Float>> stats = new HashMap<>();
         
-        for (int featureId : stageTwoDeviations.keySet()) {
-            List<Float> deviations = stageTwoDeviations.get(featureId);
+        for (int featureId : deviationsByFeature.keySet()) {
+            CompressedSeries deviations = deviationsByFeature.get(featureId);
             
-            if (deviations.isEmpty()) {
-                continue;
+            // Calculate statistics, skipping missing values
+            double sum = 0;
+            int count = 0;
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            CompressedSeries.Decoder values = deviations.decoder();
+            while (values.next()) {
+                float val = values.getValue();
+                if (Float.isNaN(val)) {
+                    continue;
+                }
+                sum += val;
+                count++;
+                min = Math.min(min, val);
+                max = Math.max(max, val);
             }
             
-            // Calculate statistics
-            float mean = (float) deviations.stream().mapToDouble(Float::doubleValue).average().orElse(0);
-            float min = Collections.min(deviations);
-            float max = Collections.max(deviations);
+            if (count == 0) {
+                continue;
+            }
+            float mean = (float) (sum / count);
             
             // Calculate standard deviation
             float sumSquaredDiff = 0;
-            for (float val : deviations) {
+            values = deviations.decoder();
+            while (values.next()) {
+                float val = values.getValue();
+                if (Float.isNaN(val)) {
+                    continue;
+                }
                 float diff = val - mean;
                 sumSquaredDiff += diff * diff;
             }
-            float stdDev = (float) Math.sqrt(sumSquaredDiff / deviations.size());
+            float stdDev = (float) Math.sqrt(sumSquaredDiff / count);
             
             // Store statistics
             Map<String, Float> featureStats = new HashMap<>();
@@ -278,15 +331,20 @@ public class HistoricalDataProcessor {
         
         // Calculate average absolute deviation for each feature
         for (int featureId : stageOneDeviations.keySet()) {
-            List<Float> deviations = stageOneDeviations.get(featureId);
+            CompressedSeries.Decoder deviations = stageOneDeviations.get(featureId).decoder();
             
-            if (!deviations.isEmpty()) {
-                float avgAbsDeviation = (float) deviations.stream()
-                    .mapToDouble(d -> Math.abs(d))
-                    .average()
-                    .orElse(0);
-                
-                featureVariations.put(featureId, avgAbsDeviation);
+            double sum = 0;
+            int valid = 0;
+            while (deviations.next()) {
+                float d = deviations.getValue();
+                if (!Float.isNaN(d)) {
+                    sum += Math.abs(d);
+                    valid++;
+                }
+            }
+            
+            if (valid > 0) {
+                featureVariations.put(featureId, (float) (sum / valid));
             }
         }
         
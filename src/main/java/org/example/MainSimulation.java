@@ -1,10 +1,16 @@
 package org.example;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.example.data.FactoryDataPoint;
+import org.example.data.FramePool;
 
 /**
  * Main Simulation for Blockchain-Integrated Fog Computing
@@ -14,8 +20,46 @@ public class MainSimulation {
     
     // Configuration
     private static final String DATA_FILE = "src/main/resources/continuous_factory_process.csv";
+    private static final String SNAPSHOT_FILE = "src/main/resources/continuous_factory_process.fcs";
     private static final int DASHBOARD_PORT = 8080;
     private static final String EVALUATION_FILE = "system_evaluation.md";
+    private static final int BATCH_SIZE = 100;
+    private static final long BATCH_DRAIN_TIMEOUT_SECONDS = 30;
+    private static final int GATEWAY_PORT = 9090;
+    private static final long GATEWAY_LINGER_MILLIS = 50;
+    // One day of 1 Hz frames off-heap (about 40 MB)
+    private static final int FRAME_RING_CAPACITY = 86400;
+    // Backpressure policies (block, drop-oldest, drop-newest or sample:N) for the fog node inboxes and the blockchain log queue
+    private static final String FOG_BACKPRESSURE_ENV = "FOG_BACKPRESSURE_POLICY";
+    private static final String BLOCKCHAIN_BACKPRESSURE_ENV = "BLOCKCHAIN_BACKPRESSURE_POLICY";
+    // Threads (platform or virtual) for the fog nodes, blockchain logger and dashboard
+    private static final String THREADING_MODE_ENV = "THREADING_MODE";
+    // Window (tumbling:N or sliding:N/S, in seconds) the fog nodes summarize their measurements over before logging
+    private static final String AGGREGATION_WINDOW_ENV = "FOG_AGGREGATION_WINDOW";
+    // Filter (deadband:D or swinging-door:D, optionally /S for the max interval) choosing which fog node measurements are logged
+    private static final String SIGNAL_FILTER_ENV = "FOG_SIGNAL_FILTER";
+    // Fog nodes hosted by FogNodeServer processes, as nodeId=host:port,...
+    private static final String REMOTE_NODES_ENV = "FOG_REMOTE_NODES";
+    
+    /**
+     * How the data file is fed to the simulation
+     */
+    public enum RunMode {
+        // Load the whole file, then replay it
+        BATCH,
+        // Stream the file in constant memory
+        STREAM,
+        // Follow rows appended to the file as it is written
+        TAIL,
+        // Receive live sensor frames through the SensorGateway
+        GATEWAY
+    }
+    
+    private final RunMode runMode;
+    private BackpressurePolicy fogBackpressurePolicy;
+    
+    // Recycled frames for the streaming and tail modes; no stage keeps a data point past its batch
+    private final FramePool framePool = new FramePool(BATCH_SIZE * 2);
     
     // Components
     private DataLoader dataLoader;
@@ -27,6 +71,21 @@ public class MainSimulation {
     private WebDashboard webDashboard;
     private SystemEvaluator systemEvaluator;
     
+    /**
+     * Create a simulation that loads the whole data file
+     */
+    public MainSimulation() {
+        this(RunMode.BATCH);
+    }
+    
+    /**
+     * Create a simulation
+     * @param runMode How the data file is fed to the simulation
+     */
+    public MainSimulation(RunMode runMode) {
+        this.runMode = runMode;
+    }
+    
     /**
      * Initialize the simulation components
      */
@@ -40,7 +99,15 @@ public class MainSimulation {
         
         // Initialize data loader
         dataLoader = new DataLoader();
-        boolean dataLoaded = dataLoader.loadData(DATA_FILE);
+        boolean dataLoaded;
+        if (runMode != RunMode.BATCH) {
+            dataLoaded = true;
+        } else if (Files.exists(Paths.get(SNAPSHOT_FILE))) {
+            // Binary snapshot (see FactorySnapshot) starts without parsing
+            dataLoaded = dataLoader.loadSnapshot(SNAPSHOT_FILE) || dataLoader.loadDataParallel(DATA_FILE);
+        } else {
+            dataLoaded = dataLoader.loadDataParallel(DATA_FILE);
+        }
         
         if (!dataLoaded) {
             LoggingConfig.error("MainSimulation", "Failed to load data. Exiting.");
@@ -61,12 +128,24 @@ public class MainSimulation {
             LoggingConfig.info("MainSimulation", "Contract loaded successfully at: " + contractAddress);
         }
         
+        ThreadingMode threadingMode = threadingMode();
+        
         // Initialize blockchain logger (even if contract failed, it might succeed later)
-        blockchainLogger = new BlockchainLogger(blockchainConnector);
+        blockchainLogger = new BlockchainLogger(blockchainConnector, threadingMode);
+        blockchainLogger.setBackpressurePolicy(backpressurePolicy(BLOCKCHAIN_BACKPRESSURE_ENV, BackpressurePolicy.dropNewest()));
         
-        // Initialize fog topology
-        fogTopology = new FactoryFogTopology(dataLoader, blockchainLogger);
+        // Initialize fog topology; node work is balanced over the cores by a work-stealing pool,
+        // or each node gets a virtual thread
+        FactoryFogTopology.Scheduling scheduling = threadingMode == ThreadingMode.VIRTUAL
+            ? FactoryFogTopology.Scheduling.VIRTUAL_THREADS : FactoryFogTopology.Scheduling.WORK_STEALING;
+        fogTopology = new FactoryFogTopology(dataLoader, blockchainLogger, 1, scheduling,
+            Runtime.getRuntime().availableProcessors(), FRAME_RING_CAPACITY);
+        configureRemoteNodes(fogTopology);
         fogTopology.initialize();
+        fogBackpressurePolicy = backpressurePolicy(FOG_BACKPRESSURE_ENV, BackpressurePolicy.block());
+        fogTopology.setBackpressurePolicy(fogBackpressurePolicy);
+        fogTopology.setAggregationWindow(aggregationWindow());
+        fogTopology.setSignalFilter(signalFilter());
         
         // Initialize anomaly detector
         anomalyDetector = new AIAnomalyDetector();
@@ -76,9 +155,11 @@ public class MainSimulation {
         
         // Initialize web dashboard
         try {
-            webDashboard = new WebDashboard(DASHBOARD_PORT);
+            webDashboard = new WebDashboard(DASHBOARD_PORT, threadingMode);
             webDashboard.setDataLoader(dataLoader);
             webDashboard.setBlockchainConnector(blockchainConnector);
+            webDashboard.setFrameRing(fogTopology.getFrameRing());
+            webDashboard.setFogTopology(fogTopology);
             webDashboard.start();
             LoggingConfig.info("MainSimulation", "Web dashboard started at http://localhost:" + DASHBOARD_PORT);
         } catch (Exception e) {
@@ -94,6 +175,22 @@ public class MainSimulation {
     public void runSimulation() {
         LoggingConfig.info("MainSimulation", "Starting simulation...");
         
+        if (runMode == RunMode.STREAM) {
+            runStreamingSimulation();
+            completeSimulation();
+            return;
+        }
+        if (runMode == RunMode.TAIL) {
+            runTailSimulation();
+            completeSimulation();
+            return;
+        }
+        if (runMode == RunMode.GATEWAY) {
+            runGatewaySimulation();
+            completeSimulation();
+            return;
+        }
+        
         // Process historical data for insights
         historicalProcessor.processHistoricalData();
         
@@ -114,102 +211,401 @@ public class MainSimulation {
         // Process data in batches (simulating real-time data flow)
         List<FactoryDataPoint> allData = dataLoader.getDataPoints();
         int totalDataPoints = allData.size();
-        int batchSize = 100;
-        int totalBatches = (totalDataPoints + batchSize - 1) / batchSize;
+        int totalBatches = (totalDataPoints + BATCH_SIZE - 1) / BATCH_SIZE;
         
         LoggingConfig.info("MainSimulation", "\nProcessing " + totalDataPoints + " data points in " + totalBatches + " batches");
         
         for (int i = 0; i < totalBatches; i++) {
-            int startIdx = i * batchSize;
-            int endIdx = Math.min(startIdx + batchSize, totalDataPoints);
+            int startIdx = i * BATCH_SIZE;
+            int endIdx = Math.min(startIdx + BATCH_SIZE, totalDataPoints);
             
             List<FactoryDataPoint> batch = dataLoader.getDataPointsInRange(startIdx, endIdx - 1);
             
             LoggingConfig.debug("MainSimulation", "Processing batch " + (i + 1) + "/" + totalBatches + 
                                " (" + batch.size() + " data points)");
             
-            long startTime = System.currentTimeMillis();
+            processSimulationBatch(batch);
             
-            // Process batch through fog topology
-            fogTopology.processBatch(batch);
+            // Print progress every 10 batches
+            if ((i + 1) % 10 == 0 || i == totalBatches - 1) {
+                LoggingConfig.info("MainSimulation", "Processed " + (i + 1) + "/" + totalBatches + " batches");
+                logEvaluationMetrics();
+            }
+        }
+        
+        completeSimulation();
+    }
+    
+    /**
+     * Run the simulation by streaming the data file instead of loading it.
+     * Rows are parsed and processed batch by batch, so memory use stays
+     * constant however long the recording is. Historical analysis needs the
+     * whole dataset and is skipped in this mode.
+     */
+    private void runStreamingSimulation() {
+        LoggingConfig.info("MainSimulation", "Streaming " + DATA_FILE + " in batches of " + BATCH_SIZE);
+        
+        // Initialize anomaly detector with the start of the recording
+        trainAnomalyDetector();
+        
+        // Start fog topology processing
+        fogTopology.startProcessing();
+        
+        int[] batchCount = {0};
+        long totalDataPoints = dataLoader.streamData(DATA_FILE, BATCH_SIZE, framePool, batch -> {
+            processSimulationBatch(batch);
             
-            long endTime = System.currentTimeMillis();
-            long processingTime = endTime - startTime;
+            // Print progress every 10 batches
+            if (++batchCount[0] % 10 == 0) {
+                LoggingConfig.info("MainSimulation", "Processed " + batchCount[0] + " batches");
+                logEvaluationMetrics();
+            }
+        });
+        
+        LoggingConfig.info("MainSimulation", "Streamed " + totalDataPoints + " data points in " + batchCount[0] + " batches");
+        logEvaluationMetrics();
+    }
+    
+    /**
+     * Run the simulation on rows appended to the data file while it is being
+     * written, e.g. by a plant historian export. Each micro-batch of new rows
+     * is processed as soon as it is read, without re-reading the file.
+     * Runs until the process is stopped.
+     */
+    private void runTailSimulation() {
+        // Initialize anomaly detector with the start of the recording
+        trainAnomalyDetector();
+        
+        // Start fog topology processing
+        fogTopology.startProcessing();
+        
+        DataLoader.Tailer tailer;
+        try {
+            tailer = dataLoader.tail(DATA_FILE, false, BATCH_SIZE, framePool, this::processSimulationBatch);
+        } catch (IOException e) {
+            LoggingConfig.error("MainSimulation", "Failed to open " + DATA_FILE, e);
+            return;
+        }
+        
+        stopOnShutdown(tailer);
+        LoggingConfig.info("MainSimulation", "Following new rows of " + DATA_FILE + " (Ctrl+C to stop)");
+        long totalDataPoints = tailer.run();
+        
+        LoggingConfig.info("MainSimulation", "Processed " + totalDataPoints + " appended data points");
+        logEvaluationMetrics();
+    }
+    
+    /**
+     * Run the simulation on live sensor frames received by a SensorGateway,
+     * e.g. from SensorLoadGenerator. Frames are micro-batched into the fog
+     * topology as they arrive. Runs until the process is stopped.
+     */
+    private void runGatewaySimulation() {
+        // Initialize anomaly detector with the start of the recording
+        trainAnomalyDetector();
+        
+        // Start fog topology processing
+        fogTopology.startProcessing();
+        
+        SensorGateway gateway = new SensorGateway(GATEWAY_PORT, BATCH_SIZE, GATEWAY_LINGER_MILLIS,
+            this::processSimulationBatch);
+        try {
+            gateway.bind();
+        } catch (IOException e) {
+            LoggingConfig.error("MainSimulation", "Failed to open sensor gateway on port " + GATEWAY_PORT, e);
+            return;
+        }
+        
+        stopOnShutdown(gateway);
+        LoggingConfig.info("MainSimulation", "Receiving sensor frames on port " + GATEWAY_PORT + " (Ctrl+C to stop)");
+        gateway.run();
+        
+        LoggingConfig.info("MainSimulation", "Processed " + gateway.getFramesReceived() + " sensor frames from "
+            + gateway.getConnectionsAccepted() + " connections");
+        logEvaluationMetrics();
+    }
+    
+    /**
+     * Initialize the anomaly detector with the first rows of the data file
+     */
+    private void trainAnomalyDetector() {
+        try (DataLoader.DataPointIterator trainingData = dataLoader.iterate(DATA_FILE)) {
+            anomalyDetector.initializeWithHistory(trainingData, 1000);
+        } catch (IOException e) {
+            LoggingConfig.error("MainSimulation", "Failed to read training data", e);
+        }
+    }
+    
+    /**
+     * Read a backpressure policy from an environment variable
+     * @param name Environment variable
+     * @param defaultPolicy Policy if the variable is not set or not valid
+     */
+    private static BackpressurePolicy backpressurePolicy(String name, BackpressurePolicy defaultPolicy) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultPolicy;
+        }
+        BackpressurePolicy policy = BackpressurePolicy.parse(value);
+        if (policy == null) {
+            LoggingConfig.warn("MainSimulation", "Invalid " + name + " '" + value + "', using " + defaultPolicy);
+            return defaultPolicy;
+        }
+        LoggingConfig.info("MainSimulation", name + ": " + policy);
+        return policy;
+    }
+    
+    /**
+     * Read the aggregation window from its environment variable
+     * @return Window, or null to log every reading if the variable is not set or not valid
+     */
+    private static AggregationWindow aggregationWindow() {
+        String value = System.getenv(AGGREGATION_WINDOW_ENV);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        AggregationWindow window = AggregationWindow.parse(value);
+        if (window == null) {
+            LoggingConfig.warn("MainSimulation", "Invalid " + AGGREGATION_WINDOW_ENV + " '" + value + "', logging every reading");
+            return null;
+        }
+        LoggingConfig.info("MainSimulation", AGGREGATION_WINDOW_ENV + ": " + window);
+        return window;
+    }
+    
+    /**
+     * Read the signal filter from its environment variable
+     * @return Filter, or null to log every reading if the variable is not set or not valid
+     */
+    private static SignalFilter signalFilter() {
+        String value = System.getenv(SIGNAL_FILTER_ENV);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        SignalFilter filter = SignalFilter.parse(value);
+        if (filter == null) {
+            LoggingConfig.warn("MainSimulation", "Invalid " + SIGNAL_FILTER_ENV + " '" + value + "', logging every reading");
+            return null;
+        }
+        LoggingConfig.info("MainSimulation", SIGNAL_FILTER_ENV + ": " + filter);
+        return filter;
+    }
+    
+    /**
+     * Place the fog nodes named in the remote nodes environment variable on their servers
+     * Entries that are not valid are skipped with a warning.
+     * @param topology Topology, before it is initialized
+     */
+    private static void configureRemoteNodes(FactoryFogTopology topology) {
+        String value = System.getenv(REMOTE_NODES_ENV);
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split("=");
+            int colon = parts.length == 2 ? parts[1].lastIndexOf(':') : -1;
+            if (colon <= 0) {
+                LoggingConfig.warn("MainSimulation", "Invalid " + REMOTE_NODES_ENV + " entry '" + entry + "', expected nodeId=host:port");
+                continue;
+            }
+            try {
+                int port = Integer.parseInt(parts[1].substring(colon + 1));
+                InetSocketAddress address = new InetSocketAddress(parts[1].substring(0, colon), port);
+                topology.setRemoteNode(parts[0], address);
+                LoggingConfig.info("MainSimulation", "Fog node " + parts[0] + " runs on " + parts[1]);
+            } catch (IllegalArgumentException e) {
+                LoggingConfig.warn("MainSimulation", "Invalid " + REMOTE_NODES_ENV + " entry '" + entry + "': " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Read the threading mode from its environment variable
+     * @return Mode, PLATFORM if the variable is not set or not valid
+     */
+    private static ThreadingMode threadingMode() {
+        String value = System.getenv(THREADING_MODE_ENV);
+        if (value == null || value.isEmpty()) {
+            return ThreadingMode.PLATFORM;
+        }
+        ThreadingMode mode = ThreadingMode.parse(value);
+        if (mode == null) {
+            LoggingConfig.warn("MainSimulation", "Invalid " + THREADING_MODE_ENV + " '" + value + "', using platform threads");
+            return ThreadingMode.PLATFORM;
+        }
+        LoggingConfig.info("MainSimulation", THREADING_MODE_ENV + ": " + mode + " (running on " + mode.effective() + " threads)");
+        return mode;
+    }
+    
+    /**
+     * Close a live source on Ctrl+C and let the simulation complete before exiting
+     * @param source Source whose run loop returns once it is closed
+     */
+    private void stopOnShutdown(Closeable source) {
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                source.close();
+                mainThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (IOException e) {
+                LoggingConfig.error("MainSimulation", "Failed to stop data source", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+    
+    /**
+     * Process one batch through the fog topology, the evaluator, the dashboard
+     * and the anomaly detector
+     * @param batch Batch of data points
+     */
+    private void processSimulationBatch(List<FactoryDataPoint> batch) {
+        long startTime = System.currentTimeMillis();
+        
+        // Process batch through fog topology; the nodes work on it concurrently.
+        // Replays and blocking inboxes wait for the batch, which holds up the source while the nodes are behind;
+        // live data with a shedding policy keeps flowing and the inboxes shed instead
+        fogTopology.processBatch(batch);
+        boolean live = runMode == RunMode.TAIL || runMode == RunMode.GATEWAY;
+        if ((!live || fogBackpressurePolicy.getMode() == BackpressurePolicy.Mode.BLOCK)
+                && !fogTopology.awaitDrained(BATCH_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LoggingConfig.warn("MainSimulation", "Fog nodes did not finish the batch within "
+                + BATCH_DRAIN_TIMEOUT_SECONDS + " s");
+        }
+        
+        long endTime = System.currentTimeMillis();
+        long processingTime = endTime - startTime;
+        
+        // Record batch processing in evaluator
+        for (FactoryDataPoint dataPoint : batch) {
+            systemEvaluator.recordProcessedDataPoint(dataPoint, processingTime / batch.size());
+        }
+        
+        // Check for anomalies using the anomaly detector
+        for (FactoryDataPoint dataPoint : batch) {
+            AIAnomalyDetector.AnomalyResult result = anomalyDetector.detectAnomalies(dataPoint);
             
-            // Record batch processing in evaluator
-            for (FactoryDataPoint dataPoint : batch) {
-                systemEvaluator.recordProcessedDataPoint(dataPoint, processingTime / batch.size());
+            if (result.isAnomaly()) {
+                LoggingConfig.info("MainSimulation", "Anomaly detected: " + result);
+                systemEvaluator.recordAnomalyDetected();
                 
                 // Record for dashboard visualization
                 if (webDashboard != null) {
-                    webDashboard.recordMeasurement(dataPoint);
+                    webDashboard.recordAnomaly(
+                        "output", 
+                        dataPoint.getTimestamp(), 
+                        result.getScore(), 
+                        result.getDetails()
+                    );
                 }
-            }
-            
-            // Check for anomalies using the anomaly detector
-            for (FactoryDataPoint dataPoint : batch) {
-                AIAnomalyDetector.AnomalyResult result = anomalyDetector.detectAnomalies(dataPoint);
                 
-                if (result.isAnomaly()) {
-                    LoggingConfig.info("MainSimulation", "Anomaly detected: " + result);
-                    systemEvaluator.recordAnomalyDetected();
+                // Record on blockchain (if connected)
+                try {
+                    blockchainLogger.logAnomaly(
+                        "output",
+                        dataPoint.getTimestamp(),
+                        result.getScore(),
+                        String.join("\n", result.getDetails())
+                    );
+                    systemEvaluator.recordBlockchainTransaction(true);
                     
                     // Record for dashboard visualization
                     if (webDashboard != null) {
-                        webDashboard.recordAnomaly(
-                            "output", 
-                            dataPoint.getTimestamp(), 
-                            result.getScore(), 
-                            result.getDetails()
-                        );
-                    }
-                    
-                    // Record on blockchain (if connected)
-                    try {
-                        blockchainLogger.logAnomaly(
-                            "output",
-                            dataPoint.getTimestamp(),
-                            result.getScore(),
-                            String.join("\n", result.getDetails())
+                        webDashboard.recordBlockchainTransaction(
+                            "Anomaly",
+                            "tx-" + System.currentTimeMillis(),
+                            "Anomaly detected with score " + result.getScore()
                         );
-                        systemEvaluator.recordBlockchainTransaction(true);
-                        
-                        // Record for dashboard visualization
-                        if (webDashboard != null) {
-                            webDashboard.recordBlockchainTransaction(
-                                "Anomaly",
-                                "tx-" + System.currentTimeMillis(),
-                                "Anomaly detected with score " + result.getScore()
-                            );
-                        }
-                    } catch (Exception e) {
-                        LoggingConfig.error("MainSimulation", "Failed to log anomaly to blockchain", e);
-                        systemEvaluator.recordBlockchainTransaction(false);
                     }
+                } catch (Exception e) {
+                    LoggingConfig.error("MainSimulation", "Failed to log anomaly to blockchain", e);
+                    systemEvaluator.recordBlockchainTransaction(false);
                 }
             }
-            
-            // Simulate delay between batches (for demonstration)
-            try {
-                TimeUnit.MILLISECONDS.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        }
+        
+        // Simulate delay between batches (for demonstration); live data arrives at its own pace
+        if (runMode == RunMode.TAIL || runMode == RunMode.GATEWAY) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Log the current evaluation metrics
+     */
+    private void logEvaluationMetrics() {
+        Map<String, Object> metrics = systemEvaluator.getEvaluationReport();
+        LoggingConfig.info("MainSimulation", String.format(
+            "Processing rate: %.2f points/sec, Anomalies: %d, Blockchain TXs: %d",
+            metrics.get("processingRatePerSecond"),
+            metrics.get("anomaliesDetected"),
+            metrics.get("blockchainTransactions")
+        ));
+        
+        // Overload shows up here: senders held up by full queues, and entries shed by the policies
+        long blocked = 0;
+        long shed = 0;
+        for (FactoryFogTopology.FogNode node : fogTopology.getAllNodes().values()) {
+            blocked += node.getInbox().getBlockedCount();
+            shed += node.getInbox().getShedCount();
+            LoggingConfig.debug("MainSimulation", "Inbox of " + node.getNodeId() + " " + node.getInbox());
+        }
+        BackpressureQueue<?> logQueue = blockchainLogger.getLogQueue();
+        LoggingConfig.info("MainSimulation", String.format(
+            "Backpressure: fog nodes blocked %d, shed %d; blockchain log blocked %d, shed %d",
+            blocked, shed, logQueue.getBlockedCount(), logQueue.getShedCount()));
+        
+        // Readings folded into window summaries instead of being logged one by one
+        long readings = 0;
+        long summaries = 0;
+        for (FactoryFogTopology.FogNode node : fogTopology.getAllNodes().values()) {
+            WindowAggregator window = node.getMeasurementWindow();
+            if (window != null) {
+                readings += window.getValuesAdded();
+                summaries += window.getSummariesEmitted();
             }
-            
-            // Print progress every 10 batches
-            if ((i + 1) % 10 == 0 || i == totalBatches - 1) {
-                LoggingConfig.info("MainSimulation", "Processed " + (i + 1) + "/" + totalBatches + " batches");
-                
-                // Print current evaluation metrics
-                Map<String, Object> metrics = systemEvaluator.getEvaluationReport();
-                LoggingConfig.info("MainSimulation", String.format(
-                    "Processing rate: %.2f points/sec, Anomalies: %d, Blockchain TXs: %d",
-                    metrics.get("processingRatePerSecond"),
-                    metrics.get("anomaliesDetected"),
-                    metrics.get("blockchainTransactions")
-                ));
+        }
+        if (readings > 0) {
+            LoggingConfig.info("MainSimulation", "Window aggregation: " + readings + " readings logged as " + summaries + " summaries"
+                + (summaries > 0 ? String.format(" (%.1fx fewer blockchain entries)", (double) readings / summaries) : ""));
+        }
+        
+        // Bandwidth against fidelity of the signal filters
+        long filteredIn = 0;
+        long forwarded = 0;
+        double maxError = 0;
+        for (FactoryFogTopology.FogNode node : fogTopology.getAllNodes().values()) {
+            SignalCompressor filter = node.getMeasurementFilter();
+            if (filter != null) {
+                filteredIn += filter.getValuesIn();
+                forwarded += filter.getValuesForwarded();
+                maxError = Math.max(maxError, filter.getMaxError());
+                LoggingConfig.debug("MainSimulation", "Signal filter of " + node.getNodeId() + " " + filter);
             }
         }
+        if (filteredIn > 0) {
+            LoggingConfig.info("MainSimulation", String.format(
+                "Signal filter: %d readings, %d logged, compression ratio %.1f, max reconstruction error %.4f",
+                filteredIn, forwarded, forwarded > 0 ? (double) filteredIn / forwarded : 1.0, maxError));
+        }
+        if (fogTopology.getScheduler() != null) {
+            LoggingConfig.info("MainSimulation", "Fog scheduler: " + fogTopology.getScheduler());
+        }
+    }
+    
+    /**
+     * Wait for pending blockchain work and save the evaluation report
+     */
+    private void completeSimulation() {
+        // Log what the nodes hold back once they have finished the last rows
+        fogTopology.awaitDrained(BATCH_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        fogTopology.flushLogs();
         
         // Wait for blockchain processing to complete
         try {
@@ -251,7 +647,15 @@ public class MainSimulation {
      * Main entry point
      */
     public static void main(String[] args) {
-        MainSimulation simulation = new MainSimulation();
+        RunMode runMode = RunMode.BATCH;
+        if (args.length > 0 && args[0].equals("--stream")) {
+            runMode = RunMode.STREAM;
+        } else if (args.length > 0 && args[0].equals("--tail")) {
+            runMode = RunMode.TAIL;
+        } else if (args.length > 0 && args[0].equals("--gateway")) {
+            runMode = RunMode.GATEWAY;
+        }
+        MainSimulation simulation = new MainSimulation(runMode);
         
         try {
             // Initialize
@@ -0,0 +1,278 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.example.data.Timestamps;
+
+/**
+ * Row scanner over a memory-mapped CSV file
+ * Maps the file in windows and records cell boundaries for each row,
+ * so numeric cells can be parsed straight from the mapped bytes
+ */
+public class MappedCsvScanner implements Closeable {
+
+    // Default size of each mapped window
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long rangeEnd;
+    private final int windowSize;
+
+    // Current mapped window and the part of it holding complete rows
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private int rowStart;
+    private int rowEnd;
+
+    // Cell boundaries of the current row, relative to the window
+    private int[] cellStarts = new int[128];
+    private int[] cellEnds = new int[128];
+    private int cellCount;
+
+    // Scratch space for the few cells that are decoded as text
+    private byte[] textScratch = new byte[64];
+
+    /**
+     * Create a scanner over the whole file
+     * @param channel Open file channel
+     * @throws IOException If the file size can't be read
+     */
+    public MappedCsvScanner(FileChannel channel) throws IOException {
+        this(channel, 0, channel.size(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a scanner over a byte range of the file
+     * @param channel Open file channel
+     * @param start First byte of the range (must be at the start of a row)
+     * @param end One past the last byte of the range
+     * @param windowSize Size of each mapped window
+     */
+    public MappedCsvScanner(FileChannel channel, long start, long end, int windowSize) {
+        this.channel = channel;
+        this.rangeEnd = end;
+        this.windowSize = windowSize;
+        this.windowStart = start;
+        this.windowLimit = 0;
+        this.rowEnd = 0;
+    }
+
+    /**
+     * Advance to the next row
+     * @return true if a row is available, false at the end of the range
+     * @throws IOException If the file can't be mapped
+     */
+    public boolean nextRow() throws IOException {
+        if (rowEnd >= windowLimit && !mapNextWindow()) {
+            return false;
+        }
+
+        rowStart = rowEnd;
+        cellCount = 0;
+        int cellStart = rowStart;
+        int i = rowStart;
+
+        while (i < windowLimit) {
+            byte b = window.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            if (b == ',') {
+                addCell(cellStart, i);
+                cellStart = i + 1;
+            }
+            i++;
+        }
+        addCell(cellStart, i);
+
+        // Same line terminators as BufferedReader.readLine: \n, \r or \r\n
+        int next = i;
+        if (next < windowLimit) {
+            byte terminator = window.get(next++);
+            if (terminator == '\r' && next < windowLimit && window.get(next) == '\n') next++;
+        }
+        rowEnd = next;
+        return true;
+    }
+
+    /**
+     * File offset of the byte following the current row
+     * (the start of the next row)
+     */
+    public long position() {
+        return windowStart + rowEnd;
+    }
+    
+    /**
+     * Find the start of the first row beginning at or after an offset
+     * @param channel Open file channel
+     * @param from Offset to search from (the row containing from-1 is skipped)
+     * @param end Offset to stop searching at
+     * @return Offset just after the next line feed, or end if there is none
+     * @throws IOException If the file can't be read
+     */
+    public static long nextRowStart(FileChannel channel, long from, long end) throws IOException {
+        if (from <= 0) {
+            return 0;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = from - 1;
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return Math.min(position + i + 1, end);
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+    
+    /**
+     * Find the end of the last complete row in a byte range
+     * @param channel Open file channel
+     * @param from Offset to search back to
+     * @param end One past the last byte of the range
+     * @return Offset just after the last line feed in [from, end), or from if there is none
+     * @throws IOException If the file can't be read
+     */
+    public static long lastRowEnd(FileChannel channel, long from, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = end;
+        while (position > from) {
+            int length = (int) Math.min(buffer.capacity(), position - from);
+            buffer.clear().limit(length);
+            long start = position - length;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    return from;
+                }
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            position = start;
+        }
+        return from;
+    }
+    
+    /**
+     * Map the window following the current one, trimmed to its last complete row
+     */
+    private boolean mapNextWindow() throws IOException {
+        windowStart += windowLimit;
+        if (windowStart >= rangeEnd) {
+            return false;
+        }
+
+        long size = Math.min(windowSize, rangeEnd - windowStart);
+        while (true) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+            boolean reachesEnd = windowStart + size >= rangeEnd;
+
+            int limit = (int) size;
+            if (!reachesEnd) {
+                // Stop after the last line terminator so no row straddles windows
+                while (limit > 0 && window.get(limit - 1) != '\n') {
+                    limit--;
+                }
+            }
+            if (limit > 0) {
+                windowLimit = limit;
+                rowEnd = 0;
+                return true;
+            }
+
+            // A single row is longer than the window, so grow it
+            size = Math.min(size * 2, Math.min(Integer.MAX_VALUE, rangeEnd - windowStart));
+        }
+    }
+
+    private void addCell(int start, int end) {
+        if (cellCount == cellStarts.length) {
+            cellStarts = Arrays.copyOf(cellStarts, cellCount * 2);
+            cellEnds = Arrays.copyOf(cellEnds, cellCount * 2);
+        }
+        cellStarts[cellCount] = start;
+        cellEnds[cellCount] = end;
+        cellCount++;
+    }
+
+    /**
+     * Number of cells in the current row, including trailing empty cells
+     * (matches the length of String.split(",", -1) on the same line)
+     */
+    public int cellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Parse a cell of the current row as a float, NaN if missing
+     */
+    public float floatCell(int index) {
+        return CsvNumberParser.parseFloat(window, cellStarts[index], cellEnds[index]);
+    }
+
+    /**
+     * Parse a cell of the current row as an integer, returned as a float (NaN if missing)
+     */
+    public float integerCell(int index) {
+        return CsvNumberParser.parseInteger(window, cellStarts[index], cellEnds[index]);
+    }
+
+    /**
+     * Parse a cell of the current row as a dataset timestamp
+     * @return Epoch seconds, or Timestamps.INVALID if not in the dataset format
+     */
+    public long epochSecondCell(int index) {
+        return Timestamps.parse(window, cellStarts[index], cellEnds[index]);
+    }
+    
+    /**
+     * Decode a cell of the current row as text
+     */
+    public String textCell(int index) {
+        return decode(cellStarts[index], cellEnds[index]);
+    }
+
+    /**
+     * Decode the whole current row as text (for diagnostics)
+     */
+    public String rowText() {
+        return decode(rowStart, cellEnds[cellCount - 1]);
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (textScratch.length < length) {
+            textScratch = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            textScratch[i] = window.get(start + i);
+        }
+        return new String(textScratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Release the current window. The channel is owned by the caller.
+     */
+    @Override
+    public void close() {
+        window = null;
+    }
+}
@@ -0,0 +1,552 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.FactoryFogTopology.FogDataPacket;
+import org.example.FactoryFogTopology.FogEndpoint;
+import org.example.data.Timestamps;
+
+/**
+ * Fog node running in another process, reached over TCP
+ * Packets sent to the node wait in a bounded outbox, from which a sender
+ * thread batches them into DATA frames (see FogWireCodec). Frames are
+ * pipelined: up to a window of them are in flight before the first is
+ * answered. The FogNodeServer answers each frame with a RESULT frame holding
+ * the node's results for its downstream nodes, which a receiver thread hands
+ * on. The round trip of each frame is measured as the hop's latency.
+ * The node connects in the background and reconnects if the connection
+ * breaks; packets in flight on a broken connection are counted as lost.
+ */
+public class RemoteFogNode implements FogEndpoint {
+    private static final int OUTBOX_CAPACITY = 4096;
+    private static final int MAX_BATCH_PACKETS = 256;
+    private static final int MAX_IN_FLIGHT_FRAMES = 32;
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long RECONNECT_DELAY_MILLIS = 200;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final String nodeId;
+    private final InetSocketAddress address;
+    private final List<String> upstreamIds = new ArrayList<>();
+    private final List<FogEndpoint> downstream = new ArrayList<>();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    // Window the server-side node summarizes its measurements over, or null
+    private AggregationWindow aggregationWindow;
+    // Filter the server-side node applies to its measurements, or null
+    private SignalFilter signalFilter;
+
+    // Packets waiting to be sent; its policy decides what happens to senders while it is full
+    private BackpressureQueue<FogDataPacket> outbox = newOutbox(BackpressurePolicy.block());
+
+    // Frames in flight, by frame sequence modulo the window; guarded by windowLock
+    private final Object windowLock = new Object();
+    private final long[] frameSentNanos = new long[MAX_IN_FLIGHT_FRAMES];
+    private final int[] framePackets = new int[MAX_IN_FLIGHT_FRAMES];
+    private long framesSent;
+    private long framesAnswered;
+    private boolean connected;
+
+    // Packets sent to the node, and those answered or lost; guarded by drainLock for waiting
+    private final Object drainLock = new Object();
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong packetsSettled = new AtomicLong();
+    private final AtomicLong packetsLost = new AtomicLong();
+
+    // Node state reported with each RESULT frame
+    private volatile long watermark = Timestamps.INVALID;
+    private volatile long rowsCompleted;
+    private volatile long packetsUnmatched;
+
+    // Transport statistics
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong resultsReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong latencyTotalNanos = new AtomicLong();
+    private volatile long latencyMaxNanos;
+    private volatile long firstSendNanos;
+    private volatile long lastAnswerNanos;
+
+    /**
+     * Create a remote fog node
+     * @param nodeId Node ID, which the server gives the node it runs
+     * @param address Address of the FogNodeServer
+     */
+    public RemoteFogNode(String nodeId, InetSocketAddress address) {
+        this.nodeId = nodeId;
+        this.address = address;
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void connectTo(FogEndpoint next) {
+        downstream.add(next);
+        next.addUpstream(nodeId);
+    }
+
+    @Override
+    public void addUpstream(String upstreamId) {
+        upstreamIds.add(upstreamId);
+    }
+
+    /**
+     * Set what happens to packets sent while the outbox is full, e.g. while the
+     * server is unreachable. Must be called before the node starts.
+     * BLOCK (the default) holds up the sender until the server takes the packets.
+     * @param policy Backpressure policy
+     */
+    @Override
+    public void setBackpressurePolicy(BackpressurePolicy policy) {
+        outbox = newOutbox(policy);
+    }
+
+    private BackpressureQueue<FogDataPacket> newOutbox(BackpressurePolicy policy) {
+        // Shed packets count as handled, so awaitDrained doesn't wait for them
+        return new BackpressureQueue<>(OUTBOX_CAPACITY, policy, packet -> packetsSettled(1));
+    }
+
+    /**
+     * Have the node on the server summarize its measurements per window; sent with HELLO.
+     * Must be called before the node starts.
+     * @param window Window, or null to log every row
+     */
+    @Override
+    public void setAggregationWindow(AggregationWindow window) {
+        aggregationWindow = window;
+    }
+
+    /**
+     * Have the node on the server filter its measurements; sent with HELLO.
+     * Must be called before the node starts.
+     * @param filter Filter, or null to log every row
+     */
+    @Override
+    public void setSignalFilter(SignalFilter filter) {
+        signalFilter = filter;
+    }
+
+    /**
+     * Start connecting to the server and sending packets
+     */
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "fog-remote-" + nodeId);
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Remote fog node " + nodeId + " started");
+    }
+
+    @Override
+    public void stop() {
+        isRunning.set(false);
+        System.out.println("Remote fog node " + nodeId + " stopped");
+    }
+
+    @Override
+    public void receiveData(FogDataPacket packet) {
+        packetsReceived.incrementAndGet();
+        try {
+            outbox.offer(packet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            packetsReceived.decrementAndGet();
+            System.err.println("Interrupted while sending to remote node " + nodeId + ", packet dropped");
+        }
+    }
+
+    /**
+     * Connect, send, and reconnect after failures until stopped with nothing left to send
+     */
+    private void run() {
+        try {
+            while (isRunning.get() || !outbox.isEmpty()) {
+                Socket socket = connect();
+                if (socket == null) {
+                    break;
+                }
+                Thread receiver = null;
+                try {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE);
+                    FogWireCodec codec = new FogWireCodec();
+                    sendHello(codec, out);
+                    synchronized (windowLock) {
+                        connected = true;
+                    }
+                    receiver = new Thread(() -> receive(socket, in, codec), "fog-remote-" + nodeId + "-results");
+                    receiver.setDaemon(true);
+                    receiver.start();
+
+                    if (send(codec, out)) {
+                        // Stopped and every frame answered
+                        return;
+                    }
+                } catch (IOException e) {
+                    LoggingConfig.warn("RemoteFogNode", "Connection to " + nodeId + " at " + address + " failed: " + e.getMessage());
+                } finally {
+                    close(socket);
+                    if (receiver != null) {
+                        receiver.join();
+                    }
+                    loseInFlight();
+                }
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Nothing is left to deliver the outbox
+            List<FogDataPacket> unsent = new ArrayList<>();
+            outbox.drainTo(unsent);
+            if (!unsent.isEmpty()) {
+                packetsLost.addAndGet(unsent.size());
+                packetsSettled(unsent.size());
+            }
+        }
+    }
+
+    /**
+     * Connect to the server, retrying while the node is running
+     * @return Socket, or null if the node was stopped before a connection was made
+     */
+    private Socket connect() throws InterruptedException {
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                connections.incrementAndGet();
+                LoggingConfig.info("RemoteFogNode", "Connected " + nodeId + " to " + address);
+                return socket;
+            } catch (IOException e) {
+                close(socket);
+                if (!isRunning.get()) {
+                    LoggingConfig.warn("RemoteFogNode", "Could not connect " + nodeId + " to " + address + ": " + e.getMessage());
+                    return null;
+                }
+                LoggingConfig.debug("RemoteFogNode", "Retrying connection of " + nodeId + " to " + address + ": " + e.getMessage());
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void sendHello(FogWireCodec codec, OutputStream out) throws IOException {
+        codec.begin(FogWireCodec.HELLO);
+        codec.putShort(FogWireCodec.VERSION);
+        codec.putString(nodeId);
+        codec.putByte(upstreamIds.size());
+        for (String upstreamId : upstreamIds) {
+            codec.putString(upstreamId);
+        }
+        codec.putByte(downstream.size());
+        for (FogEndpoint next : downstream) {
+            codec.putString(next.getNodeId());
+        }
+        codec.putString(aggregationWindow != null ? aggregationWindow.toString() : "");
+        codec.putString(signalFilter != null ? signalFilter.toString() : "");
+        bytesSent.addAndGet(codec.end(out));
+        out.flush();
+    }
+
+    /**
+     * Send outbox packets in DATA frames until the connection breaks, or until
+     * the node is stopped with an empty outbox and every frame answered
+     * @return true if stopped, false if the connection broke
+     */
+    private boolean send(FogWireCodec codec, OutputStream out) throws IOException, InterruptedException {
+        List<FogDataPacket> batch = new ArrayList<>(MAX_BATCH_PACKETS);
+        while (true) {
+            FogDataPacket packet = outbox.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (packet == null) {
+                if (!isConnected()) {
+                    return false;
+                }
+                if (!isRunning.get() && outbox.isEmpty()) {
+                    return awaitAnswers();
+                }
+                continue;
+            }
+
+            // Packets queue up while the window is full, so batches grow with the load
+            batch.add(packet);
+            long frameSequence = awaitWindow();
+            if (frameSequence < 0) {
+                packetsLost.addAndGet(batch.size());
+                packetsSettled(batch.size());
+                return false;
+            }
+            outbox.drainTo(batch, MAX_BATCH_PACKETS - 1);
+
+            codec.begin(FogWireCodec.DATA);
+            codec.putLong(frameSequence);
+            codec.putInt(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                FogDataPacket next = batch.get(i);
+                codec.putPacket(next.getSourceNodeId() == null ? 0 : upstreamIds.indexOf(next.getSourceNodeId()) + 1, next);
+            }
+
+            long now = System.nanoTime();
+            synchronized (windowLock) {
+                int slot = (int) (frameSequence % MAX_IN_FLIGHT_FRAMES);
+                frameSentNanos[slot] = now;
+                framePackets[slot] = batch.size();
+                framesSent = frameSequence + 1;
+            }
+            if (firstSendNanos == 0) {
+                firstSendNanos = now;
+            }
+            bytesSent.addAndGet(codec.end(out));
+            // Flush once the outbox is empty; while more is queued the next frame follows in the same write
+            if (outbox.isEmpty()) {
+                out.flush();
+            }
+            packetsSent.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Wait for room in the window of frames in flight
+     * @return Sequence number of the next frame, or -1 if the connection broke
+     */
+    private long awaitWindow() throws InterruptedException {
+        synchronized (windowLock) {
+            while (connected && framesSent - framesAnswered >= MAX_IN_FLIGHT_FRAMES) {
+                windowLock.wait();
+            }
+            return connected ? framesSent : -1;
+        }
+    }
+
+    /**
+     * Wait until every frame sent has been answered
+     * @return true if answered, false if the connection broke first
+     */
+    private boolean awaitAnswers() throws InterruptedException {
+        synchronized (windowLock) {
+            while (connected && framesAnswered < framesSent) {
+                windowLock.wait();
+            }
+            return connected;
+        }
+    }
+
+    private boolean isConnected() {
+        synchronized (windowLock) {
+            return connected;
+        }
+    }
+
+    /**
+     * Read RESULT frames and hand the results to the downstream nodes until the connection closes
+     */
+    private void receive(Socket socket, DataInputStream in, FogWireCodec codec) {
+        try {
+            while (true) {
+                int type = codec.readFrame(in);
+                if (type < 0) {
+                    break;
+                }
+                if (type != FogWireCodec.RESULT) {
+                    throw new IOException("Unexpected frame type " + type);
+                }
+                long frameSequence = codec.getLong();
+                long nodeWatermark = codec.getLong();
+                long nodeRowsCompleted = codec.getLong();
+                long nodePacketsUnmatched = codec.getLong();
+                int count = codec.getInt();
+                bytesReceived.addAndGet(codec.getFrameLength() + 4);
+
+                // Results go downstream before the frame counts as answered, so drained means delivered
+                for (int i = 0; i < count; i++) {
+                    int link = codec.getLink();
+                    if (link >= downstream.size()) {
+                        throw new IOException("Result for unknown downstream node " + link);
+                    }
+                    FogEndpoint next = downstream.get(link);
+                    next.receiveData(codec.getPacket(nodeId, next.getNodeId()));
+                }
+                resultsReceived.addAndGet(count);
+                watermark = nodeWatermark;
+                rowsCompleted = nodeRowsCompleted;
+                packetsUnmatched = nodePacketsUnmatched;
+                frameAnswered(frameSequence);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!socket.isClosed()) {
+                LoggingConfig.warn("RemoteFogNode", "Connection to " + nodeId + " at " + address + " broke: " + e);
+            }
+        } finally {
+            synchronized (windowLock) {
+                connected = false;
+                windowLock.notifyAll();
+            }
+            close(socket);
+        }
+    }
+
+    private void frameAnswered(long frameSequence) throws IOException {
+        long now = System.nanoTime();
+        int packets;
+        synchronized (windowLock) {
+            // The server answers frames in order
+            if (frameSequence != framesAnswered || frameSequence >= framesSent) {
+                throw new IOException("Answer to frame " + frameSequence + ", expected " + framesAnswered);
+            }
+            int slot = (int) (frameSequence % MAX_IN_FLIGHT_FRAMES);
+            long latency = now - frameSentNanos[slot];
+            packets = framePackets[slot];
+            latencyTotalNanos.addAndGet(latency);
+            if (latency > latencyMaxNanos) {
+                latencyMaxNanos = latency;
+            }
+            framesAnswered++;
+            windowLock.notifyAll();
+        }
+        lastAnswerNanos = now;
+        packetsSettled(packets);
+    }
+
+    /**
+     * Count the packets of unanswered frames as lost, after the connection broke
+     */
+    private void loseInFlight() {
+        int lost = 0;
+        synchronized (windowLock) {
+            connected = false;
+            for (long frame = framesAnswered; frame < framesSent; frame++) {
+                lost += framePackets[(int) (frame % MAX_IN_FLIGHT_FRAMES)];
+            }
+            framesAnswered = framesSent;
+            windowLock.notifyAll();
+        }
+        if (lost > 0) {
+            packetsLost.addAndGet(lost);
+            packetsSettled(lost);
+            LoggingConfig.warn("RemoteFogNode", lost + " packets to " + nodeId + " lost with the connection");
+        }
+    }
+
+    private void packetsSettled(int count) {
+        packetsSettled.addAndGet(count);
+        synchronized (drainLock) {
+            drainLock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit) {
+        long target = packetsReceived.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drainLock) {
+            try {
+                while (packetsSettled.get() < target) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LoggingConfig.debug("RemoteFogNode", "Error closing connection: " + e.getMessage());
+        }
+    }
+
+    // Getters
+    public InetSocketAddress getAddress() { return address; }
+    public long getWatermark() { return watermark; }
+    public long getRowsCompleted() { return rowsCompleted; }
+    public long getPacketsUnmatched() { return packetsUnmatched; }
+    public long getPacketsReceived() { return packetsReceived.get(); }
+    public long getPacketsSent() { return packetsSent.get(); }
+    public long getResultsReceived() { return resultsReceived.get(); }
+    public long getBytesSent() { return bytesSent.get(); }
+    public long getBytesReceived() { return bytesReceived.get(); }
+    public int getOutboxSize() { return outbox.size(); }
+
+    /**
+     * Outbox policy and counters: packets offered, blocked on and shed
+     */
+    public BackpressureQueue<FogDataPacket> getOutbox() { return outbox; }
+
+    /**
+     * Packets dropped because their connection broke or the node stopped before they were sent
+     */
+    public long getPacketsLost() { return packetsLost.get(); }
+
+    /**
+     * Connections made, more than one if the node reconnected
+     */
+    public long getConnectionCount() { return connections.get(); }
+
+    /**
+     * DATA frames answered so far
+     */
+    public long getFramesAnswered() {
+        synchronized (windowLock) {
+            return framesAnswered;
+        }
+    }
+
+    /**
+     * Mean round trip of a DATA frame to its RESULT, including the node's processing
+     * @return Milliseconds, or 0 before the first answer
+     */
+    public double getMeanLatencyMillis() {
+        long frames = getFramesAnswered();
+        return frames == 0 ? 0 : latencyTotalNanos.get() / 1e6 / frames;
+    }
+
+    /**
+     * Longest round trip of a DATA frame to its RESULT
+     */
+    public double getMaxLatencyMillis() { return latencyMaxNanos / 1e6; }
+
+    /**
+     * Packets per second from the first frame sent to the latest answer
+     */
+    public double getPacketsPerSecond() {
+        long elapsed = lastAnswerNanos - firstSendNanos;
+        return firstSendNanos == 0 || elapsed <= 0 ? 0 : packetsSent.get() * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        long frames = getFramesAnswered();
+        return String.format("%s at %s: %d packets in %d frames (%.1f/frame), %.0f packets/s, %.2f MB sent, %.2f MB received, "
+                + "latency mean %.2f ms max %.2f ms, lost %d, connections %d",
+            nodeId, address, packetsSent.get(), frames, frames == 0 ? 0.0 : (double) packetsSent.get() / frames,
+            getPacketsPerSecond(), bytesSent.get() / 1e6, bytesReceived.get() / 1e6,
+            getMeanLatencyMillis(), getMaxLatencyMillis(), packetsLost.get(), connections.get());
+    }
+}
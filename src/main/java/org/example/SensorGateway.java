@@ -0,0 +1,352 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.example.data.FactoryDataPoint;
+import org.example.data.FactorySchema;
+import org.example.data.Timestamps;
+
+/**
+ * Non-blocking ingestion gateway for live sensor frames
+ * Accepts frames over TCP and UDP on the same port from many machines at once,
+ * all served by a single selector thread. Frames use a line protocol: one
+ * dataset row per line, in the CSV's column order (see FactorySchema), so a
+ * recorded CSV file can be replayed as is. Frames are decoded straight from
+ * the receive buffers and handed on in micro-batches, flushed when full or
+ * when the oldest frame has waited for the linger time.
+ */
+public class SensorGateway implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final int DATAGRAM_RECEIVE_BUFFER = 4 * 1024 * 1024;
+
+    private final int port;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Consumer<List<FactoryDataPoint>> batchConsumer;
+
+    // Channels, opened by bind()
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private DatagramChannel datagramChannel;
+    private ByteBuffer datagramBuffer;
+    private volatile boolean closed;
+
+    // Decoding state, only touched by the selector thread
+    private final float[] row = new float[FactorySchema.COLUMN_COUNT];
+    private final int[] cellStarts = new int[FactorySchema.COLUMN_COUNT];
+    private final int[] cellEnds = new int[FactorySchema.COLUMN_COUNT];
+    private List<FactoryDataPoint> batch;
+    private long batchStartNanos;
+
+    // Statistics
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesRejected = new AtomicLong();
+    private final AtomicLong batchesDelivered = new AtomicLong();
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+
+    /**
+     * Create a sensor gateway
+     * @param port Port to listen on for TCP and UDP (0 for any free port)
+     * @param batchSize Maximum number of data points per batch
+     * @param lingerMillis Longest time a frame waits for its batch to fill
+     * @param batchConsumer Consumer called on the gateway thread with each batch;
+     *                      each batch is a new list that the consumer may keep
+     */
+    public SensorGateway(int port, int batchSize, long lingerMillis,
+                         Consumer<List<FactoryDataPoint>> batchConsumer) {
+        this.port = port;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.batchConsumer = batchConsumer;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Open the TCP and UDP channels
+     * @throws IOException If the port can't be bound
+     */
+    public void bind() throws IOException {
+        selector = Selector.open();
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        // UDP on the same port as TCP, with a socket buffer large enough
+        // to absorb bursts while a batch is being processed
+        datagramChannel = DatagramChannel.open();
+        datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, DATAGRAM_RECEIVE_BUFFER);
+        datagramChannel.bind(new InetSocketAddress(getPort()));
+        datagramChannel.configureBlocking(false);
+        datagramChannel.register(selector, SelectionKey.OP_READ);
+        datagramBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+
+        LoggingConfig.info("SensorGateway", "Listening for sensor frames on TCP and UDP port " + getPort());
+    }
+
+    /**
+     * Bind and serve on a new thread
+     * @return The gateway thread
+     * @throws IOException If the port can't be bound
+     */
+    public Thread start() throws IOException {
+        bind();
+        Thread thread = new Thread(this::run, "sensor-gateway");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Serve on the calling thread until the gateway is closed. bind() must be called first.
+     */
+    public void run() {
+        try {
+            while (!closed) {
+                // Wake up in time to flush a partial batch
+                long timeoutMillis = 0;
+                if (!batch.isEmpty()) {
+                    long waited = System.nanoTime() - batchStartNanos;
+                    timeoutMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(lingerNanos - waited));
+                }
+                selector.select(timeoutMillis);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == datagramChannel) {
+                        receiveDatagrams();
+                    } else {
+                        readStream(key);
+                    }
+                }
+
+                if (!batch.isEmpty() && System.nanoTime() - batchStartNanos >= lingerNanos) {
+                    flush();
+                }
+            }
+        } catch (IOException e) {
+            LoggingConfig.error("SensorGateway", "Gateway stopped", e);
+        } finally {
+            if (!batch.isEmpty()) {
+                flush();
+            }
+            closeChannels();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_SIZE));
+            connectionsAccepted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Read from a sensor connection and decode its complete lines
+     */
+    private void readStream(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            LoggingConfig.debug("SensorGateway", "Connection reset: " + e.getMessage());
+            read = -1;
+        }
+
+        if (read < 0) {
+            // A partial last line is dropped with the connection
+            if (buffer.position() > 0) {
+                framesRejected.incrementAndGet();
+            }
+            closeConnection(key);
+            return;
+        }
+
+        buffer.flip();
+        decodeLines(buffer, false);
+        buffer.compact();
+
+        if (!buffer.hasRemaining()) {
+            LoggingConfig.warn("SensorGateway", "Frame longer than " + READ_BUFFER_SIZE + " bytes, closing connection");
+            framesRejected.incrementAndGet();
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * Receive all pending datagrams; each holds one or more whole lines
+     */
+    private void receiveDatagrams() throws IOException {
+        while (true) {
+            datagramBuffer.clear();
+            if (datagramChannel.receive(datagramBuffer) == null) {
+                return;
+            }
+            datagramBuffer.flip();
+            decodeLines(datagramBuffer, true);
+        }
+    }
+
+    /**
+     * Decode the lines between a buffer's position and limit, leaving the
+     * position at the start of an incomplete last line
+     * @param buffer Buffer in read mode
+     * @param endOfInput Whether text after the last line feed is a complete line
+     */
+    private void decodeLines(ByteBuffer buffer, boolean endOfInput) {
+        int lineStart = buffer.position();
+        int limit = buffer.limit();
+        for (int i = lineStart; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                decodeLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < limit) {
+            decodeLine(buffer, lineStart, limit);
+            lineStart = limit;
+        }
+        buffer.position(lineStart);
+    }
+
+    /**
+     * Decode one frame from the bytes [start, end) and add it to the batch
+     */
+    private void decodeLine(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end == start) {
+            // Blank lines can be sent as keep-alives
+            return;
+        }
+
+        // Split into cells
+        int cellCount = 0;
+        int cellStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer.get(i) == ',') {
+                if (cellCount == cellStarts.length) {
+                    cellCount++;
+                    break;
+                }
+                cellStarts[cellCount] = cellStart;
+                cellEnds[cellCount] = i;
+                cellCount++;
+                cellStart = i + 1;
+            }
+        }
+        if (cellCount != FactorySchema.COLUMN_COUNT) {
+            LoggingConfig.debug("SensorGateway", "Rejected frame with " + cellCount + " cells");
+            framesRejected.incrementAndGet();
+            return;
+        }
+
+        long epochSecond = Timestamps.parse(buffer, cellStarts[FactorySchema.TIMESTAMP], cellEnds[FactorySchema.TIMESTAMP]);
+        if (epochSecond == Timestamps.INVALID) {
+            LoggingConfig.debug("SensorGateway", "Rejected frame with an invalid timestamp");
+            framesRejected.incrementAndGet();
+            return;
+        }
+
+        // Missing or malformed values are NaN, as when loading CSV files
+        for (int column = 1; column < FactorySchema.COLUMN_COUNT; column++) {
+            row[column] = FactorySchema.isIntegerColumn(column)
+                ? CsvNumberParser.parseInteger(buffer, cellStarts[column], cellEnds[column])
+                : CsvNumberParser.parseFloat(buffer, cellStarts[column], cellEnds[column]);
+        }
+
+        if (batch.isEmpty()) {
+            batchStartNanos = System.nanoTime();
+        }
+        batch.add(FactorySchema.toDataPoint(epochSecond, Timestamps.format(epochSecond), row));
+        framesReceived.incrementAndGet();
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<FactoryDataPoint> full = batch;
+        batch = new ArrayList<>(batchSize);
+        try {
+            batchConsumer.accept(full);
+        } catch (RuntimeException e) {
+            LoggingConfig.error("SensorGateway", "Error processing batch", e);
+        }
+        batchesDelivered.incrementAndGet();
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LoggingConfig.debug("SensorGateway", "Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private void closeChannels() {
+        try {
+            if (selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+        } catch (IOException e) {
+            LoggingConfig.error("SensorGateway", "Error closing gateway channels", e);
+        }
+        LoggingConfig.info("SensorGateway", "Gateway stopped after " + framesReceived.get() + " frames ("
+            + framesRejected.get() + " rejected)");
+    }
+
+    // Getters
+    public int getPort() { return serverChannel != null ? serverChannel.socket().getLocalPort() : port; }
+    public long getFramesReceived() { return framesReceived.get(); }
+    public long getFramesRejected() { return framesRejected.get(); }
+    public long getBatchesDelivered() { return batchesDelivered.get(); }
+    public long getConnectionsAccepted() { return connectionsAccepted.get(); }
+
+    /**
+     * Stop the gateway; a running run() flushes its last batch and returns
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+}
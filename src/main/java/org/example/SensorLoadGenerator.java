@@ -0,0 +1,201 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.example.data.FactorySchema;
+import org.example.data.Timestamps;
+
+/**
+ * Load generator for SensorGateway
+ * Simulates many sensors, each with its own TCP connection or UDP socket,
+ * sending line protocol frames at a fixed rate. Frame values are synthetic
+ * variations around a random operating point for each column.
+ */
+public class SensorLoadGenerator {
+    private static final int TEMPLATE_COUNT = 64;
+
+    private final InetSocketAddress address;
+    private final int sensorCount;
+    private final double framesPerSecond;
+    private final boolean udp;
+
+    // Frame bodies after the timestamp (",value,...,value\n")
+    private final byte[][] templates;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * Create a load generator
+     * @param host Gateway host
+     * @param port Gateway port
+     * @param sensorCount Number of simulated sensors
+     * @param framesPerSecond Frames sent per second by each sensor (0 for as fast as possible)
+     * @param udp true to send datagrams, false for TCP connections
+     */
+    public SensorLoadGenerator(String host, int port, int sensorCount, double framesPerSecond, boolean udp) {
+        this.address = new InetSocketAddress(host, port);
+        this.sensorCount = sensorCount;
+        this.framesPerSecond = framesPerSecond;
+        this.udp = udp;
+        this.templates = buildTemplates(new Random(42));
+    }
+
+    private static byte[][] buildTemplates(Random random) {
+        float[] base = new float[FactorySchema.COLUMN_COUNT];
+        for (int column = 1; column < base.length; column++) {
+            base[column] = 1 + random.nextFloat() * 200;
+        }
+
+        byte[][] templates = new byte[TEMPLATE_COUNT][];
+        for (int i = 0; i < templates.length; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int column = 1; column < base.length; column++) {
+                float value = base[column] * (1 + (float) random.nextGaussian() * 0.01f);
+                body.append(',');
+                if (FactorySchema.isIntegerColumn(column)) {
+                    body.append(Math.round(value));
+                } else {
+                    body.append(value);
+                }
+            }
+            body.append('\n');
+            templates[i] = body.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        return templates;
+    }
+
+    /**
+     * Send frames from all sensors for a while
+     * @param durationMillis How long to send for
+     * @return Number of frames sent
+     * @throws IOException If a sensor can't connect
+     * @throws InterruptedException If interrupted while waiting for the senders
+     */
+    public long run(long durationMillis) throws IOException, InterruptedException {
+        int threadCount = Math.min(sensorCount, Runtime.getRuntime().availableProcessors());
+        List<ByteChannel> channels = new ArrayList<>(sensorCount);
+        try {
+            for (int sensor = 0; sensor < sensorCount; sensor++) {
+                channels.add(udp ? DatagramChannel.open().connect(address) : SocketChannel.open(address));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            List<Thread> threads = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; t++) {
+                // Each thread drives every threadCount-th sensor
+                List<ByteChannel> own = new ArrayList<>();
+                for (int sensor = t; sensor < sensorCount; sensor += threadCount) {
+                    own.add(channels.get(sensor));
+                }
+                Thread thread = new Thread(() -> send(own, deadline), "sensor-load-" + t);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (ByteChannel channel : channels) {
+                channel.close();
+            }
+        }
+        return framesSent.get();
+    }
+
+    /**
+     * Send frames from a group of sensors until the deadline
+     */
+    private void send(List<ByteChannel> sensors, long deadline) {
+        long interval = framesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond) : 0;
+        long[] nextSend = new long[sensors.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < nextSend.length; i++) {
+            // Spread the sensors over the interval
+            nextSend[i] = start + interval * i / nextSend.length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(64 * 1024);
+        long currentSecond = 0;
+        byte[] timestamp = null;
+        int template = 0;
+
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    return;
+                }
+
+                long second = System.currentTimeMillis() / 1000;
+                if (second != currentSecond) {
+                    currentSecond = second;
+                    timestamp = Timestamps.format(second).getBytes(StandardCharsets.US_ASCII);
+                }
+
+                long earliest = Long.MAX_VALUE;
+                for (int i = 0; i < nextSend.length; i++) {
+                    if (nextSend[i] <= now) {
+                        byte[] body = templates[template++ % templates.length];
+                        frame.clear();
+                        frame.put(timestamp).put(body).flip();
+                        int length = frame.remaining();
+                        while (frame.hasRemaining()) {
+                            sensors.get(i).write(frame);
+                        }
+                        framesSent.incrementAndGet();
+                        bytesSent.addAndGet(length);
+                        nextSend[i] += interval;
+                    }
+                    earliest = Math.min(earliest, nextSend[i]);
+                }
+
+                long wait = Math.min(earliest, deadline) - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Sensor connection failed: " + e.getMessage());
+        }
+    }
+
+    // Getters
+    public long getFramesSent() { return framesSent.get(); }
+    public long getBytesSent() { return bytesSent.get(); }
+
+    /**
+     * Usage: SensorLoadGenerator [host] [port] [sensors] [framesPerSecond] [seconds] [tcp|udp]
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9090;
+        int sensors = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double framesPerSecond = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        boolean udp = args.length > 5 && args[5].equalsIgnoreCase("udp");
+
+        System.out.println("Sending from " + sensors + " sensors at " + framesPerSecond + " frames/s each to "
+            + host + ":" + port + " over " + (udp ? "UDP" : "TCP") + " for " + seconds + " s");
+
+        SensorLoadGenerator generator = new SensorLoadGenerator(host, port, sensors, framesPerSecond, udp);
+        long start = System.nanoTime();
+        long frames = generator.run(TimeUnit.SECONDS.toMillis(seconds));
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Sent %d frames (%.1f MB) in %.1f s: %.0f frames/s%n",
+            frames, generator.getBytesSent() / 1e6, elapsed, frames / elapsed);
+    }
+}
@@ -0,0 +1,191 @@
+package org.example;
+
+import java.util.Arrays;
+
+import org.example.data.Timestamps;
+
+/**
+ * Applies a SignalFilter to the readings of one signal
+ * Forwarded readings go to the output as they are chosen; with a swinging
+ * door a reading is only known to be a turning point once the next one
+ * arrives, so it is forwarded then. Every reading that is not forwarded is
+ * compared with its reconstruction from the forwarded ones (held value or
+ * line) to track the largest error, so the deviation can be tuned against
+ * the compression ratio. Readings without a valid time, or out of time
+ * order, are placed one second after the previous reading.
+ *
+ * add and flush may be called from different threads.
+ */
+public class SignalCompressor {
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    /**
+     * Receives the forwarded readings
+     */
+    public interface Output {
+        void forward(String timestamp, float value);
+    }
+
+    private final SignalFilter filter;
+    private final Output output;
+
+    // Last forwarded reading
+    private boolean started;
+    private long forwardedTime;
+    private double forwardedValue;
+    private long lastTime = Long.MIN_VALUE;
+
+    // Swinging door: the latest reading, not yet forwarded, and the slopes of the doors pivoting on the forwarded one
+    private boolean holding;
+    private long heldTime;
+    private float heldValue;
+    private String heldTimestamp;
+    private double upperSlope;
+    private double lowerSlope;
+    // Readings since the forwarded one, to measure the error once the segment is closed
+    private long[] segmentTimes = new long[INITIAL_SEGMENT_CAPACITY];
+    private float[] segmentValues = new float[INITIAL_SEGMENT_CAPACITY];
+    private int segmentLength;
+
+    // Statistics
+    private long valuesIn;
+    private long valuesForwarded;
+    private double maxError;
+
+    /**
+     * Create a compressor
+     * @param filter Filter to apply
+     * @param output Called with every forwarded reading, on the thread that added or flushed it
+     */
+    public SignalCompressor(SignalFilter filter, Output output) {
+        this.filter = filter;
+        this.output = output;
+    }
+
+    /**
+     * Add a reading, forwarding whatever the filter chooses
+     * @param epochSecond Time of the reading
+     * @param timestamp Timestamp text the reading is forwarded with
+     * @param value Value; NaN (a missing reading) is skipped
+     */
+    public synchronized void add(long epochSecond, String timestamp, float value) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        valuesIn++;
+        long time = epochSecond != Timestamps.INVALID && epochSecond > lastTime ? epochSecond
+            : lastTime != Long.MIN_VALUE ? lastTime + 1 : 0;
+        lastTime = time;
+
+        if (!started) {
+            started = true;
+            forward(time, timestamp, value);
+            return;
+        }
+        if (filter.getMode() == SignalFilter.Mode.DEADBAND) {
+            double error = Math.abs(value - forwardedValue);
+            if (error > filter.getDeviation() || time - forwardedTime >= filter.getMaxIntervalSeconds()) {
+                forward(time, timestamp, value);
+            } else {
+                maxError = Math.max(maxError, error);
+            }
+            return;
+        }
+        addToCorridor(time, timestamp, value);
+    }
+
+    /**
+     * Swinging door: keep the reading in the corridor, or forward the held reading and start a new corridor from it
+     */
+    private void addToCorridor(long time, String timestamp, float value) {
+        if (holding && time - forwardedTime > filter.getMaxIntervalSeconds()) {
+            forwardHeld();
+        }
+        double elapsed = time - forwardedTime;
+        double upper = (value - forwardedValue - filter.getDeviation()) / elapsed;
+        double lower = (value - forwardedValue + filter.getDeviation()) / elapsed;
+        if (!holding) {
+            upperSlope = upper;
+            lowerSlope = lower;
+        } else if (Math.max(upperSlope, upper) > Math.min(lowerSlope, lower)) {
+            // The doors have opened past parallel: no line from the forwarded reading fits this one too
+            forwardHeld();
+            elapsed = time - forwardedTime;
+            upperSlope = (value - forwardedValue - filter.getDeviation()) / elapsed;
+            lowerSlope = (value - forwardedValue + filter.getDeviation()) / elapsed;
+        } else {
+            upperSlope = Math.max(upperSlope, upper);
+            lowerSlope = Math.min(lowerSlope, lower);
+        }
+
+        holding = true;
+        heldTime = time;
+        heldValue = value;
+        heldTimestamp = timestamp;
+        if (segmentLength == segmentTimes.length) {
+            segmentTimes = Arrays.copyOf(segmentTimes, segmentLength * 2);
+            segmentValues = Arrays.copyOf(segmentValues, segmentLength * 2);
+        }
+        segmentTimes[segmentLength] = time;
+        segmentValues[segmentLength] = value;
+        segmentLength++;
+    }
+
+    /**
+     * Forward the held reading and measure how far the readings before it are from the line joining it to the last forwarded one
+     */
+    private void forwardHeld() {
+        double slope = (heldValue - forwardedValue) / (heldTime - forwardedTime);
+        // The held reading is the last one in the segment and is exact
+        for (int i = 0; i < segmentLength - 1; i++) {
+            double reconstructed = forwardedValue + slope * (segmentTimes[i] - forwardedTime);
+            maxError = Math.max(maxError, Math.abs(segmentValues[i] - reconstructed));
+        }
+        segmentLength = 0;
+        holding = false;
+        forward(heldTime, heldTimestamp, heldValue);
+        heldTimestamp = null;
+    }
+
+    private void forward(long time, String timestamp, float value) {
+        forwardedTime = time;
+        forwardedValue = value;
+        valuesForwarded++;
+        output.forward(timestamp, value);
+    }
+
+    /**
+     * Forward the reading a swinging door still holds and start afresh. Call once the signal has ended.
+     */
+    public synchronized void flush() {
+        if (holding) {
+            forwardHeld();
+        }
+        started = false;
+        lastTime = Long.MIN_VALUE;
+    }
+
+    // Getters
+    public SignalFilter getFilter() { return filter; }
+    public synchronized long getValuesIn() { return valuesIn; }
+    public synchronized long getValuesForwarded() { return valuesForwarded; }
+
+    /**
+     * Readings in per reading forwarded, or 1 before any reading is forwarded
+     */
+    public synchronized double getCompressionRatio() {
+        return valuesForwarded > 0 ? (double) valuesIn / valuesForwarded : 1;
+    }
+
+    /**
+     * Largest difference between a reading and its reconstruction from the forwarded readings;
+     * readings a swinging door still holds are measured once they are forwarded past
+     */
+    public synchronized double getMaxError() { return maxError; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: in=%d, forwarded=%d, ratio=%.1f, max error=%.4f",
+            filter, valuesIn, valuesForwarded, getCompressionRatio(), maxError);
+    }
+}
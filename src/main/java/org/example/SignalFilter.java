@@ -0,0 +1,119 @@
+package org.example;
+
+/**
+ * Which readings of a signal a fog node forwards, as process historians decide what to archive
+ * DEADBAND forwards a reading once it differs from the last forwarded one by
+ * more than the deviation; in between, the last forwarded value stands for
+ * the signal. SWINGING_DOOR forwards the points where the signal stops
+ * fitting a corridor of the deviation around a straight line from the last
+ * forwarded point; in between, the signal is the line joining the forwarded
+ * points. A deadband keeps every reading within the deviation of its
+ * reconstruction; a swinging door fits every reading within the deviation of
+ * some line from the last forwarded point, which puts it within twice the
+ * deviation of the line it is reconstructed from. A reading is also forwarded
+ * once the last one is the max interval old, so a steady signal still shows
+ * it is alive (see SignalCompressor).
+ */
+public final class SignalFilter {
+    /**
+     * How readings are chosen
+     */
+    public enum Mode {
+        // Forward readings that leave the band around the last forwarded value
+        DEADBAND,
+        // Forward the points where the signal leaves its compression corridor
+        SWINGING_DOOR
+    }
+
+    // Forward at least one reading an hour at 1 Hz
+    private static final int DEFAULT_MAX_INTERVAL_SECONDS = 3600;
+
+    private final Mode mode;
+    private final double deviation;
+    private final int maxIntervalSeconds;
+
+    private SignalFilter(Mode mode, double deviation, int maxIntervalSeconds) {
+        if (!(deviation >= 0) || Double.isInfinite(deviation)) {
+            throw new IllegalArgumentException("Deviation must be a finite number of at least 0: " + deviation);
+        }
+        if (maxIntervalSeconds < 1) {
+            throw new IllegalArgumentException("Max interval must be at least 1 second: " + maxIntervalSeconds);
+        }
+        this.mode = mode;
+        this.deviation = deviation;
+        this.maxIntervalSeconds = maxIntervalSeconds;
+    }
+
+    /**
+     * Forward readings that differ from the last forwarded one by more than a deviation
+     * @param deviation Half-width of the band, in the signal's unit; 0 forwards every change
+     */
+    public static SignalFilter deadband(double deviation) {
+        return new SignalFilter(Mode.DEADBAND, deviation, DEFAULT_MAX_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Forward the points where the signal leaves a corridor around a straight line
+     * @param deviation Half-width of the corridor, in the signal's unit
+     */
+    public static SignalFilter swingingDoor(double deviation) {
+        return new SignalFilter(Mode.SWINGING_DOOR, deviation, DEFAULT_MAX_INTERVAL_SECONDS);
+    }
+
+    /**
+     * This filter with another longest time between forwarded readings
+     * @param seconds Max interval, at least 1
+     */
+    public SignalFilter withMaxInterval(int seconds) {
+        return new SignalFilter(mode, deviation, seconds);
+    }
+
+    /**
+     * Parse a filter written as deadband:D or swinging-door:D, optionally followed by /S for the max interval in seconds
+     * @param value Filter text
+     * @return Filter, or null if the text is not a valid filter
+     */
+    public static SignalFilter parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.trim().toLowerCase();
+        int colon = text.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        String[] parts = text.substring(colon + 1).split("/");
+        if (parts.length > 2) {
+            return null;
+        }
+        try {
+            double deviation = Double.parseDouble(parts[0]);
+            SignalFilter filter;
+            switch (text.substring(0, colon)) {
+                case "deadband":
+                    filter = deadband(deviation);
+                    break;
+                case "swinging-door":
+                    filter = swingingDoor(deviation);
+                    break;
+                default:
+                    return null;
+            }
+            return parts.length == 2 ? filter.withMaxInterval(Integer.parseInt(parts[1])) : filter;
+        } catch (IllegalArgumentException e) {
+            // Not a number, or out of range
+            return null;
+        }
+    }
+
+    // Getters
+    public Mode getMode() { return mode; }
+    public double getDeviation() { return deviation; }
+    public int getMaxIntervalSeconds() { return maxIntervalSeconds; }
+
+    @Override
+    public String toString() {
+        String text = mode.name().toLowerCase().replace('_', '-') + ":" + deviation;
+        return maxIntervalSeconds != DEFAULT_MAX_INTERVAL_SECONDS ? text + "/" + maxIntervalSeconds : text;
+    }
+}
@@ -6,12 +6,11 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.OperatingSystemMXBean;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.example.data.FactoryDataPoint;
 
@@ -27,7 +26,7 @@ public class SystemEvaluator {
     private final AtomicInteger anomaliesDetected = new AtomicInteger(0);
     private final AtomicInteger blockchainTransactions = new AtomicInteger(0);
     private final AtomicInteger blockchainErrors = new AtomicInteger(0);
-    private final List<Long> processingTimes = new ArrayList<>();
+    private final AtomicLong totalProcessingTime = new AtomicLong(0);
     
     // Resource metrics
     private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
@@ -51,7 +50,7 @@ public class SystemEvaluator {
      */
     public void recordProcessedDataPoint(FactoryDataPoint dataPoint, long processingTimeMs) {
         dataPointsProcessed.incrementAndGet();
-        processingTimes.add(processingTimeMs);
+        totalProcessingTime.addAndGet(processingTimeMs);
         
         // Log periodically
         if (dataPointsProcessed.get() % 100 == 0) {
@@ -171,15 +170,12 @@ public class SystemEvaluator {
      * @return Average processing time in milliseconds
      */
     private double getAverageProcessingTime() {
-        if (processingTimes.isEmpty()) {
+        // Running totals keep memory constant however long the run is
+        int count = dataPointsProcessed.get();
+        if (count == 0) {
             return 0;
         }
         
-        long sum = 0;
-        for (long time : processingTimes) {
-            sum += time;
-        }
-        
-        return sum / (double) processingTimes.size();
+        return totalProcessingTime.get() / (double) count;
     }
 }
\ No newline at end of file
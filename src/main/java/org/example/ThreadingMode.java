@@ -0,0 +1,85 @@
+package org.example;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Kind of threads that fog nodes, the blockchain logger and the dashboard run on
+ * Virtual threads (Java 21) are cheap to block, so thousands of nodes and
+ * connections can each wait on a chain RPC or an HTTP write without holding
+ * a platform thread. They are looked up at run time, so the code still runs
+ * on older JDKs, where VIRTUAL falls back to platform threads.
+ */
+public enum ThreadingMode {
+    // Platform (operating system) threads
+    PLATFORM,
+    // One virtual thread per task
+    VIRTUAL;
+
+    // Executors.newVirtualThreadPerTaskExecutor, or null before Java 21
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    private static final AtomicBoolean FALLBACK_WARNED = new AtomicBoolean(false);
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether this JDK has virtual threads
+     */
+    public static boolean isVirtualAvailable() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * The mode actually used: VIRTUAL falls back to PLATFORM without virtual threads
+     */
+    public ThreadingMode effective() {
+        return this == VIRTUAL && !isVirtualAvailable() ? PLATFORM : this;
+    }
+
+    /**
+     * Create an executor for tasks that may block
+     * @param platformThreads Size of the fixed pool used in platform mode, or 0 for a cached pool
+     * @return A virtual thread per task, or a platform thread pool
+     */
+    public ExecutorService newExecutor(int platformThreads) {
+        if (this == VIRTUAL && !isVirtualAvailable() && FALLBACK_WARNED.compareAndSet(false, true)) {
+            LoggingConfig.warn("ThreadingMode", "Virtual threads need Java 21, using platform threads on Java "
+                + System.getProperty("java.version"));
+        }
+        if (effective() == VIRTUAL) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LoggingConfig.warn("ThreadingMode", "Virtual threads unavailable, using platform threads: " + e);
+            }
+        }
+        return platformThreads > 0 ? Executors.newFixedThreadPool(platformThreads) : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Parse a mode written as platform or virtual
+     * @param value Mode text
+     * @return Mode, or null if the text is not a valid mode
+     */
+    public static ThreadingMode parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (value.trim().toLowerCase()) {
+            case "platform":
+                return PLATFORM;
+            case "virtual":
+                return VIRTUAL;
+            default:
+                return null;
+        }
+    }
+}
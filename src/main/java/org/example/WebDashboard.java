@@ -3,16 +3,22 @@ package org.example;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 
 import org.example.data.FactoryDataPoint;
-import org.example.data.Measurement;
+import org.example.data.FactorySchema;
+import org.example.data.FrameRing;
+import org.example.data.Timestamps;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
@@ -22,22 +28,43 @@ import com.sun.net.httpserver.HttpServer;
  * Web dashboard for visualizing factory data and anomalies
  */
 public class WebDashboard {
+    // Frames kept when no shared frame ring is attached
+    private static final int OWN_RING_CAPACITY = 3600;
+    // Frames returned by the measurement API unless a limit is given
+    private static final int DEFAULT_MEASUREMENT_LIMIT = 1000;
+    // Request threads in platform threading mode
+    private static final int PLATFORM_REQUEST_THREADS = 10;
+    
     private HttpServer server;
+    private ExecutorService requestExecutor;
     private final int port;
+    private final ThreadingMode threadingMode;
     private final Map<String, List<AnomalyRecord>> anomalyRecords = new ConcurrentHashMap<>();
-    private final Map<String, List<MeasurementRecord>> measurementRecords = new ConcurrentHashMap<>();
     private final Map<String, String> blockchainRecords = new ConcurrentHashMap<>();
     
     // Dashboard state
     private DataLoader dataLoader;
     private PureChainConnector blockchainConnector;
+    private volatile FrameRing frameRing;
+    private boolean ownsFrameRing;
+    private volatile FactoryFogTopology fogTopology;
     
     /**
      * Create a new web dashboard
      * @param port The port to listen on
      */
     public WebDashboard(int port) {
+        this(port, ThreadingMode.PLATFORM);
+    }
+    
+    /**
+     * Create a new web dashboard
+     * @param port The port to listen on
+     * @param threadingMode Kind of threads requests are handled on: a fixed pool, or a virtual thread per request
+     */
+    public WebDashboard(int port, ThreadingMode threadingMode) {
         this.port = port;
+        this.threadingMode = threadingMode;
     }
     
     /**
@@ -51,7 +78,10 @@ public class WebDashboard {
         server.createContext("/api/anomalies", new AnomalyApiHandler());
         server.createContext("/api/measurements", new MeasurementApiHandler());
         server.createContext("/api/blockchain", new BlockchainApiHandler());
-        server.setExecutor(Executors.newFixedThreadPool(10));
+        server.createContext("/api/history", new HistoryApiHandler());
+        server.createContext("/api/nodes", new NodePacketApiHandler());
+        requestExecutor = threadingMode.newExecutor(PLATFORM_REQUEST_THREADS);
+        server.setExecutor(requestExecutor);
         server.start();
         LoggingConfig.info("WebDashboard", "Web dashboard started on http://localhost:" + port);
     }
@@ -62,6 +92,7 @@ public class WebDashboard {
     public void stop() {
         if (server != null) {
             server.stop(0);
+            requestExecutor.shutdown();
             LoggingConfig.info("WebDashboard", "Web dashboard stopped");
         }
     }
@@ -81,21 +112,19 @@ public class WebDashboard {
     
     /**
      * Record a measurement
+     * Only needed when no shared frame ring is attached: the ring's writer
+     * already holds every data point, so they are not stored twice.
      * @param dataPoint Factory data point
      */
-    public void recordMeasurement(FactoryDataPoint dataPoint) {
-        // Record stage 1 measurements
-        for (Measurement m : dataPoint.getStage1Measurements()) {
-            String featureId = "feature-" + m.getFeatureId();
-            measurementRecords.computeIfAbsent(featureId, k -> new ArrayList<>())
-                .add(new MeasurementRecord(
-                    dataPoint.getTimestamp(),
-                    m.getSetpoint(),
-                    m.getActual(),
-                    Math.abs(m.getActual() - m.getSetpoint())
-                ));
+    public synchronized void recordMeasurement(FactoryDataPoint dataPoint) {
+        if (frameRing == null) {
+            frameRing = FrameRing.allocate(OWN_RING_CAPACITY);
+            ownsFrameRing = true;
+        }
+        if (ownsFrameRing) {
+            frameRing.append(dataPoint);
+            LoggingConfig.trace("WebDashboard", "Recorded measurements for timestamp " + dataPoint.getTimestamp());
         }
-        LoggingConfig.trace("WebDashboard", "Recorded measurements for timestamp " + dataPoint.getTimestamp());
     }
     
     /**
@@ -125,6 +154,23 @@ public class WebDashboard {
         this.blockchainConnector = blockchainConnector;
     }
     
+    /**
+     * Read measurements from a shared frame ring instead of recording them
+     * @param frameRing Frame ring written by the fog topology
+     */
+    public synchronized void setFrameRing(FrameRing frameRing) {
+        this.frameRing = frameRing;
+        this.ownsFrameRing = false;
+    }
+    
+    /**
+     * Set the fog topology whose nodes' recent packets are served
+     * @param fogTopology Fog topology
+     */
+    public void setFogTopology(FactoryFogTopology fogTopology) {
+        this.fogTopology = fogTopology;
+    }
+    
     /**
      * Handler for dashboard web page
      */
@@ -157,13 +203,27 @@ public class WebDashboard {
     
     /**
      * Handler for measurement API
+     * Returns the stage 1 measurements of the most recent frames, at most
+     * the number given by the "limit" query parameter
      */
     private class MeasurementApiHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
-            String response = buildJsonResponse(measurementRecords);
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            int limit = parseLimit(params.get("limit"));
+            
+            String response;
+            int status;
+            if (limit < 0) {
+                response = "{\"error\":\"Invalid limit\"}";
+                status = 400;
+            } else {
+                response = buildMeasurementJson(limit);
+                status = 200;
+            }
+            
             exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, response.length());
+            exchange.sendResponseHeaders(status, response.length());
             try (OutputStream os = exchange.getResponseBody()) {
                 os.write(response.getBytes());
             }
@@ -198,6 +258,244 @@ public class WebDashboard {
         }
     }
     
+    /**
+     * Handler for historical data API
+     * Summarizes the loaded history in a time window given by the "from" and
+     * "to" query parameters (epoch seconds or yyyy-MM-dd HH:mm:ss)
+     */
+    private class HistoryApiHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            long from = parseTime(params.get("from"), Instant.MIN.getEpochSecond());
+            long to = parseTime(params.get("to"), Instant.MAX.getEpochSecond());
+            
+            String response;
+            int status;
+            if (dataLoader == null || from == Timestamps.INVALID || to == Timestamps.INVALID) {
+                response = "{\"error\":\"" + (dataLoader == null ? "No data loaded" : "Invalid time range") + "\"}";
+                status = dataLoader == null ? 503 : 400;
+            } else {
+                // Binary search on the loader's time axis
+                List<FactoryDataPoint> window = dataLoader.getDataPointsBetween(
+                    Instant.ofEpochSecond(from), Instant.ofEpochSecond(to));
+                
+                // Average absolute deviation per stage 1 feature
+                float[] sums = new float[FactorySchema.MEASUREMENT_COUNT];
+                int[] counts = new int[FactorySchema.MEASUREMENT_COUNT];
+                for (FactoryDataPoint dataPoint : window) {
+                    for (int featureId = 0; featureId < sums.length; featureId++) {
+                        float deviation = Math.abs(dataPoint.getStage1Actual(featureId) - dataPoint.getStage1Setpoint(featureId));
+                        if (!Float.isNaN(deviation)) {
+                            sums[featureId] += deviation;
+                            counts[featureId]++;
+                        }
+                    }
+                }
+                
+                StringBuilder json = new StringBuilder("{");
+                json.append("\"count\":").append(window.size()).append(",");
+                json.append("\"stage1Deviations\":{");
+                boolean first = true;
+                for (int featureId = 0; featureId < sums.length; featureId++) {
+                    if (counts[featureId] == 0) {
+                        continue;
+                    }
+                    if (!first) {
+                        json.append(",");
+                    }
+                    first = false;
+                    json.append("\"feature-").append(featureId).append("\":")
+                        .append(sums[featureId] / counts[featureId]);
+                }
+                json.append("}}");
+                response = json.toString();
+                status = 200;
+            }
+            
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, response.length());
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response.getBytes());
+            }
+        }
+    }
+    
+    /**
+     * Handler for node packet API
+     * Returns the recent packets of the node given by the "node" query
+     * parameter: those since the "since" time if given, otherwise the last
+     * "limit" packets. Reads the node's history ring without blocking it.
+     */
+    private class NodePacketApiHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            FactoryFogTopology topology = fogTopology;
+            FactoryFogTopology.FogNode node = topology != null && params.get("node") != null
+                ? topology.getNode(params.get("node")) : null;
+            long since = parseTime(params.get("since"), Timestamps.INVALID);
+            int limit = parseLimit(params.get("limit"));
+            
+            String response;
+            int status;
+            if (node == null) {
+                response = "{\"error\":\"Unknown node\"}";
+                status = 404;
+            } else if (limit < 0 || (params.get("since") != null && since == Timestamps.INVALID)) {
+                response = "{\"error\":\"Invalid limit or time\"}";
+                status = 400;
+            } else {
+                List<FactoryFogTopology.FogDataPacket> packets = since != Timestamps.INVALID
+                    ? node.getPacketsSince(since) : node.getRecentPackets(limit);
+                response = buildPacketJson(node.getNodeId(), packets);
+                status = 200;
+            }
+            
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, response.length());
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response.getBytes());
+            }
+        }
+    }
+    
+    /**
+     * Parse a URL query string into a map of decoded parameters
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+    
+    /**
+     * Parse a time parameter given as epoch seconds or in the dataset format
+     * @return Epoch seconds, the default if the parameter is absent, or Timestamps.INVALID
+     */
+    private static long parseTime(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            // Clamp to the range an Instant can hold
+            long epochSecond = Long.parseLong(value);
+            return Math.max(Instant.MIN.getEpochSecond(), Math.min(epochSecond, Instant.MAX.getEpochSecond()));
+        } catch (NumberFormatException e) {
+            return Timestamps.parse(value);
+        }
+    }
+    
+    /**
+     * Parse the measurement API limit, or -1 if it is not a positive number
+     */
+    private static int parseLimit(String value) {
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_MEASUREMENT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            return limit > 0 ? limit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Build the measurement JSON from the most recent frames in the ring
+     * @param limit Most frames to read
+     * @return JSON object with a list of records for each stage 1 feature
+     */
+    private String buildMeasurementJson(int limit) {
+        FrameRing ring = frameRing;
+        if (ring == null) {
+            return "{}";
+        }
+        
+        FrameRing.Cursor cursor = ring.newCursor();
+        cursor.seek(ring.getWriteSequence() - limit);
+        FactoryDataPoint frame = new FactoryDataPoint();
+        StringBuilder[] features = new StringBuilder[FactorySchema.MEASUREMENT_COUNT];
+        for (int read = 0; read < limit && cursor.next(frame); read++) {
+            for (int featureId = 0; featureId < features.length; featureId++) {
+                float actual = frame.getStage1Actual(featureId);
+                float setpoint = frame.getStage1Setpoint(featureId);
+                
+                // Skip missing readings
+                if (Float.isNaN(actual) || Float.isNaN(setpoint)) {
+                    continue;
+                }
+                StringBuilder records = features[featureId];
+                if (records == null) {
+                    records = features[featureId] = new StringBuilder("[");
+                } else {
+                    records.append(",");
+                }
+                records.append("{\"timestamp\":\"").append(frame.getTimestamp()).append("\",")
+                    .append("\"setpoint\":").append(setpoint).append(",")
+                    .append("\"actual\":").append(actual).append(",")
+                    .append("\"deviation\":").append(Math.abs(actual - setpoint))
+                    .append("}");
+            }
+        }
+        
+        StringBuilder json = new StringBuilder("{");
+        for (int featureId = 0; featureId < features.length; featureId++) {
+            if (features[featureId] == null) {
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(",");
+            }
+            json.append("\"feature-").append(featureId).append("\":").append(features[featureId]).append("]");
+        }
+        json.append("}");
+        return json.toString();
+    }
+    
+    /**
+     * Build the JSON for a node's packets
+     * @param nodeId Node ID
+     * @param packets Packets, oldest first
+     * @return JSON object with the packets' row, sender, payload type and values
+     */
+    private static String buildPacketJson(String nodeId, List<FactoryFogTopology.FogDataPacket> packets) {
+        StringBuilder json = new StringBuilder("{\"node\":\"").append(nodeId).append("\",\"packets\":[");
+        for (int i = 0; i < packets.size(); i++) {
+            FactoryFogTopology.FogDataPacket packet = packets.get(i);
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("{\"timestamp\":\"").append(packet.getTimestamp()).append("\",")
+                .append("\"sequence\":").append(packet.getSequence()).append(",");
+            if (packet.getSourceNodeId() != null) {
+                json.append("\"source\":\"").append(packet.getSourceNodeId()).append("\",");
+            }
+            json.append("\"type\":\"").append(packet.getPayload().getClass().getSimpleName()).append("\",")
+                .append("\"values\":[");
+            float[] values = packet.getPayload().getValues();
+            for (int v = 0; v < values.length; v++) {
+                if (v > 0) {
+                    json.append(",");
+                }
+                // JSON has no NaN: missing readings are null
+                json.append(Float.isNaN(values[v]) ? "null" : Float.toString(values[v]));
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+    
     /**
      * Build a JSON response from a map of records
      * @param records Map of records
@@ -260,31 +558,4 @@ public class WebDashboard {
             return json.toString();
         }
     }
-    
-    /**
-     * Record class for measurements
-     */
-    private static class MeasurementRecord {
-        private final String timestamp;
-        private final float setpoint;
-        private final float actual;
-        private final float deviation;
-        
-        public MeasurementRecord(String timestamp, float setpoint, float actual, float deviation) {
-            this.timestamp = timestamp;
-            this.setpoint = setpoint;
-            this.actual = actual;
-            this.deviation = deviation;
-        }
-        
-        @Override
-        public String toString() {
-            return "{" +
-                "\"timestamp\":\"" + timestamp + "\"," +
-                "\"setpoint\":" + setpoint + "," +
-                "\"actual\":" + actual + "," +
-                "\"deviation\":" + deviation +
-                "}";
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package org.example;
+
+import java.util.function.Consumer;
+
+import org.example.data.Timestamps;
+
+/**
+ * Summarizes one signal over event-time windows
+ * Values are kept per pane of one slide (the whole window for a tumbling
+ * window) as count, min, max, mean, last and the sum of squared deviations,
+ * which merge exactly, so a sliding window is the merge of its last panes and
+ * memory does not grow with the window size. A window is emitted once a value
+ * arrives for a later pane; windows without values are not emitted. Values
+ * for a pane already closed, or without a valid time, count towards the open
+ * pane and are counted as late.
+ *
+ * add and flush may be called from different threads.
+ */
+public class WindowAggregator {
+    private final AggregationWindow window;
+    private final Consumer<Summary> sink;
+    // Ring of the panes in the current window, indexed by pane number
+    private final Pane[] panes;
+    private long openPane = Long.MIN_VALUE;
+
+    // Statistics
+    private long valuesAdded;
+    private long valuesLate;
+    private long summariesEmitted;
+
+    /**
+     * Statistics of a signal over one window
+     */
+    public static class Summary {
+        private final long startEpochSecond;
+        private final long endEpochSecond;
+        private final long count;
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double last;
+        private final double stddev;
+        private final long firstEpochSecond;
+        private final long lastEpochSecond;
+
+        Summary(long startEpochSecond, long endEpochSecond, Pane pane) {
+            this.startEpochSecond = startEpochSecond;
+            this.endEpochSecond = endEpochSecond;
+            this.count = pane.count;
+            this.min = pane.min;
+            this.max = pane.max;
+            this.mean = pane.mean;
+            this.last = pane.last;
+            this.stddev = Math.sqrt(pane.squaredDeviations / pane.count);
+            this.firstEpochSecond = pane.firstEpochSecond;
+            this.lastEpochSecond = pane.lastEpochSecond;
+        }
+
+        // Getters
+        public long getStartEpochSecond() { return startEpochSecond; }
+        public long getEndEpochSecond() { return endEpochSecond; }
+        public long getCount() { return count; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+        public double getMean() { return mean; }
+        public double getLast() { return last; }
+        public double getStddev() { return stddev; }
+
+        /**
+         * Time of the first value in the window, or the window start if no value had a valid time
+         */
+        public long getFirstEpochSecond() { return firstEpochSecond != Timestamps.INVALID ? firstEpochSecond : startEpochSecond; }
+
+        /**
+         * Time of the last value in the window, or the last second of the window if no value had a valid time
+         */
+        public long getLastEpochSecond() { return lastEpochSecond != Timestamps.INVALID ? lastEpochSecond : endEpochSecond - 1; }
+
+        @Override
+        public String toString() {
+            return String.format("[%s, %s) count=%d, min=%.2f, max=%.2f, mean=%.3f, last=%.2f, stddev=%.3f",
+                Timestamps.format(startEpochSecond), Timestamps.format(endEpochSecond), count, min, max, mean, last, stddev);
+        }
+    }
+
+    /**
+     * Running statistics of the values in one pane
+     */
+    private static class Pane {
+        long count;
+        double min;
+        double max;
+        double mean;
+        double squaredDeviations;
+        double last;
+        long firstEpochSecond;
+        long lastEpochSecond;
+
+        Pane() {
+            clear();
+        }
+
+        void clear() {
+            count = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            mean = 0;
+            squaredDeviations = 0;
+            last = Double.NaN;
+            firstEpochSecond = Timestamps.INVALID;
+            lastEpochSecond = Timestamps.INVALID;
+        }
+
+        void add(double value, long epochSecond) {
+            // Welford's update keeps the variance accurate for readings with a large mean
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            squaredDeviations += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            last = value;
+            if (epochSecond != Timestamps.INVALID) {
+                if (firstEpochSecond == Timestamps.INVALID) {
+                    firstEpochSecond = epochSecond;
+                }
+                lastEpochSecond = epochSecond;
+            }
+        }
+
+        /**
+         * Merge a later pane into this one
+         */
+        void merge(Pane later) {
+            if (later.count == 0) {
+                return;
+            }
+            long total = count + later.count;
+            double delta = later.mean - mean;
+            squaredDeviations += later.squaredDeviations + delta * delta * count * later.count / total;
+            mean += delta * later.count / total;
+            count = total;
+            min = Math.min(min, later.min);
+            max = Math.max(max, later.max);
+            last = later.last;
+            if (firstEpochSecond == Timestamps.INVALID) {
+                firstEpochSecond = later.firstEpochSecond;
+            }
+            if (later.lastEpochSecond != Timestamps.INVALID) {
+                lastEpochSecond = later.lastEpochSecond;
+            }
+        }
+    }
+
+    /**
+     * Create an aggregator
+     * @param window Window to summarize over
+     * @param sink Called with every window summary, on the thread that closed the window
+     */
+    public WindowAggregator(AggregationWindow window, Consumer<Summary> sink) {
+        this.window = window;
+        this.sink = sink;
+        this.panes = new Pane[window.getSizeSeconds() / window.getSlideSeconds()];
+        for (int i = 0; i < panes.length; i++) {
+            panes[i] = new Pane();
+        }
+    }
+
+    /**
+     * Add a value, emitting the windows that closed before it
+     * @param epochSecond Time of the value
+     * @param value Value; NaN (a missing reading) is skipped
+     */
+    public synchronized void add(long epochSecond, float value) {
+        if (Float.isNaN(value)) {
+            return;
+        }
+        valuesAdded++;
+        long pane = epochSecond != Timestamps.INVALID ? Math.floorDiv(epochSecond, window.getSlideSeconds()) : Long.MIN_VALUE;
+        if (openPane == Long.MIN_VALUE) {
+            if (pane == Long.MIN_VALUE) {
+                // Nothing to place it in yet
+                valuesLate++;
+                return;
+            }
+            openPane = pane;
+        } else if (pane > openPane) {
+            advanceTo(pane);
+        } else if (pane < openPane) {
+            valuesLate++;
+        }
+        panes[slot(openPane)].add(value, epochSecond);
+    }
+
+    /**
+     * Emit the window ending with the open pane, even though it may not be complete,
+     * and start afresh. Call once the signal has ended, e.g. after the topology is drained.
+     */
+    public synchronized void flush() {
+        if (openPane != Long.MIN_VALUE && panes[slot(openPane)].count > 0) {
+            emit(openPane);
+        }
+        for (Pane pane : panes) {
+            pane.clear();
+        }
+        openPane = Long.MIN_VALUE;
+    }
+
+    /**
+     * Close panes up to the one a value arrived for
+     */
+    private void advanceTo(long pane) {
+        while (openPane < pane) {
+            emit(openPane);
+            openPane++;
+            panes[slot(openPane)].clear();
+            if (isEmpty()) {
+                // A gap longer than the window: nothing to emit until the value's pane
+                openPane = pane;
+                panes[slot(openPane)].clear();
+            }
+        }
+    }
+
+    /**
+     * Emit the window ending with a pane, if it has any values
+     */
+    private void emit(long lastPane) {
+        Pane merged = new Pane();
+        for (long pane = lastPane - panes.length + 1; pane <= lastPane; pane++) {
+            merged.merge(panes[slot(pane)]);
+        }
+        if (merged.count == 0) {
+            return;
+        }
+        long end = (lastPane + 1) * window.getSlideSeconds();
+        summariesEmitted++;
+        sink.accept(new Summary(end - window.getSizeSeconds(), end, merged));
+    }
+
+    private boolean isEmpty() {
+        for (Pane pane : panes) {
+            if (pane.count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(long pane) {
+        return (int) Math.floorMod(pane, (long) panes.length);
+    }
+
+    // Getters
+    public AggregationWindow getWindow() { return window; }
+    public synchronized long getValuesAdded() { return valuesAdded; }
+    public synchronized long getSummariesEmitted() { return summariesEmitted; }
+
+    /**
+     * Values that arrived after their window was emitted, or without a valid time
+     */
+    public synchronized long getValuesLate() { return valuesLate; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: values=%d, summaries=%d, late=%d", window, valuesAdded, summariesEmitted, valuesLate);
+    }
+}
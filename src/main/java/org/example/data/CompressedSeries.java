@@ -0,0 +1,244 @@
+package org.example.data;
+
+import java.util.Arrays;
+
+/**
+ * Compressed in-memory time series of float samples
+ * Uses the Gorilla encoding: each timestamp is stored as the change in the
+ * delta between epoch seconds (a single bit for a steady 1 Hz series), and
+ * each value as the XOR with the previous value, storing only the bits that
+ * differ. Slowly varying sensor values take a few bits per sample instead
+ * of a boxed Float. Encoding is lossless, NaN payloads included.
+ *
+ * Samples can only be appended and read back in order. Not thread-safe.
+ */
+public class CompressedSeries {
+    private static final int INITIAL_WORDS = 4;
+
+    private long[] words = new long[INITIAL_WORDS];
+    private long bitCount;
+    private int size;
+
+    // Encoder state
+    private long lastEpochSecond;
+    private long lastDelta;
+    private int lastValueBits;
+    private int blockLeading = -1;
+    private int blockTrailing;
+
+    /**
+     * Append a sample
+     * @param epochSecond Epoch seconds of the sample
+     * @param value Sample value
+     */
+    public void append(long epochSecond, float value) {
+        int valueBits = Float.floatToRawIntBits(value);
+        if (size == 0) {
+            writeBits(epochSecond, 64);
+            writeBits(valueBits, 32);
+        } else {
+            long delta = epochSecond - lastEpochSecond;
+            writeTimestamp(delta - lastDelta);
+            writeValue(valueBits ^ lastValueBits);
+            lastDelta = delta;
+        }
+        lastEpochSecond = epochSecond;
+        lastValueBits = valueBits;
+        size++;
+    }
+
+    /**
+     * Write a delta of deltas: '0' for none, otherwise a prefix selecting the width
+     */
+    private void writeTimestamp(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0, 1);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    /**
+     * Write the XOR with the previous value: '0' for the same value, '10' for
+     * bits within the previous block of meaningful bits, or '11' with a new block
+     */
+    private void writeValue(int xor) {
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+
+        int leading = Integer.numberOfLeadingZeros(xor);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        if (blockLeading >= 0 && leading >= blockLeading && trailing >= blockTrailing) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> blockTrailing, Integer.SIZE - blockLeading - blockTrailing);
+        } else {
+            int length = Integer.SIZE - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 5);
+            writeBits(length - 1, 5);
+            writeBits(xor >>> trailing, length);
+            blockLeading = leading;
+            blockTrailing = trailing;
+        }
+    }
+
+    /**
+     * Write the low count bits of a value, most significant first
+     */
+    private void writeBits(long value, int count) {
+        int index = (int) (bitCount >>> 6);
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length + (words.length >> 1) + 2);
+        }
+
+        long bits = count == Long.SIZE ? value : value & ((1L << count) - 1);
+        int free = Long.SIZE - (int) (bitCount & 63);
+        if (count <= free) {
+            words[index] |= bits << (free - count);
+        } else {
+            int rest = count - free;
+            words[index] |= bits >>> rest;
+            words[index + 1] |= bits << (Long.SIZE - rest);
+        }
+        bitCount += count;
+    }
+
+    /**
+     * Copy of the last samples of this series
+     * @param count Number of samples to keep
+     * @return New series with at most count samples
+     */
+    public CompressedSeries tail(int count) {
+        CompressedSeries tail = new CompressedSeries();
+        Decoder samples = decoder();
+        int skip = Math.max(0, size - count);
+        for (int i = 0; samples.next(); i++) {
+            if (i >= skip) {
+                tail.append(samples.getEpochSecond(), samples.getValue());
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Release unused capacity once no more samples are expected
+     */
+    public void trimToSize() {
+        words = Arrays.copyOf(words, (int) ((bitCount + 63) >>> 6) + 1);
+    }
+
+    /**
+     * Decoder positioned before the first sample
+     */
+    public Decoder decoder() {
+        return new Decoder();
+    }
+
+    // Getters
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * Encoded size of the samples in bytes
+     */
+    public long getSizeInBytes() { return (bitCount + 7) >>> 3; }
+
+    /**
+     * Sequential reader over the samples appended so far
+     */
+    public class Decoder {
+        private final int count = size;
+        private int index;
+        private long position;
+
+        private long epochSecond;
+        private long delta;
+        private int valueBits;
+        private int blockLeading;
+        private int blockTrailing;
+
+        private Decoder() {
+        }
+
+        /**
+         * Decode the next sample
+         * @return false if there are no more samples
+         */
+        public boolean next() {
+            if (index == count) {
+                return false;
+            }
+
+            if (index == 0) {
+                epochSecond = readBits(64);
+                valueBits = (int) readBits(32);
+            } else {
+                delta += readDeltaOfDelta();
+                epochSecond += delta;
+                valueBits ^= readXor();
+            }
+            index++;
+            return true;
+        }
+
+        private long readDeltaOfDelta() {
+            if (readBits(1) == 0) {
+                return 0;
+            }
+            if (readBits(1) == 0) {
+                return signed(readBits(7), 7);
+            }
+            if (readBits(1) == 0) {
+                return signed(readBits(9), 9);
+            }
+            if (readBits(1) == 0) {
+                return signed(readBits(12), 12);
+            }
+            return readBits(64);
+        }
+
+        private int readXor() {
+            if (readBits(1) == 0) {
+                return 0;
+            }
+            if (readBits(1) == 1) {
+                blockLeading = (int) readBits(5);
+                blockTrailing = Integer.SIZE - blockLeading - ((int) readBits(5) + 1);
+            }
+            int length = Integer.SIZE - blockLeading - blockTrailing;
+            return (int) readBits(length) << blockTrailing;
+        }
+
+        private long readBits(int count) {
+            int index = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            int available = Long.SIZE - offset;
+            long bits = (words[index] << offset) >>> (Long.SIZE - count);
+            if (count > available) {
+                bits |= words[index + 1] >>> (Long.SIZE - (count - available));
+            }
+            position += count;
+            return bits;
+        }
+
+        private long signed(long bits, int count) {
+            return (bits << (Long.SIZE - count)) >> (Long.SIZE - count);
+        }
+
+        // Getters
+        public long getEpochSecond() { return epochSecond; }
+        public float getValue() { return Float.intBitsToFloat(valueBits); }
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.data;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar (struct-of-arrays) store for factory history
+ * Keeps one primitive column per dataset column: epoch seconds for the
+ * timestamp and floats for each of the 115 value columns. Columns are
+ * heap arrays when built from CSV, or views of a memory-mapped snapshot.
+ */
+public class FactoryColumnStore {
+    private final int rowCount;
+    private final LongBuffer epochSeconds;
+    private final FloatBuffer[] columns;
+
+    // Original timestamp text, only kept when some timestamps are not in the dataset format
+    private final String[] timestampText;
+
+    private FactoryColumnStore(int rowCount, LongBuffer epochSeconds, FloatBuffer[] columns, String[] timestampText) {
+        this.rowCount = rowCount;
+        this.epochSeconds = epochSeconds;
+        this.columns = columns;
+        this.timestampText = timestampText;
+    }
+
+    /**
+     * Wrap existing column buffers (e.g. views of a mapped snapshot)
+     * @param rowCount Number of rows
+     * @param epochSeconds Epoch seconds of each row
+     * @param columns Value columns by column index (column 0 unused)
+     * @return Column store reading from the buffers
+     */
+    public static FactoryColumnStore wrap(int rowCount, LongBuffer epochSeconds, FloatBuffer[] columns) {
+        return new FactoryColumnStore(rowCount, epochSeconds, columns, null);
+    }
+
+    /**
+     * Build a column store from data points
+     * @param dataPoints Data points in row order
+     * @return Column store with the same data
+     */
+    public static FactoryColumnStore fromDataPoints(List<FactoryDataPoint> dataPoints) {
+        Builder builder = new Builder(dataPoints.size());
+        float[] row = new float[FactorySchema.COLUMN_COUNT];
+        for (FactoryDataPoint point : dataPoints) {
+            FactorySchema.toRow(point, row);
+            builder.addRow(point.getTimestamp(), row);
+        }
+        return builder.build();
+    }
+
+    // Getters
+    public int getRowCount() { return rowCount; }
+
+    /**
+     * Epoch seconds of a row, or Timestamps.INVALID if its timestamp couldn't be parsed
+     */
+    public long getEpochSecond(int row) { return epochSeconds.get(row); }
+
+    /**
+     * Whether some timestamps are kept as text because they are not in the dataset format
+     */
+    public boolean hasTimestampText() { return timestampText != null; }
+
+    /**
+     * Timestamp text of a row
+     */
+    public String getTimestamp(int row) {
+        if (timestampText != null && timestampText[row] != null) {
+            return timestampText[row];
+        }
+        return Timestamps.format(epochSeconds.get(row));
+    }
+
+    /**
+     * Value of a cell
+     * @param row Row index
+     * @param column Column index (see FactorySchema)
+     */
+    public float get(int row, int column) { return columns[column].get(row); }
+
+    /**
+     * A column, for tight loops with absolute get(row); its limit is getRowCount()
+     * @param column Column index (see FactorySchema)
+     */
+    public FloatBuffer column(int column) { return columns[column].asReadOnlyBuffer(); }
+
+    /**
+     * The epoch seconds column, for tight loops with absolute get(row); its limit is getRowCount()
+     */
+    public LongBuffer epochSecondColumn() { return epochSeconds.asReadOnlyBuffer(); }
+
+    /**
+     * Materialize a row as a FactoryDataPoint
+     * @param row Row index
+     */
+    public FactoryDataPoint toDataPoint(int row) {
+        float[] values = new float[FactorySchema.COLUMN_COUNT];
+        for (int column = 1; column < columns.length; column++) {
+            values[column] = columns[column].get(row);
+        }
+        String text = timestampText != null ? timestampText[row] : null;
+        return FactorySchema.toDataPoint(epochSeconds.get(row), text, values);
+    }
+
+    /**
+     * Read-only list view of the rows as FactoryDataPoints, for callers of the
+     * object model. Each access materializes a fresh data point.
+     */
+    public List<FactoryDataPoint> asDataPointList() {
+        return new DataPointView();
+    }
+
+    /**
+     * List view materializing rows on access
+     */
+    private class DataPointView extends AbstractList<FactoryDataPoint> implements RandomAccess {
+        @Override
+        public FactoryDataPoint get(int index) {
+            if (index < 0 || index >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + index + " of " + rowCount);
+            }
+            return toDataPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    /**
+     * Incremental builder growing the columns as rows are added
+     */
+    public static class Builder {
+        private int rowCount;
+        private long[] epochSeconds;
+        private final float[][] columns;
+        private String[] timestampText;
+
+        /**
+         * Create a builder
+         * @param expectedRows Initial capacity in rows
+         */
+        public Builder(int expectedRows) {
+            int capacity = Math.max(expectedRows, 16);
+            this.epochSeconds = new long[capacity];
+            this.columns = new float[FactorySchema.COLUMN_COUNT][];
+            for (int column = 1; column < columns.length; column++) {
+                columns[column] = new float[capacity];
+            }
+        }
+
+        /**
+         * Add a row whose timestamp has already been parsed
+         * @param epochSecond Epoch seconds of the row
+         * @param values Numeric values by column index (column 0 unused)
+         */
+        public void addRow(long epochSecond, float[] values) {
+            ensureCapacity();
+            epochSeconds[rowCount] = epochSecond;
+            for (int column = 1; column < columns.length; column++) {
+                columns[column][rowCount] = values[column];
+            }
+            rowCount++;
+        }
+
+        /**
+         * Add a row with its timestamp text
+         * @param timestamp Timestamp text
+         * @param values Numeric values by column index (column 0 unused)
+         */
+        public void addRow(String timestamp, float[] values) {
+            ensureCapacity();
+            long epochSecond = Timestamps.parse(timestamp);
+            if (epochSecond == Timestamps.INVALID) {
+                // Keep text that doesn't round-trip through epoch seconds
+                if (timestampText == null) {
+                    timestampText = new String[epochSeconds.length];
+                }
+                timestampText[rowCount] = timestamp;
+            }
+            addRow(epochSecond, values);
+        }
+
+        private void ensureCapacity() {
+            if (rowCount < epochSeconds.length) {
+                return;
+            }
+            int capacity = epochSeconds.length * 2;
+            epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+            for (int column = 1; column < columns.length; column++) {
+                columns[column] = Arrays.copyOf(columns[column], capacity);
+            }
+            if (timestampText != null) {
+                timestampText = Arrays.copyOf(timestampText, capacity);
+            }
+        }
+
+        /**
+         * Build the store. The builder must not be used afterwards.
+         */
+        public FactoryColumnStore build() {
+            FloatBuffer[] buffers = new FloatBuffer[columns.length];
+            for (int column = 1; column < columns.length; column++) {
+                buffers[column] = FloatBuffer.wrap(columns[column], 0, rowCount);
+            }
+            return new FactoryColumnStore(rowCount, LongBuffer.wrap(epochSeconds, 0, rowCount), buffers, timestampText);
+        }
+    }
+}
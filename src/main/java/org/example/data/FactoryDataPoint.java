@@ -1,51 +1,292 @@
 package org.example.data;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Main data point class representing a single measurement timestamp
+ * Values are held in one float array indexed by schema column (see
+ * FactorySchema), so reading a machine variable or a stage measurement is a
+ * single array access. The machine and measurement objects of the original
+ * object model are still available through adapter getters, which build
+ * them from the values on each call.
+ * Data points can be recycled as frames through a FramePool.
  */
 public class FactoryDataPoint {
+    // Timestamp text; formatted from epochSecond on first use unless the source text didn't parse
     private String timestamp;
-    private float ambientHumidity;
-    private float ambientTemperature;
-    private Map<Integer, MachineData> firstStageMachineData;
-    private CombinerData combinerData;
-    private List<Measurement> stage1Measurements;
-    private Map<Integer, SecondStageMachineData> secondStageMachineData;
-    private List<Measurement> stage2Measurements;
+    private long epochSecond;
+
+    // Values by schema column; column 0 (the timestamp) is unused
+    private final float[] values;
+
+    /**
+     * Create a data point with all values zero and no timestamp
+     */
+    public FactoryDataPoint() {
+        this.epochSecond = Timestamps.INVALID;
+        this.values = new float[FactorySchema.COLUMN_COUNT];
+    }
+
+    /**
+     * Create a data point holding a row of values
+     * @param epochSecond Timestamp as epoch seconds
+     * @param timestamp Timestamp text
+     * @param values Values by schema column; kept by the data point, not copied
+     */
+    public FactoryDataPoint(long epochSecond, String timestamp, float[] values) {
+        if (values.length != FactorySchema.COLUMN_COUNT) {
+            throw new IllegalArgumentException("Expected " + FactorySchema.COLUMN_COUNT + " values, got " + values.length);
+        }
+        this.epochSecond = epochSecond;
+        // Text in the dataset format is recreated from the epoch seconds when needed
+        this.timestamp = epochSecond == Timestamps.INVALID ? timestamp : null;
+        this.values = values;
+    }
+
+    /**
+     * Copy of this data point that stays valid after a recycled frame is released
+     */
+    public FactoryDataPoint copy() {
+        FactoryDataPoint copy = new FactoryDataPoint(epochSecond, timestamp, values.clone());
+        copy.timestamp = timestamp;
+        return copy;
+    }
+
+    /**
+     * Clear the data point for reuse: no timestamp and all values missing (NaN)
+     */
+    void reset() {
+        timestamp = null;
+        epochSecond = Timestamps.INVALID;
+        Arrays.fill(values, Float.NaN);
+    }
 
     // Getters and setters
-    public String getTimestamp() { return timestamp; }
+    public String getTimestamp() {
+        if (timestamp == null && epochSecond != Timestamps.INVALID) {
+            timestamp = Timestamps.format(epochSecond);
+        }
+        return timestamp;
+    }
     public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
 
-    public float getAmbientHumidity() { return ambientHumidity; }
-    public void setAmbientHumidity(float ambientHumidity) { this.ambientHumidity = ambientHumidity; }
+    // Timestamp as epoch seconds (UTC), parsed once at load; Timestamps.INVALID if unparseable
+    public long getEpochSecond() { return epochSecond; }
+    public void setEpochSecond(long epochSecond) { this.epochSecond = epochSecond; }
 
-    public float getAmbientTemperature() { return ambientTemperature; }
-    public void setAmbientTemperature(float ambientTemperature) { this.ambientTemperature = ambientTemperature; }
+    public float getAmbientHumidity() { return values[FactorySchema.AMBIENT_HUMIDITY]; }
+    public void setAmbientHumidity(float ambientHumidity) { values[FactorySchema.AMBIENT_HUMIDITY] = ambientHumidity; }
 
-    public Map<Integer, MachineData> getFirstStageMachineData() { return firstStageMachineData; }
-    public void setFirstStageMachineData(Map<Integer, MachineData> firstStageMachineData) { 
-        this.firstStageMachineData = firstStageMachineData; 
+    public float getAmbientTemperature() { return values[FactorySchema.AMBIENT_TEMPERATURE]; }
+    public void setAmbientTemperature(float ambientTemperature) { values[FactorySchema.AMBIENT_TEMPERATURE] = ambientTemperature; }
+
+    /**
+     * Value of a schema column
+     * @param column Column index (see FactorySchema)
+     */
+    public float getValue(int column) { return values[column]; }
+    public void setValue(int column, float value) { values[column] = value; }
+
+    /**
+     * The backing array of values by schema column, for filling a frame in place
+     */
+    public float[] getValues() { return values; }
+
+    /**
+     * Copy the values into a row (column 0 is left untouched)
+     */
+    public void copyValues(float[] row) {
+        System.arraycopy(values, 1, row, 1, FactorySchema.COLUMN_COUNT - 1);
+    }
+
+    /**
+     * Variable of a first stage machine
+     * @param machineId Machine 1-3
+     * @param field Field offset, e.g. FactorySchema.EXIT_ZONE_TEMPERATURE
+     */
+    public float getMachineValue(int machineId, int field) {
+        return values[FactorySchema.machineColumn(machineId, field)];
     }
 
-    public CombinerData getCombinerData() { return combinerData; }
-    public void setCombinerData(CombinerData combinerData) { this.combinerData = combinerData; }
+    public float getStage1Actual(int featureId) { return values[FactorySchema.stage1Actual(featureId)]; }
+    public float getStage1Setpoint(int featureId) { return values[FactorySchema.stage1Setpoint(featureId)]; }
+    public float getStage2Actual(int featureId) { return values[FactorySchema.stage2Actual(featureId)]; }
+    public float getStage2Setpoint(int featureId) { return values[FactorySchema.stage2Setpoint(featureId)]; }
 
-    public List<Measurement> getStage1Measurements() { return stage1Measurements; }
-    public void setStage1Measurements(List<Measurement> stage1Measurements) { 
-        this.stage1Measurements = stage1Measurements; 
+    /**
+     * Whether a machine belongs to the first stage (Machines 1-3)
+     */
+    public static boolean isFirstStageMachine(int machineId) {
+        return machineId >= 1 && machineId <= 3;
     }
 
-    public Map<Integer, SecondStageMachineData> getSecondStageMachineData() { return secondStageMachineData; }
-    public void setSecondStageMachineData(Map<Integer, SecondStageMachineData> secondStageMachineData) { 
-        this.secondStageMachineData = secondStageMachineData; 
+    /**
+     * Whether a machine belongs to the second stage (Machines 4-5)
+     */
+    public static boolean isSecondStageMachine(int machineId) {
+        return machineId == 4 || machineId == 5;
+    }
+
+    // Adapter getters and setters for the object model; getters return new objects
+
+    public Map<Integer, MachineData> getFirstStageMachineData() {
+        Map<Integer, MachineData> machineData = new HashMap<>();
+        for (int machineId = 1; machineId <= 3; machineId++) {
+            machineData.put(machineId, getMachineData(machineId));
+        }
+        return machineData;
+    }
+    public void setFirstStageMachineData(Map<Integer, MachineData> firstStageMachineData) {
+        firstStageMachineData.forEach(this::setMachineData);
+    }
+
+    /**
+     * Data of a first stage machine
+     * @param machineId Machine 1-3
+     */
+    public MachineData getMachineData(int machineId) {
+        int baseIdx = FactorySchema.machineColumn(machineId, 0);
+        MachineData machine = new MachineData();
+
+        // Raw material properties (missing integer properties become 0)
+        machine.setRawMaterialProperty1(values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_1]);
+        machine.setRawMaterialProperty2((int) values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_2]);
+        machine.setRawMaterialProperty3(values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_3]);
+        machine.setRawMaterialProperty4((int) values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_4]);
+
+        // Process variables
+        machine.setRawMaterialFeederParameter(values[baseIdx + FactorySchema.RAW_MATERIAL_FEEDER_PARAMETER]);
+        machine.setZone1Temperature(values[baseIdx + FactorySchema.ZONE_1_TEMPERATURE]);
+        machine.setZone2Temperature(values[baseIdx + FactorySchema.ZONE_2_TEMPERATURE]);
+        machine.setMotorAmperage(values[baseIdx + FactorySchema.MOTOR_AMPERAGE]);
+        machine.setMotorRPM(values[baseIdx + FactorySchema.MOTOR_RPM]);
+        machine.setMaterialPressure(values[baseIdx + FactorySchema.MATERIAL_PRESSURE]);
+        machine.setMaterialTemperature(values[baseIdx + FactorySchema.MATERIAL_TEMPERATURE]);
+        machine.setExitZoneTemperature(values[baseIdx + FactorySchema.EXIT_ZONE_TEMPERATURE]);
+        return machine;
+    }
+
+    private void setMachineData(int machineId, MachineData machine) {
+        int baseIdx = FactorySchema.machineColumn(machineId, 0);
+        values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_1] = machine.getRawMaterialProperty1();
+        values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_2] = machine.getRawMaterialProperty2();
+        values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_3] = machine.getRawMaterialProperty3();
+        values[baseIdx + FactorySchema.RAW_MATERIAL_PROPERTY_4] = machine.getRawMaterialProperty4();
+        values[baseIdx + FactorySchema.RAW_MATERIAL_FEEDER_PARAMETER] = machine.getRawMaterialFeederParameter();
+        values[baseIdx + FactorySchema.ZONE_1_TEMPERATURE] = machine.getZone1Temperature();
+        values[baseIdx + FactorySchema.ZONE_2_TEMPERATURE] = machine.getZone2Temperature();
+        values[baseIdx + FactorySchema.MOTOR_AMPERAGE] = machine.getMotorAmperage();
+        values[baseIdx + FactorySchema.MOTOR_RPM] = machine.getMotorRPM();
+        values[baseIdx + FactorySchema.MATERIAL_PRESSURE] = machine.getMaterialPressure();
+        values[baseIdx + FactorySchema.MATERIAL_TEMPERATURE] = machine.getMaterialTemperature();
+        values[baseIdx + FactorySchema.EXIT_ZONE_TEMPERATURE] = machine.getExitZoneTemperature();
+    }
+
+    public CombinerData getCombinerData() {
+        CombinerData combiner = new CombinerData();
+        combiner.setTemperature1(values[FactorySchema.COMBINER_TEMPERATURE_1]);
+        combiner.setTemperature2(values[FactorySchema.COMBINER_TEMPERATURE_2]);
+        combiner.setTemperature3(values[FactorySchema.COMBINER_TEMPERATURE_3]);
+        return combiner;
+    }
+    public void setCombinerData(CombinerData combinerData) {
+        values[FactorySchema.COMBINER_TEMPERATURE_1] = combinerData.getTemperature1();
+        values[FactorySchema.COMBINER_TEMPERATURE_2] = combinerData.getTemperature2();
+        values[FactorySchema.COMBINER_TEMPERATURE_3] = combinerData.getTemperature3();
+    }
+
+    public List<Measurement> getStage1Measurements() {
+        List<Measurement> measurements = new ArrayList<>(FactorySchema.MEASUREMENT_COUNT);
+        for (int i = 0; i < FactorySchema.MEASUREMENT_COUNT; i++) {
+            measurements.add(measurement(i, getStage1Actual(i), getStage1Setpoint(i)));
+        }
+        return measurements;
+    }
+    public void setStage1Measurements(List<Measurement> stage1Measurements) {
+        for (Measurement m : stage1Measurements) {
+            values[FactorySchema.stage1Actual(m.getFeatureId())] = m.getActual();
+            values[FactorySchema.stage1Setpoint(m.getFeatureId())] = m.getSetpoint();
+        }
+    }
+
+    public Map<Integer, SecondStageMachineData> getSecondStageMachineData() {
+        Map<Integer, SecondStageMachineData> machineData = new HashMap<>();
+        machineData.put(4, getSecondStageMachineData(4));
+        machineData.put(5, getSecondStageMachineData(5));
+        return machineData;
+    }
+    public void setSecondStageMachineData(Map<Integer, SecondStageMachineData> secondStageMachineData) {
+        SecondStageMachineData machine4 = secondStageMachineData.get(4);
+        if (machine4 != null) {
+            values[FactorySchema.MACHINE_4_TEMPERATURE_1] = machine4.getTemperature1();
+            values[FactorySchema.MACHINE_4_TEMPERATURE_2] = machine4.getTemperature2();
+            values[FactorySchema.MACHINE_4_PRESSURE] = machine4.getPressure();
+            values[FactorySchema.MACHINE_4_TEMPERATURE_3] = machine4.getTemperature3();
+            values[FactorySchema.MACHINE_4_TEMPERATURE_4] = machine4.getTemperature4();
+            values[FactorySchema.MACHINE_4_TEMPERATURE_5] = machine4.getTemperature5();
+            values[FactorySchema.MACHINE_4_EXIT_TEMPERATURE] = machine4.getExitTemperature();
+        }
+        SecondStageMachineData machine5 = secondStageMachineData.get(5);
+        if (machine5 != null) {
+            values[FactorySchema.MACHINE_5_TEMPERATURE_1] = machine5.getTemperature1();
+            values[FactorySchema.MACHINE_5_TEMPERATURE_2] = machine5.getTemperature2();
+            values[FactorySchema.MACHINE_5_TEMPERATURE_3] = machine5.getTemperature3();
+            values[FactorySchema.MACHINE_5_TEMPERATURE_4] = machine5.getTemperature4();
+            values[FactorySchema.MACHINE_5_TEMPERATURE_5] = machine5.getTemperature5();
+            values[FactorySchema.MACHINE_5_TEMPERATURE_6] = machine5.getTemperature6();
+            values[FactorySchema.MACHINE_5_EXIT_TEMPERATURE] = machine5.getExitTemperature();
+        }
+    }
+
+    /**
+     * Data of a second stage machine
+     * @param machineId Machine 4 or 5
+     */
+    public SecondStageMachineData getSecondStageMachineData(int machineId) {
+        SecondStageMachineData machine = new SecondStageMachineData();
+        if (machineId == 4) {
+            machine.setTemperature1(values[FactorySchema.MACHINE_4_TEMPERATURE_1]);
+            machine.setTemperature2(values[FactorySchema.MACHINE_4_TEMPERATURE_2]);
+            machine.setPressure(values[FactorySchema.MACHINE_4_PRESSURE]);
+            machine.setTemperature3(values[FactorySchema.MACHINE_4_TEMPERATURE_3]);
+            machine.setTemperature4(values[FactorySchema.MACHINE_4_TEMPERATURE_4]);
+            machine.setTemperature5(values[FactorySchema.MACHINE_4_TEMPERATURE_5]);
+            machine.setExitTemperature(values[FactorySchema.MACHINE_4_EXIT_TEMPERATURE]);
+        } else {
+            machine.setTemperature1(values[FactorySchema.MACHINE_5_TEMPERATURE_1]);
+            machine.setTemperature2(values[FactorySchema.MACHINE_5_TEMPERATURE_2]);
+            machine.setTemperature3(values[FactorySchema.MACHINE_5_TEMPERATURE_3]);
+            machine.setTemperature4(values[FactorySchema.MACHINE_5_TEMPERATURE_4]);
+            machine.setTemperature5(values[FactorySchema.MACHINE_5_TEMPERATURE_5]);
+            machine.setTemperature6(values[FactorySchema.MACHINE_5_TEMPERATURE_6]);
+            machine.setExitTemperature(values[FactorySchema.MACHINE_5_EXIT_TEMPERATURE]);
+        }
+        return machine;
+    }
+
+    public List<Measurement> getStage2Measurements() {
+        List<Measurement> measurements = new ArrayList<>(FactorySchema.MEASUREMENT_COUNT);
+        for (int i = 0; i < FactorySchema.MEASUREMENT_COUNT; i++) {
+            measurements.add(measurement(i, getStage2Actual(i), getStage2Setpoint(i)));
+        }
+        return measurements;
+    }
+    public void setStage2Measurements(List<Measurement> stage2Measurements) {
+        for (Measurement m : stage2Measurements) {
+            values[FactorySchema.stage2Actual(m.getFeatureId())] = m.getActual();
+            values[FactorySchema.stage2Setpoint(m.getFeatureId())] = m.getSetpoint();
+        }
     }
 
-    public List<Measurement> getStage2Measurements() { return stage2Measurements; }
-    public void setStage2Measurements(List<Measurement> stage2Measurements) { 
-        this.stage2Measurements = stage2Measurements; 
+    private static Measurement measurement(int featureId, float actual, float setpoint) {
+        Measurement measurement = new Measurement();
+        measurement.setFeatureId(featureId);
+        measurement.setActual(actual);
+        measurement.setSetpoint(setpoint);
+        return measurement;
     }
-}
\ No newline at end of file
+}
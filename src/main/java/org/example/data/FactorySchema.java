@@ -0,0 +1,198 @@
+package org.example.data;
+
+/**
+ * Column layout of the continuous factory process dataset
+ * (see notes_on_dataset.txt) and the mapping between a numeric row
+ * and the FactoryDataPoint object model
+ */
+public final class FactorySchema {
+    // Total number of columns, including the timestamp
+    public static final int COLUMN_COUNT = 116;
+
+    // Number of output measurements per stage
+    public static final int MEASUREMENT_COUNT = 15;
+
+    // Time stamp and factory ambient conditions
+    public static final int TIMESTAMP = 0;
+    public static final int AMBIENT_HUMIDITY = 1;
+    public static final int AMBIENT_TEMPERATURE = 2;
+
+    // First stage machines 1-3: 4 raw material properties and 8 process variables each
+    public static final int FIRST_STAGE_START = 3;
+    public static final int FIRST_STAGE_WIDTH = 12;
+    public static final int RAW_MATERIAL_PROPERTY_1 = 0;
+    public static final int RAW_MATERIAL_PROPERTY_2 = 1;
+    public static final int RAW_MATERIAL_PROPERTY_3 = 2;
+    public static final int RAW_MATERIAL_PROPERTY_4 = 3;
+    public static final int RAW_MATERIAL_FEEDER_PARAMETER = 4;
+    public static final int ZONE_1_TEMPERATURE = 5;
+    public static final int ZONE_2_TEMPERATURE = 6;
+    public static final int MOTOR_AMPERAGE = 7;
+    public static final int MOTOR_RPM = 8;
+    public static final int MATERIAL_PRESSURE = 9;
+    public static final int MATERIAL_TEMPERATURE = 10;
+    public static final int EXIT_ZONE_TEMPERATURE = 11;
+
+    // Combiner stage process parameters
+    public static final int COMBINER_TEMPERATURE_1 = 39;
+    public static final int COMBINER_TEMPERATURE_2 = 40;
+    public static final int COMBINER_TEMPERATURE_3 = 41;
+
+    // Primary output: actual/setpoint pairs for 15 features
+    public static final int STAGE_1_OUTPUT_START = 42;
+
+    // Second stage, machine 4 process variables
+    public static final int MACHINE_4_TEMPERATURE_1 = 72;
+    public static final int MACHINE_4_TEMPERATURE_2 = 73;
+    public static final int MACHINE_4_PRESSURE = 74;
+    public static final int MACHINE_4_TEMPERATURE_3 = 75;
+    public static final int MACHINE_4_TEMPERATURE_4 = 76;
+    public static final int MACHINE_4_TEMPERATURE_5 = 77;
+    public static final int MACHINE_4_EXIT_TEMPERATURE = 78;
+
+    // Second stage, machine 5 process variables
+    public static final int MACHINE_5_TEMPERATURE_1 = 79;
+    public static final int MACHINE_5_TEMPERATURE_2 = 80;
+    public static final int MACHINE_5_TEMPERATURE_3 = 81;
+    public static final int MACHINE_5_TEMPERATURE_4 = 82;
+    public static final int MACHINE_5_TEMPERATURE_5 = 83;
+    public static final int MACHINE_5_TEMPERATURE_6 = 84;
+    public static final int MACHINE_5_EXIT_TEMPERATURE = 85;
+
+    // Secondary output: actual/setpoint pairs for 15 features
+    public static final int STAGE_2_OUTPUT_START = 86;
+
+    // Column names as exported by the factory historian, by column index
+    public static final String[] COLUMN_NAMES = columnNames();
+
+    private FactorySchema() {
+    }
+
+    private static String[] columnNames() {
+        String[] names = new String[COLUMN_COUNT];
+        names[TIMESTAMP] = "time_stamp";
+        names[AMBIENT_HUMIDITY] = "AmbientConditions.AmbientHumidity.U.Actual";
+        names[AMBIENT_TEMPERATURE] = "AmbientConditions.AmbientTemperature.U.Actual";
+
+        String[] machineFields = {
+            "RawMaterial.Property1", "RawMaterial.Property2", "RawMaterial.Property3", "RawMaterial.Property4",
+            "RawMaterialFeederParameter.U.Actual", "Zone1Temperature.C.Actual", "Zone2Temperature.C.Actual",
+            "MotorAmperage.U.Actual", "MotorRPM.C.Actual", "MaterialPressure.U.Actual",
+            "MaterialTemperature.U.Actual", "ExitZoneTemperature.C.Actual"
+        };
+        for (int machineId = 1; machineId <= 3; machineId++) {
+            for (int field = 0; field < FIRST_STAGE_WIDTH; field++) {
+                names[machineColumn(machineId, field)] = "Machine" + machineId + "." + machineFields[field];
+            }
+        }
+
+        names[COMBINER_TEMPERATURE_1] = "FirstStage.CombinerOperation.Temperature1.U.Actual";
+        names[COMBINER_TEMPERATURE_2] = "FirstStage.CombinerOperation.Temperature2.U.Actual";
+        names[COMBINER_TEMPERATURE_3] = "FirstStage.CombinerOperation.Temperature3.C.Actual";
+
+        names[MACHINE_4_TEMPERATURE_1] = "Machine4.Temperature1.C.Actual";
+        names[MACHINE_4_TEMPERATURE_2] = "Machine4.Temperature2.C.Actual";
+        names[MACHINE_4_PRESSURE] = "Machine4.Pressure.C.Actual";
+        names[MACHINE_4_TEMPERATURE_3] = "Machine4.Temperature3.C.Actual";
+        names[MACHINE_4_TEMPERATURE_4] = "Machine4.Temperature4.C.Actual";
+        names[MACHINE_4_TEMPERATURE_5] = "Machine4.Temperature5.C.Actual";
+        names[MACHINE_4_EXIT_TEMPERATURE] = "Machine4.ExitTemperature.C.Actual";
+
+        names[MACHINE_5_TEMPERATURE_1] = "Machine5.Temperature1.C.Actual";
+        names[MACHINE_5_TEMPERATURE_2] = "Machine5.Temperature2.C.Actual";
+        names[MACHINE_5_TEMPERATURE_3] = "Machine5.Temperature3.C.Actual";
+        names[MACHINE_5_TEMPERATURE_4] = "Machine5.Temperature4.C.Actual";
+        names[MACHINE_5_TEMPERATURE_5] = "Machine5.Temperature5.C.Actual";
+        names[MACHINE_5_TEMPERATURE_6] = "Machine5.Temperature6.C.Actual";
+        names[MACHINE_5_EXIT_TEMPERATURE] = "Machine5.ExitTemperature.C.Actual";
+
+        for (int i = 0; i < MEASUREMENT_COUNT; i++) {
+            names[stage1Actual(i)] = "Stage1.Output.Measurement" + i + ".U.Actual";
+            names[stage1Setpoint(i)] = "Stage1.Output.Measurement" + i + ".U.Setpoint";
+            names[stage2Actual(i)] = "Stage2.Output.Measurement" + i + ".U.Actual";
+            names[stage2Setpoint(i)] = "Stage2.Output.Measurement" + i + ".U.Setpoint";
+        }
+        return names;
+    }
+
+    /**
+     * Column of a first stage machine variable
+     * @param machineId Machine 1-3
+     * @param field Field offset, e.g. EXIT_ZONE_TEMPERATURE
+     */
+    public static int machineColumn(int machineId, int field) {
+        return FIRST_STAGE_START + (machineId - 1) * FIRST_STAGE_WIDTH + field;
+    }
+
+    /**
+     * Column of a stage 1 measurement's actual value
+     */
+    public static int stage1Actual(int featureId) {
+        return STAGE_1_OUTPUT_START + featureId * 2;
+    }
+
+    /**
+     * Column of a stage 1 measurement's setpoint
+     */
+    public static int stage1Setpoint(int featureId) {
+        return STAGE_1_OUTPUT_START + featureId * 2 + 1;
+    }
+
+    /**
+     * Column of a stage 2 measurement's actual value
+     */
+    public static int stage2Actual(int featureId) {
+        return STAGE_2_OUTPUT_START + featureId * 2;
+    }
+
+    /**
+     * Column of a stage 2 measurement's setpoint
+     */
+    public static int stage2Setpoint(int featureId) {
+        return STAGE_2_OUTPUT_START + featureId * 2 + 1;
+    }
+
+    /**
+     * Whether a column holds integer values
+     * (raw material properties 2 and 4 of machines 1-3)
+     */
+    public static boolean isIntegerColumn(int column) {
+        if (column < FIRST_STAGE_START || column >= COMBINER_TEMPERATURE_1) {
+            return false;
+        }
+        int field = (column - FIRST_STAGE_START) % FIRST_STAGE_WIDTH;
+        return field == RAW_MATERIAL_PROPERTY_2 || field == RAW_MATERIAL_PROPERTY_4;
+    }
+
+    /**
+     * Builds a FactoryDataPoint from a row of numeric values
+     * @param timestamp Timestamp of the row
+     * @param values Numeric values by column index (column 0 unused)
+     * @return Built FactoryDataPoint
+     */
+    public static FactoryDataPoint toDataPoint(String timestamp, float[] values) {
+        return toDataPoint(Timestamps.parse(timestamp), timestamp, values);
+    }
+
+    /**
+     * Builds a FactoryDataPoint from a row of numeric values whose timestamp
+     * has already been parsed
+     * @param epochSecond Timestamp of the row as epoch seconds
+     * @param timestamp Timestamp text of the row
+     * @param values Numeric values by column index (column 0 unused)
+     * @return Built FactoryDataPoint
+     */
+    public static FactoryDataPoint toDataPoint(long epochSecond, String timestamp, float[] values) {
+        return new FactoryDataPoint(epochSecond, timestamp, values.clone());
+    }
+
+    /**
+     * Flattens a FactoryDataPoint into a row of numeric values
+     * (the inverse of toDataPoint)
+     * @param point Data point to flatten
+     * @param values Row to fill, indexed by column (column 0 is left untouched)
+     */
+    public static void toRow(FactoryDataPoint point, float[] values) {
+        point.copyValues(values);
+    }
+}
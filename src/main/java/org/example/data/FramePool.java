@@ -0,0 +1,64 @@
+package org.example.data;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Pool of reusable FactoryDataPoint frames
+ * Lets a continuous stream of rows be processed without allocating a data
+ * point per row: a frame is acquired, filled in place, handed to consumers
+ * and released once they are done with it. Consumers that need a frame
+ * beyond that must keep a copy (see FactoryDataPoint.copy).
+ */
+public class FramePool {
+    private final ArrayDeque<FactoryDataPoint> free;
+    private final int maxFree;
+    private long created;
+
+    /**
+     * Create a frame pool
+     * @param maxFree Most released frames kept for reuse; further frames are left to the garbage collector
+     */
+    public FramePool(int maxFree) {
+        this.free = new ArrayDeque<>(maxFree);
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Take a frame from the pool, or a new one if the pool is empty
+     * @return Frame with no timestamp and all values missing (NaN)
+     */
+    public synchronized FactoryDataPoint acquire() {
+        FactoryDataPoint frame = free.pollLast();
+        if (frame == null) {
+            frame = new FactoryDataPoint();
+            created++;
+        }
+        frame.reset();
+        return frame;
+    }
+
+    /**
+     * Return a frame to the pool; the caller must not use it afterwards
+     * @param frame Frame acquired from this pool
+     */
+    public synchronized void release(FactoryDataPoint frame) {
+        if (free.size() < maxFree) {
+            free.addLast(frame);
+        }
+    }
+
+    /**
+     * Return a batch of frames to the pool
+     * @param frames Frames acquired from this pool
+     */
+    public synchronized void releaseAll(List<FactoryDataPoint> frames) {
+        for (int i = 0; i < frames.size(); i++) {
+            release(frames.get(i));
+        }
+    }
+
+    // Getters
+    public synchronized long getCreatedCount() { return created; }
+    public synchronized int getFreeCount() { return free.size(); }
+}
@@ -0,0 +1,241 @@
+package org.example.data;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap ring buffer of fixed-width sensor frames
+ * Keeps the most recent rows once, outside the Java heap, for every
+ * component that needs recent history. A single writer appends frames;
+ * any number of readers follow it through their own cursors. Readers that
+ * fall more than the capacity behind skip the overwritten frames.
+ *
+ * Frame layout (little-endian, 472 bytes): epoch seconds as a long, then
+ * the value columns 1-115 as floats (see FactorySchema), padded to 8 bytes.
+ * Timestamp text that is not in the dataset format is not kept.
+ *
+ * The ring is backed by direct memory, or by a memory-mapped file that
+ * also records the write sequence, so the history survives a restart.
+ */
+public final class FrameRing {
+    public static final int FRAME_SIZE = 472;
+    private static final int VALUES_OFFSET = Long.BYTES;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x31524646; // "FFR1" in little-endian
+    private static final int SEQUENCE_OFFSET = 16;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int slotCount;
+    private final boolean persistent;
+
+    // Sequence number of the next frame to append (the number of frames ever appended)
+    private volatile long writeSequence;
+
+    private FrameRing(ByteBuffer buffer, int capacity, long writeSequence, boolean persistent) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        // One spare slot, so the slot being overwritten is never readable
+        this.slotCount = capacity + 1;
+        this.writeSequence = writeSequence;
+        this.persistent = persistent;
+    }
+
+    /**
+     * Create a ring in direct memory
+     * @param capacity Number of most recent frames kept
+     * @return Empty ring
+     */
+    public static FrameRing allocate(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(checkedSize(capacity)).order(ByteOrder.LITTLE_ENDIAN);
+        return new FrameRing(buffer, capacity, 0, false);
+    }
+
+    /**
+     * Create or reopen a ring in a memory-mapped file
+     * @param path Ring file; an existing ring file of the same capacity is reopened with its frames
+     * @param capacity Number of most recent frames kept
+     * @return Ring backed by the file
+     * @throws IOException If the file can't be mapped, or holds a ring of another capacity
+     */
+    public static FrameRing map(Path path, int capacity) throws IOException {
+        int size = checkedSize(capacity);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean existing = channel.size() > 0;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+            long writeSequence = 0;
+            if (existing) {
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FRAME_SIZE || buffer.getInt(8) != capacity) {
+                    throw new IOException("Not a frame ring of capacity " + capacity + ": " + path);
+                }
+                writeSequence = buffer.getLong(SEQUENCE_OFFSET);
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FRAME_SIZE);
+                buffer.putInt(8, capacity);
+                buffer.putLong(SEQUENCE_OFFSET, 0);
+            }
+            return new FrameRing(buffer, capacity, writeSequence, true);
+        }
+    }
+
+    private static int checkedSize(int capacity) {
+        long size = HEADER_SIZE + (long) (capacity + 1) * FRAME_SIZE;
+        if (capacity < 1 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame ring capacity out of range: " + capacity);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Append a frame. Only one thread may append to a ring.
+     * @param point Data point to copy into the ring
+     */
+    public void append(FactoryDataPoint point) {
+        long sequence = writeSequence;
+        int offset = offset(sequence);
+
+        // Readers must not see the slot change before they see the previous publish
+        VarHandle.storeStoreFence();
+        buffer.putLong(offset, point.getEpochSecond());
+        float[] values = point.getValues();
+        for (int column = 1; column < FactorySchema.COLUMN_COUNT; column++) {
+            buffer.putFloat(offset + VALUES_OFFSET + (column - 1) * Float.BYTES, values[column]);
+        }
+
+        if (persistent) {
+            buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+        }
+        writeSequence = sequence + 1;
+    }
+
+    /**
+     * Read a frame
+     * @param sequence Sequence number of the frame
+     * @param frame Data point to fill (e.g. a recycled frame)
+     * @return false if the frame is not written yet or has been overwritten
+     */
+    public boolean read(long sequence, FactoryDataPoint frame) {
+        if (sequence < getOldestSequence() || sequence >= writeSequence) {
+            return false;
+        }
+
+        int offset = offset(sequence);
+        frame.setEpochSecond(buffer.getLong(offset));
+        frame.setTimestamp(null);
+        float[] values = frame.getValues();
+        for (int column = 1; column < FactorySchema.COLUMN_COUNT; column++) {
+            values[column] = buffer.getFloat(offset + VALUES_OFFSET + (column - 1) * Float.BYTES);
+        }
+
+        // Valid only if the writer didn't reach this slot while it was being copied
+        VarHandle.loadLoadFence();
+        return sequence >= getOldestSequence();
+    }
+
+    /**
+     * Epoch seconds of a frame, or Timestamps.INVALID if it is not available
+     */
+    public long getEpochSecond(long sequence) {
+        if (sequence < getOldestSequence() || sequence >= writeSequence) {
+            return Timestamps.INVALID;
+        }
+        long epochSecond = buffer.getLong(offset(sequence));
+        VarHandle.loadLoadFence();
+        return sequence >= getOldestSequence() ? epochSecond : Timestamps.INVALID;
+    }
+
+    private int offset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % slotCount) * FRAME_SIZE;
+    }
+
+    // Getters
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Sequence number the next frame will get
+     */
+    public long getWriteSequence() { return writeSequence; }
+
+    /**
+     * Sequence number of the oldest frame still held
+     */
+    public long getOldestSequence() { return Math.max(0, writeSequence - capacity); }
+
+    /**
+     * Cursor positioned on the oldest frame held
+     */
+    public Cursor newCursor() {
+        return new Cursor(getOldestSequence());
+    }
+
+    /**
+     * Cursor that only sees frames appended from now on
+     */
+    public Cursor newCursorAtEnd() {
+        return new Cursor(writeSequence);
+    }
+
+    /**
+     * A reader's position in the ring
+     * Each reader has its own cursor; cursors are not thread-safe.
+     */
+    public class Cursor {
+        private long sequence;
+        private long missed;
+
+        private Cursor(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Read the frame at the cursor and advance
+         * @param frame Data point to fill
+         * @return false if there is no new frame
+         */
+        public boolean next(FactoryDataPoint frame) {
+            while (sequence < writeSequence) {
+                long oldest = getOldestSequence();
+                if (sequence < oldest) {
+                    // Lapped by the writer
+                    missed += oldest - sequence;
+                    sequence = oldest;
+                }
+                if (read(sequence, frame)) {
+                    sequence++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Move the cursor to a sequence number, e.g. to read the last N frames
+         */
+        public void seek(long sequence) {
+            this.sequence = Math.max(sequence, getOldestSequence());
+        }
+
+        /**
+         * Number of frames appended but not read yet
+         */
+        public long available() {
+            return Math.max(0, writeSequence - Math.max(sequence, getOldestSequence()));
+        }
+
+        // Getters
+        public long getSequence() { return sequence; }
+
+        /**
+         * Number of frames overwritten before this cursor read them
+         */
+        public long getMissedCount() { return missed; }
+    }
+}
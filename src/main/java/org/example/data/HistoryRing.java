@@ -0,0 +1,132 @@
+package org.example.data;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity ring of recent items, each stamped with epoch seconds
+ * A single writer appends in O(1), overwriting the oldest item once the ring
+ * is full. Readers never take a lock and never block the writer: they copy
+ * the items they want and drop any the writer overwrote meanwhile, the same
+ * way FrameRing readers do.
+ *
+ * @param <T> Item type; items should be immutable, as readers share them
+ */
+public final class HistoryRing<T> {
+    private final Object[] items;
+    private final long[] epochSeconds;
+    private final int capacity;
+    private final int slotCount;
+
+    // Sequence number of the next item to append (the number of items ever appended)
+    private volatile long writeSequence;
+
+    /**
+     * Create an empty ring
+     * @param capacity Number of most recent items kept
+     */
+    public HistoryRing(int capacity) {
+        if (capacity < 1 || capacity == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("History ring capacity out of range: " + capacity);
+        }
+        this.capacity = capacity;
+        // One spare slot, so the slot being overwritten is never readable
+        this.slotCount = capacity + 1;
+        this.items = new Object[slotCount];
+        this.epochSeconds = new long[slotCount];
+    }
+
+    /**
+     * Append an item. Only one thread may append to a ring.
+     * @param epochSecond Epoch seconds of the item, or Timestamps.INVALID
+     * @param item Item to keep
+     */
+    public void append(long epochSecond, T item) {
+        long sequence = writeSequence;
+        int slot = (int) (sequence % slotCount);
+
+        // Readers must not see the slot change before they see the previous publish
+        VarHandle.storeStoreFence();
+        epochSeconds[slot] = epochSecond;
+        items[slot] = item;
+        writeSequence = sequence + 1;
+    }
+
+    /**
+     * The most recent items, oldest first
+     * @param count Most items to return
+     * @return Up to count items
+     */
+    public List<T> last(int count) {
+        long end = writeSequence;
+        return copy(Math.max(oldest(end), end - Math.max(0, count)), end);
+    }
+
+    /**
+     * The items stamped at or after a time, oldest first
+     * Items are expected in time order: the search walks back from the newest
+     * item and stops at the first older one. Items without a time are kept
+     * along with their neighbours.
+     * @param epochSecond Earliest epoch seconds to return
+     * @return Matching items still held
+     */
+    public List<T> since(long epochSecond) {
+        long end = writeSequence;
+        long start = end;
+        while (start > oldest(end)) {
+            long itemEpochSecond = epochSeconds[(int) ((start - 1) % slotCount)];
+            if (itemEpochSecond != Timestamps.INVALID && itemEpochSecond < epochSecond) {
+                break;
+            }
+            start--;
+        }
+        // A time read from an overwritten slot only moves start below the oldest item, which copy drops
+        return copy(start, end);
+    }
+
+    /**
+     * Copy the items in a range of sequence numbers, dropping the ones the
+     * writer overwrote while they were being copied
+     */
+    private List<T> copy(long start, long end) {
+        List<T> result = new ArrayList<>((int) Math.max(0, end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            result.add(item(sequence));
+        }
+
+        VarHandle.loadLoadFence();
+        int overwritten = (int) Math.min(result.size(), getOldestSequence() - start);
+        if (overwritten > 0) {
+            result.subList(0, overwritten).clear();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(long sequence) {
+        return (T) items[(int) (sequence % slotCount)];
+    }
+
+    private long oldest(long end) {
+        return Math.max(0, end - capacity);
+    }
+
+    // Getters
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Sequence number the next item will get
+     */
+    public long getWriteSequence() { return writeSequence; }
+
+    /**
+     * Sequence number of the oldest item still held
+     */
+    public long getOldestSequence() { return oldest(writeSequence); }
+
+    /**
+     * Number of items held
+     */
+    public int size() { return (int) Math.min(writeSequence, capacity); }
+}
@@ -0,0 +1,142 @@
+package org.example.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parse plan compiled once from a CSV header
+ * Maps each source column to its slot in the schema row (see FactorySchema),
+ * so files with any column order are parsed with a single indexed pass per
+ * row and no per-row lookups by name.
+ */
+public final class ParsePlan {
+    // Slot of a source column that is not part of the schema
+    public static final int IGNORED = -1;
+
+    private final int columnCount;
+    private final int timestampColumn;
+    private final int[] slotForColumn;
+    private final boolean[] integerColumn;
+    private final List<String> missingColumns;
+    private final boolean positional;
+
+    private ParsePlan(int columnCount, int timestampColumn, int[] slotForColumn,
+                      List<String> missingColumns, boolean positional) {
+        this.columnCount = columnCount;
+        this.timestampColumn = timestampColumn;
+        this.slotForColumn = slotForColumn;
+        this.missingColumns = missingColumns;
+        this.positional = positional;
+
+        this.integerColumn = new boolean[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            integerColumn[column] = slotForColumn[column] != IGNORED
+                && FactorySchema.isIntegerColumn(slotForColumn[column]);
+        }
+    }
+
+    /**
+     * Compile a parse plan from header names.
+     * Columns are matched to the schema by name, ignoring case and the .U/.C
+     * variable type markers. A header with no known names but the dataset's
+     * column count is taken to be in the dataset's column order.
+     * @param header Column names from the CSV header
+     * @return Compiled plan
+     */
+    public static ParsePlan compile(String[] header) {
+        Map<String, Integer> slotsByName = new HashMap<>();
+        for (int slot = 0; slot < FactorySchema.COLUMN_COUNT; slot++) {
+            slotsByName.put(normalize(FactorySchema.COLUMN_NAMES[slot]), slot);
+        }
+
+        int[] slotForColumn = new int[header.length];
+        boolean[] found = new boolean[FactorySchema.COLUMN_COUNT];
+        int matched = 0;
+        for (int column = 0; column < header.length; column++) {
+            Integer slot = slotsByName.get(normalize(header[column]));
+            if (slot == null || found[slot]) {
+                // Unknown or duplicate column
+                slotForColumn[column] = IGNORED;
+                continue;
+            }
+            slotForColumn[column] = slot;
+            found[slot] = true;
+            matched++;
+        }
+
+        if (matched == 0 && header.length == FactorySchema.COLUMN_COUNT) {
+            return positional();
+        }
+
+        int timestampColumn = 0;
+        List<String> missingColumns = new ArrayList<>();
+        for (int column = 0; column < header.length; column++) {
+            if (slotForColumn[column] == FactorySchema.TIMESTAMP) {
+                timestampColumn = column;
+            }
+        }
+        for (int slot = 0; slot < FactorySchema.COLUMN_COUNT; slot++) {
+            if (!found[slot]) {
+                missingColumns.add(FactorySchema.COLUMN_NAMES[slot]);
+            }
+        }
+        return new ParsePlan(header.length, timestampColumn, slotForColumn, missingColumns, false);
+    }
+
+    /**
+     * Plan for files in the dataset's own column order
+     */
+    public static ParsePlan positional() {
+        int[] slotForColumn = new int[FactorySchema.COLUMN_COUNT];
+        for (int column = 0; column < slotForColumn.length; column++) {
+            slotForColumn[column] = column;
+        }
+        return new ParsePlan(slotForColumn.length, FactorySchema.TIMESTAMP, slotForColumn,
+            new ArrayList<>(), true);
+    }
+
+    /**
+     * Name key used for matching: lower case, without the .U/.C markers
+     * and without characters other than letters, digits and dots
+     */
+    private static String normalize(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        for (String part : name.trim().toLowerCase().split("\\.")) {
+            if (part.equals("u") || part.equals("c")) {
+                continue;
+            }
+            if (key.length() > 0) {
+                key.append('.');
+            }
+            for (int i = 0; i < part.length(); i++) {
+                char ch = part.charAt(i);
+                if (Character.isLetterOrDigit(ch)) {
+                    key.append(ch);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    // Getters
+    public int getColumnCount() { return columnCount; }
+    public int getTimestampColumn() { return timestampColumn; }
+    public boolean isPositional() { return positional; }
+
+    /**
+     * Schema columns that no source column maps to; their values read as missing (NaN)
+     */
+    public List<String> getMissingColumns() { return missingColumns; }
+
+    /**
+     * Schema slot of a source column, or IGNORED
+     */
+    public int slot(int column) { return slotForColumn[column]; }
+
+    /**
+     * Whether a source column holds integer values
+     */
+    public boolean isIntegerColumn(int column) { return integerColumn[column]; }
+}
@@ -0,0 +1,167 @@
+package org.example.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion between dataset timestamps ("yyyy-MM-dd HH:mm:ss", UTC)
+ * and epoch seconds, without going through java.time objects
+ */
+public final class Timestamps {
+    // Returned when a timestamp is not in the dataset format
+    public static final long INVALID = Long.MIN_VALUE;
+
+    // Length of "yyyy-MM-dd HH:mm:ss" and the separator following each field
+    private static final int LENGTH = 19;
+    private static final char[] SEPARATORS = {'-', '-', ' ', ':', ':'};
+
+    private Timestamps() {
+    }
+
+    /**
+     * Parse a timestamp from text
+     * @param text Timestamp text
+     * @return Epoch seconds, or INVALID if the text is not in the dataset format
+     */
+    public static long parse(CharSequence text) {
+        if (text.length() != LENGTH) {
+            return INVALID;
+        }
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+        int pos = 0;
+        for (int field = 0; field < 6; field++) {
+            int width = field == 0 ? 4 : 2;
+            int value = 0;
+            for (int i = 0; i < width; i++) {
+                int digit = text.charAt(pos++) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                value = value * 10 + digit;
+            }
+            if (field < 5 && text.charAt(pos++) != SEPARATORS[field]) {
+                return INVALID;
+            }
+            switch (field) {
+                case 0: year = value; break;
+                case 1: month = value; break;
+                case 2: day = value; break;
+                case 3: hour = value; break;
+                case 4: minute = value; break;
+                default: second = value; break;
+            }
+        }
+        return toEpochSecond(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * Parse a timestamp from the bytes [start, end) of a buffer
+     * @param buf Buffer holding the timestamp (absolute positions)
+     * @param start First byte
+     * @param end One past the last byte
+     * @return Epoch seconds, or INVALID if the bytes are not in the dataset format
+     */
+    public static long parse(ByteBuffer buf, int start, int end) {
+        if (end - start != LENGTH) {
+            return INVALID;
+        }
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+        int pos = start;
+        for (int field = 0; field < 6; field++) {
+            int width = field == 0 ? 4 : 2;
+            int value = 0;
+            for (int i = 0; i < width; i++) {
+                int digit = buf.get(pos++) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                value = value * 10 + digit;
+            }
+            if (field < 5 && buf.get(pos++) != SEPARATORS[field]) {
+                return INVALID;
+            }
+            switch (field) {
+                case 0: year = value; break;
+                case 1: month = value; break;
+                case 2: day = value; break;
+                case 3: hour = value; break;
+                case 4: minute = value; break;
+                default: second = value; break;
+            }
+        }
+        return toEpochSecond(year, month, day, hour, minute, second);
+    }
+
+    /**
+     * Format epoch seconds in the dataset format
+     * @param epochSecond Epoch seconds
+     * @return Timestamp text
+     */
+    public static String format(long epochSecond) {
+        long days = Math.floorDiv(epochSecond, 86400);
+        int secondOfDay = (int) Math.floorMod(epochSecond, 86400);
+
+        // Civil date from day count (Howard Hinnant's algorithm)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] text = new char[LENGTH];
+        writeDigits(text, 0, (int) year, 4);
+        text[4] = '-';
+        writeDigits(text, 5, month, 2);
+        text[7] = '-';
+        writeDigits(text, 8, day, 2);
+        text[10] = ' ';
+        writeDigits(text, 11, secondOfDay / 3600, 2);
+        text[13] = ':';
+        writeDigits(text, 14, secondOfDay / 60 % 60, 2);
+        text[16] = ':';
+        writeDigits(text, 17, secondOfDay % 60, 2);
+        return new String(text);
+    }
+
+    private static void writeDigits(char[] text, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Epoch seconds of a civil date and time, or INVALID if out of range
+     */
+    private static long toEpochSecond(int year, int month, int day, int hour, int minute, int second) {
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+
+        // Day count from civil date (Howard Hinnant's algorithm)
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+
+        return days * 86400 + hour * 3600L + minute * 60L + second;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}